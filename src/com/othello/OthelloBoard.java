@@ -0,0 +1,182 @@
+package com.othello;
+
+/**
+ * This class holds a square board of any even size from MIN_SIZE to
+ * MAX_SIZE, for variants played on other boards than the 8x8 table. Squares
+ * are numbered (y * size + x) and the players are those of OthelloTable.
+ * <p>
+ * Boards of up to 64 squares keep each player in a single long and find
+ * all moves at once with shifts, larger boards keep one int per row. Use
+ * create() to get the representation that fits the size.
+ */
+public abstract class OthelloBoard {
+
+	/**
+	 * The smallest board size
+	 */
+	public static final int MIN_SIZE = 4;
+
+	/**
+	 * The largest board size
+	 */
+	public static final int MAX_SIZE = 16;
+
+	/**
+	 * The number of squares along each side
+	 */
+	final int size;
+
+	/**
+	 * Creates an empty board
+	 * 
+	 * @param size
+	 *            The number of squares along each side
+	 */
+	OthelloBoard(int size) {
+		this.size = size;
+	}
+
+	/**
+	 * Creates a board with the representation that fits the size
+	 * 
+	 * @param size
+	 *            The number of squares along each side, an even number from
+	 *            MIN_SIZE to MAX_SIZE
+	 * @return The empty board
+	 * @throws IllegalArgumentException
+	 *             If the size is not supported
+	 */
+	public static OthelloBoard create(int size) {
+		if (size < MIN_SIZE || size > MAX_SIZE || size % 2 != 0)
+			throw new IllegalArgumentException("Unsupported board size "
+					+ size);
+		if (size * size <= 64)
+			return new OthelloPackedBoard(size);
+		return new OthelloWideBoard(size);
+	}
+
+	/**
+	 * Returns the number of squares along each side
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Resets the board for a new game, with the four center discs placed as
+	 * by OthelloTable.startNewGame()
+	 */
+	public void startNewGame() {
+		clear();
+		int center = size / 2 - 1;
+		setPiece(center * size + center, OthelloTable.BLACK_PLAYER);
+		setPiece((center + 1) * size + center, OthelloTable.WHITE_PLAYER);
+		setPiece(center * size + center + 1, OthelloTable.WHITE_PLAYER);
+		setPiece((center + 1) * size + center + 1, OthelloTable.BLACK_PLAYER);
+	}
+
+	/**
+	 * Returns the final disc difference from the view of a player. As in
+	 * tournament scoring, empty squares left when neither player can move
+	 * count for the winner.
+	 * 
+	 * @param player
+	 *            The player color
+	 * @return The disc difference
+	 */
+	public int getDiscDifference(byte player) {
+		int own = getDiscs(player);
+		int opponent = getDiscs(OthelloTable.alternatePlayer(player));
+		int empties = size * size - own - opponent;
+		if (own > opponent)
+			return own - opponent + empties;
+		if (own < opponent)
+			return own - opponent - empties;
+		return 0;
+	}
+
+	/**
+	 * Checks if a move is possible for the given player
+	 * 
+	 * @param player
+	 *            The player color
+	 * @return True if a move is possible
+	 */
+	public boolean canMove(byte player) {
+		return countMoves(player) > 0;
+	}
+
+	/**
+	 * Empties the board, leaving it without history
+	 */
+	public abstract void clear();
+
+	/**
+	 * Places a disc without flipping any discs, leaving the board without
+	 * history
+	 * 
+	 * @param square
+	 *            The square (y * size + x)
+	 * @param piece
+	 *            The player color, or OthelloTable.EMPTY_SQUARE
+	 */
+	public abstract void setPiece(int square, byte piece);
+
+	/**
+	 * Returns the player (OthelloTable.BLACK_PLAYER, OthelloTable.WHITE_PLAYER)
+	 * or empty square (OthelloTable.EMPTY_SQUARE) of a square
+	 * 
+	 * @param square
+	 *            The square (y * size + x)
+	 * @return The player color of the square
+	 */
+	public abstract byte getPiece(int square);
+
+	/**
+	 * Returns the number of discs of a player
+	 * 
+	 * @param player
+	 *            The player color
+	 * @return The disc count
+	 */
+	public abstract int getDiscs(byte player);
+
+	/**
+	 * Finds the moves of a player
+	 * 
+	 * @param player
+	 *            The player color
+	 * @param squares
+	 *            Receives the squares of the moves in increasing order, room
+	 *            for size * size squares is always enough
+	 * @return The number of moves
+	 */
+	public abstract int getMoves(byte player, int[] squares);
+
+	/**
+	 * Counts the moves of a player
+	 * 
+	 * @param player
+	 *            The player color
+	 * @return The number of moves
+	 */
+	public abstract int countMoves(byte player);
+
+	/**
+	 * Performs a move and keeps the previous position in the history
+	 * 
+	 * @param square
+	 *            The square of the move (y * size + x)
+	 * @param player
+	 *            The player color
+	 * @return The number of flipped discs or OthelloTable.INVALID_MOVE
+	 */
+	public abstract int putPiece(int square, byte player);
+
+	/**
+	 * Rewinds this board one move back in history
+	 * 
+	 * @return True if rewind was successful
+	 */
+	public abstract boolean rewind();
+}
@@ -1,5 +1,8 @@
 package com.othello;
 
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Random;
 
 /**
@@ -14,6 +17,187 @@ public class OthelloBot {
 	 */
 	private static final long MINIMUM_MOVE_TIME = 500;
 
+	/**
+	 * The default maximum time in milliseconds between yields to the gui
+	 */
+	public static final int DEFAULT_LATENCY_TARGET = 50;
+
+	/**
+	 * The default time in milliseconds to sleep between slices while the gui
+	 * is busy
+	 */
+	public static final int DEFAULT_SLICE_PAUSE = 20;
+
+	/**
+	 * The minimum number of nodes searched between yields
+	 */
+	private static final int MIN_SLICE_NODES = 8;
+
+	/**
+	 * The maximum number of nodes searched between yields
+	 */
+	private static final int MAX_SLICE_NODES = 4096;
+
+	/**
+	 * The minimum search depth of results kept in the cache
+	 */
+	private static final byte MIN_CACHE_DEPTH = 3;
+
+	/**
+	 * The fixed point scale of the evaluation weights, and the score of a
+	 * disc in the depth limited search
+	 */
+	public static final int EVAL_SCALE = 64;
+
+	/**
+	 * A score beyond all scores
+	 */
+	public static final int INFINITY = 1 << 23;
+
+	/**
+	 * The depth given to the root search when solving the game exactly
+	 */
+	public static final int EXACT_DEPTH = -1;
+
+	/**
+	 * The half width of the window searched around the score of the previous
+	 * depth
+	 */
+	private static final int ASPIRATION_WINDOW = 16 * EVAL_SCALE;
+
+	/**
+	 * The resource holding the ProbCut parameters
+	 */
+	public static final String PROBCUT_RESOURCE = "/probcut.dat";
+
+	/**
+	 * The format version of the ProbCut resource
+	 */
+	public static final byte PROBCUT_VERSION = 2;
+
+	/**
+	 * The fixed point scale of the ProbCut parameters
+	 */
+	public static final int PROBCUT_SCALE = 256;
+
+	/**
+	 * The number of standard deviations, in PROBCUT_SCALE units, a shallow
+	 * score must clear the window by before a branch is pruned
+	 */
+	private static final int PROBCUT_THRESHOLD = 256;
+
+	/**
+	 * The shallow search depth for each depth, or 0 if ProbCut is not used
+	 * at the depth. Null until the ProbCut resource is loaded.
+	 */
+	private static byte[] probCutShallow;
+
+	/**
+	 * The slope of the deep score over the shallow score for each depth
+	 */
+	private static short[] probCutSlope;
+
+	/**
+	 * The offset of the deep score for each depth
+	 */
+	private static int[] probCutOffset;
+
+	/**
+	 * The standard deviation of the deep score around its prediction for
+	 * each depth
+	 */
+	private static int[] probCutDeviation;
+
+	/**
+	 * The weight of the disc difference when the game is over, which puts
+	 * any win above any evaluation
+	 */
+	public static final int FINAL_WEIGHT = 1000 * EVAL_SCALE;
+
+	/**
+	 * The extra weight of a corner in the evaluation
+	 */
+	private static final int CORNER_WEIGHT = 10;
+
+	/**
+	 * The extra weight of a stable disc in the evaluation
+	 */
+	private static final int STABLE_WEIGHT = 4;
+
+	/**
+	 * The weight of each move of the mobility in the evaluation of variant
+	 * boards
+	 */
+	private static final int MOBILITY_WEIGHT = 2;
+
+	/**
+	 * The resource holding the trained evaluation weights
+	 */
+	public static final String EVAL_RESOURCE = "/eval.dat";
+
+	/**
+	 * The format version of the evaluation resource
+	 */
+	public static final byte EVAL_VERSION = 1;
+
+	/**
+	 * The number of game phases with weights of their own, by the number of
+	 * discs
+	 */
+	public static final int EVAL_PHASES = 4;
+
+	/**
+	 * The number of evaluation features: the differences in discs, corners,
+	 * stable discs, frontier discs, X-squares and C-squares next to empty
+	 * corners and the other edge squares, and a constant for the player to
+	 * move
+	 */
+	public static final int EVAL_FEATURES = 8;
+
+	/**
+	 * The squares diagonal to the corners
+	 */
+	private static final long X_SQUARES = 0x0042000000004200L;
+
+	/**
+	 * The edge squares that are neither corners nor next to a corner
+	 */
+	private static final long EDGE_SQUARES = 0x3C0081818181003CL;
+
+	/**
+	 * The evaluation weights of each phase and feature, at index phase *
+	 * EVAL_FEATURES + feature. Null until the evaluation resource is loaded.
+	 */
+	private static short[] evalWeights;
+
+	/**
+	 * The static class of each square, lower classes are tried first:
+	 * corners, edges, the inner squares, the edge squares next to the
+	 * corners and last the squares diagonal to the corners
+	 */
+	private static final byte[] SQUARE_CLASS = new byte[] {
+			0, 3, 1, 1, 1, 1, 3, 0,
+			3, 4, 2, 2, 2, 2, 4, 3,
+			1, 2, 2, 2, 2, 2, 2, 1,
+			1, 2, 2, 2, 2, 2, 2, 1,
+			1, 2, 2, 2, 2, 2, 2, 1,
+			1, 2, 2, 2, 2, 2, 2, 1,
+			3, 4, 2, 2, 2, 2, 4, 3,
+			0, 3, 1, 1, 1, 1, 3, 0 };
+
+	/**
+	 * The squares in the order they are tried, by class
+	 */
+	private static final byte[] SQUARE_ORDER = new byte[SQUARE_CLASS.length];
+
+	static {
+		int count = 0;
+		for (byte squareClass = 0; count < SQUARE_ORDER.length; squareClass++)
+			for (byte square = 0; square < SQUARE_CLASS.length; square++)
+				if (SQUARE_CLASS[square] == squareClass)
+					SQUARE_ORDER[count++] = square;
+	}
+
 	/**
 	 * The fixed maximum level
 	 */
@@ -24,77 +208,585 @@ public class OthelloBot {
 	 */
 	public static final byte MIN_LEVEL = 1;
 
+	/**
+	 * The deepest depth of the ProbCut resource, one ply beyond the maximum
+	 * level. Tools may search deeper, where the deepest calibrated depth of
+	 * the same parity is used.
+	 */
+	public static final byte MAX_DEPTH = MAX_LEVEL + 1;
+
 	/**
 	 * The table which is beeing played
 	 */
+	private OthelloTable gameTable;
+
+	/**
+	 * The private copy of the table used while searching
+	 */
 	private OthelloTable table;
 
 	/**
-	 * The game receiving moves etc.
+	 * The cache of earlier search results, or null
 	 */
-	private OthelloGame game;
+	private OthelloCache cache;
 
 	/**
-	 * The difficulty of this player
+	 * The canonical form of the searched position, used as the cache key so
+	 * that all symmetric positions share an entry
+	 */
+	private OthelloSymmetry symmetry;
+
+	/**
+	 * The queue receiving moves when calculated
+	 */
+	private OthelloEventQueue queue;
+
+	/**
+	 * The search thread
+	 */
+	private Thread thread;
+
+	/**
+	 * The search depth in plies, given by the level
 	 */
 	private byte recursionDepth;
 
 	/**
-	 * The color of this player
+	 * Indicates that branches are pruned by ProbCut
+	 */
+	private boolean selective;
+
+	/**
+	 * The number of empty squares left when the search switches to solving
+	 * the game exactly
+	 */
+	private int endgameEmpties;
+
+	/**
+	 * The moves at the root of the search, best first after a search
+	 */
+	private byte[] rootMoves;
+
+	/**
+	 * The scores of the root moves in the last multi-PV search
+	 */
+	private int[] rootScores;
+
+	/**
+	 * Indicates which root scores are exact and not upper bounds
+	 */
+	private boolean[] rootExact;
+
+	/**
+	 * The lines of play after the root moves, for exact scores
+	 */
+	private byte[][] rootLines;
+
+	/**
+	 * The moves found at each ply of a search on a variant board
+	 */
+	private int[][] boardMoves;
+
+	/**
+	 * The principal variation found at each ply, row ply holding the moves
+	 * from column ply
+	 */
+	private byte[][] pv;
+
+	/**
+	 * The end of the principal variation in each row of pv
+	 */
+	private int[] pvLength;
+
+	/**
+	 * The principal variation of the last search
+	 */
+	private byte[] principalVariation;
+
+	/**
+	 * The scores of the deepest completed hint search, replaced as a whole
+	 * after each depth
+	 */
+	private int[] hints;
+
+	/**
+	 * The depth of the hint scores
+	 */
+	private int hintDepth;
+
+	/**
+	 * The evaluation weights used by this bot
+	 */
+	private short[] weights;
+
+	/**
+	 * The features of the evaluated position
+	 */
+	private byte[] features;
+
+	/**
+	 * The color of this player, or of the player scored by the last hint
 	 */
 	private byte player;
 
 	/**
 	 * Indicates that the bot is dying
 	 */
-	private boolean dying;
+	private volatile boolean dying;
 
 	/**
 	 * The randomizer object
 	 */
 	private Random random;
 
+	/**
+	 * The maximum time in milliseconds between yields to the gui
+	 */
+	private int latencyTarget;
+
+	/**
+	 * The time in milliseconds to sleep between slices while the gui is busy
+	 */
+	private int slicePause;
+
+	/**
+	 * The number of nodes searched between yields, adapted to the latency
+	 * target
+	 */
+	private int sliceNodes;
+
+	/**
+	 * The number of nodes left in the current slice
+	 */
+	private int sliceCountdown;
+
+	/**
+	 * The time the current slice started
+	 */
+	private long sliceStart;
+
+	/**
+	 * The number of nodes searched in the last search
+	 */
+	private int nodes;
+
+	/**
+	 * The number of root moves of the last call to analyzeMoves()
+	 */
+	private int analyzedMoves;
+
 	/**
 	 * Creates an instance of an othello robot
 	 * 
-	 * @param game
-	 *            The Othello game that will receive moves when calculated
+	 * @param queue
+	 *            The event queue that will receive moves when calculated
 	 * @param table
 	 *            The table that is beeing played
+	 * @param cache
+	 *            The cache of earlier search results, or null
 	 * @param player
 	 *            The color of this player
 	 * @param level
 	 *            The difficulty level of this player (MIN_LEVEL <= level <=
 	 *            MAX_LEVEL)
 	 */
-	public OthelloBot(OthelloGame game, OthelloTable table, byte player,
-			byte level) {
-		this.game = game;
-		this.table = table;
+	public OthelloBot(OthelloEventQueue queue, OthelloTable table,
+			OthelloCache cache, byte player, byte level) {
+		this.queue = queue;
+		this.gameTable = table;
+		this.cache = cache;
+		symmetry = new OthelloSymmetry();
+		this.table = new OthelloTable();
 		this.player = player;
 		if (level < MIN_LEVEL)
 			level = MIN_LEVEL;
 		if (level > MAX_LEVEL)
 			level = MAX_LEVEL;
-		this.recursionDepth = (byte) (level - 1);
+		this.recursionDepth = level;
+		endgameEmpties = 2 * level;
+		weights = loadEvaluation();
+		features = new byte[EVAL_FEATURES];
+		selective = loadProbCut();
+		rootMoves = new byte[OthelloTable.TABLE_WIDTH
+				* OthelloTable.TABLE_HEIGHT];
+		rootScores = new int[rootMoves.length];
+		rootExact = new boolean[rootMoves.length];
+		rootLines = new byte[rootMoves.length][];
+		pv = new byte[0][];
+		reservePlies(Math.max(level, endgameEmpties) + 1);
+		principalVariation = new byte[0];
 		random = new Random();
+		latencyTarget = DEFAULT_LATENCY_TARGET;
+		slicePause = DEFAULT_SLICE_PAUSE;
+		sliceNodes = MIN_SLICE_NODES;
 	}
 
 	/**
-	 * Starts a separate thread that calculates the best move and returns it to
-	 * the GUI when ready
+	 * Configures how the search shares the cpu with the gui. The search
+	 * yields whenever a slice has run for about latencyTarget milliseconds
+	 * and sleeps for slicePause milliseconds if the gui is busy.
+	 * 
+	 * @param latencyTarget
+	 *            The maximum time in milliseconds between yields
+	 * @param slicePause
+	 *            The time in milliseconds to sleep while the gui is busy
 	 */
-	public synchronized void play() {
+	public void setTimeSlicing(int latencyTarget, int slicePause) {
+		this.latencyTarget = latencyTarget;
+		this.slicePause = slicePause;
+	}
 
-		dying = false;
-		Thread t = new Thread(new Runnable() {
+	/**
+	 * Replaces the evaluation weights of this bot, for tools that compare or
+	 * tune weights without building the resource
+	 * 
+	 * @param weights
+	 *            The weights of each phase and feature in EVAL_SCALE units,
+	 *            at index phase * EVAL_FEATURES + feature
+	 */
+	public void setEvaluationWeights(short[] weights) {
+		this.weights = weights;
+	}
+
+	/**
+	 * Returns a copy of the evaluation weights of the resource, or of the
+	 * default weights without it
+	 * 
+	 * @return The weights of each phase and feature in EVAL_SCALE units, at
+	 *         index phase * EVAL_FEATURES + feature
+	 */
+	public static short[] getEvaluationWeights() {
+		short[] weights = loadEvaluation();
+		short[] copy = new short[weights.length];
+		System.arraycopy(weights, 0, copy, 0, weights.length);
+		return copy;
+	}
+
+	/**
+	 * Returns the number of nodes searched in the last search
+	 * 
+	 * @return The node count
+	 */
+	public int getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Returns the principal variation of the last search, the line of play
+	 * the bot expects from the searched position. Passes are left out.
+	 * 
+	 * @return The moves as squares (y * TABLE_WIDTH + x)
+	 */
+	public byte[] getPrincipalVariation() {
+		return principalVariation;
+	}
+
+	/**
+	 * Searches the position of the table to a fixed depth in the calling
+	 * thread, with the full width. This is used by tools that calibrate
+	 * ProbCut from the scores of shallow and deep searches.
+	 * 
+	 * @param depth
+	 *            The depth in plies
+	 * @return The score of the position from the view of the player, in
+	 *         EVAL_SCALE units
+	 */
+	public int analyze(int depth) {
+		return analyze(depth, -INFINITY, INFINITY);
+	}
+
+	/**
+	 * Searches the position of the table to a fixed depth in the calling
+	 * thread, with the full width and within a window. Tools that split the
+	 * search over several threads give each thread its own bot and table.
+	 * 
+	 * @param depth
+	 *            The depth in plies
+	 * @param alpha
+	 *            The score the player is already guaranteed
+	 * @param beta
+	 *            The score the opponent is already guaranteed
+	 * @return The score of the position from the view of the player, between
+	 *         alpha and beta
+	 */
+	public synchronized int analyze(int depth, int alpha, int beta) {
+		OthelloProbe probe = OthelloProbe.probe;
+		Object event = probe != null ? probe.beginSearch() : null;
+		table.copy(gameTable);
+		nodes = 0;
+		sliceCountdown = sliceNodes;
+		sliceStart = System.currentTimeMillis();
+		boolean wasSelective = selective;
+		selective = false;
+		reservePlies(depth + 1);
+		int score = search(player, depth, alpha, beta, false, 0);
+		selective = wasSelective;
+		if (event != null)
+			probe.endSearch(event, depth, nodes, -1, score);
+		return score;
+	}
+
+	/**
+	 * Searches the position of the table in the calling thread for the best
+	 * moves. The best moves get exact scores and lines of play, the other
+	 * moves are only searched far enough to show that they are worse, which
+	 * keeps the cost close to that of finding the best move alone.
+	 * 
+	 * @param best
+	 *            The number of moves to score exactly
+	 * @param depth
+	 *            The depth in plies, or EXACT_DEPTH to
+	 *            solve the game and score the moves by the final disc
+	 *            difference
+	 * @return All moves, best first, with exact scores for the first best
+	 *         moves and upper bounds for the rest
+	 */
+	public synchronized OthelloVariation[] analyzeMoves(int best, int depth) {
+		table.copy(gameTable);
+		analyzedMoves = collectRootMoves();
+		return searchMoves(best, 1, depth);
+	}
+
+	/**
+	 * Searches the moves of the last call to analyzeMoves() one depth
+	 * deeper, in the order found by the earlier depths. Tools that deepen
+	 * until a time limit call this once per depth, so that no depth is
+	 * searched twice and getNodes() only counts the new depth.
+	 * 
+	 * @param best
+	 *            The number of moves to score exactly
+	 * @param depth
+	 *            The depth in plies, or EXACT_DEPTH to
+	 *            solve the game
+	 * @return All moves, best first, with exact scores for the first best
+	 *         moves and upper bounds for the rest
+	 */
+	public synchronized OthelloVariation[] deepenMoves(int best, int depth) {
+		return searchMoves(best, depth, depth);
+	}
+
+	/**
+	 * Searches the root moves of the private table at each depth from the
+	 * first to the last depth
+	 * 
+	 * @param best
+	 *            The number of moves to score exactly
+	 * @param first
+	 *            The first depth in plies
+	 * @param depth
+	 *            The last depth in plies, or EXACT_DEPTH to solve the game
+	 *            instead
+	 * @return All moves, best first
+	 */
+	private OthelloVariation[] searchMoves(int best, int first, int depth) {
+		OthelloProbe probe = OthelloProbe.probe;
+		Object event = probe != null ? probe.beginSearch() : null;
+		nodes = 0;
+		sliceCountdown = sliceNodes;
+		sliceStart = System.currentTimeMillis();
+		int count = analyzedMoves;
+		if (depth == EXACT_DEPTH) {
+			// Make room for the principal variation of the whole game
+			reservePlies(OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT
+					- table.getBlackScore() - table.getWhiteScore() + 1);
+			searchMultiPv(count, Math.max(1, best), EXACT_DEPTH);
+		}
+		reservePlies(depth + 1);
+		for (int i = Math.max(1, first); i <= depth; i++)
+			searchMultiPv(count, Math.max(1, best), i);
+
+		OthelloVariation[] variations = new OthelloVariation[count];
+		for (int i = 0; i < count; i++)
+			variations[i] = new OthelloVariation(rootLines[i], rootScores[i],
+					rootExact[i]);
+		if (event != null)
+			probe.endSearch(event, depth, nodes, count > 0 ? rootMoves[0]
+					: -1, count > 0 ? rootScores[0] : 0);
+		return variations;
+	}
+
+	/**
+	 * Searches a position on a variant board to a fixed depth in the calling
+	 * thread, with the full width. The weights of the evaluation resource
+	 * only fit the 8x8 table, so the positions are evaluated by the discs,
+	 * the corners and the mobility.
+	 * 
+	 * @param board
+	 *            The board, with the position to search
+	 * @param depth
+	 *            The depth in plies
+	 * @return An array of {square, score} with the best move (y * size + x),
+	 *         or -1 if the player has to pass, and its score from the view
+	 *         of the player
+	 */
+	public synchronized int[] analyzeBoard(OthelloBoard board, int depth) {
+		OthelloProbe probe = OthelloProbe.probe;
+		Object event = probe != null ? probe.beginSearch() : null;
+		nodes = 0;
+		sliceCountdown = sliceNodes;
+		sliceStart = System.currentTimeMillis();
+		depth = Math.max(1, depth);
+		int squares = board.getSize() * board.getSize();
+		if (boardMoves == null || boardMoves.length <= depth
+				|| boardMoves[0].length < squares)
+			boardMoves = new int[depth + 1][squares];
+
+		byte opponent = OthelloTable.alternatePlayer(player);
+		int[] moves = boardMoves[0];
+		int count = board.getMoves(player, moves);
+		int best = -1;
+		int alpha = -INFINITY;
+		if (count == 0)
+			alpha = -searchBoard(board, opponent, depth, -INFINITY, INFINITY,
+					true, 0);
+		for (int i = 0; i < count; i++) {
+			board.putPiece(moves[i], player);
+			int score = -searchBoard(board, opponent, depth - 1, -INFINITY,
+					-alpha, false, 1);
+			board.rewind();
+			if (dying)
+				break;
+			if (score > alpha || best < 0) {
+				alpha = score;
+				best = moves[i];
+			}
+		}
+		if (event != null)
+			probe.endSearch(event, depth, nodes, -1, alpha);
+		return new int[] { best, alpha };
+	}
+
+	/**
+	 * Loads the ProbCut parameters the first time they are needed. The
+	 * resource holds the version, the first depth and the number of depths,
+	 * followed by the shallow depth, slope, offset and deviation of each
+	 * depth.
+	 * 
+	 * @return True if ProbCut parameters are available
+	 */
+	private static synchronized boolean loadProbCut() {
+		if (probCutShallow != null)
+			return probCutShallow.length > 0;
+		probCutShallow = new byte[0];
+		InputStream stream = OthelloBot.class
+				.getResourceAsStream(PROBCUT_RESOURCE);
+		if (stream == null)
+			return false;
+		try {
+			DataInputStream in = new DataInputStream(stream);
+			if (in.readByte() != PROBCUT_VERSION)
+				return false;
+			int first = in.readByte();
+			int count = in.readByte();
+			byte[] shallow = new byte[first + count];
+			short[] slope = new short[first + count];
+			int[] offset = new int[first + count];
+			int[] deviation = new int[first + count];
+			for (int depth = first; depth < first + count; depth++) {
+				shallow[depth] = in.readByte();
+				slope[depth] = in.readShort();
+				offset[depth] = in.readInt();
+				deviation[depth] = in.readInt();
+				if (shallow[depth] < 0 || shallow[depth] >= depth
+						|| slope[depth] <= 0)
+					shallow[depth] = 0;
+			}
+			probCutSlope = slope;
+			probCutOffset = offset;
+			probCutDeviation = deviation;
+			probCutShallow = shallow;
+		} catch (IOException e) {
+		} finally {
+			try {
+				stream.close();
+			} catch (IOException e) {
+			}
+		}
+		return probCutShallow.length > 0;
+	}
+
+	/**
+	 * Loads the evaluation weights the first time they are needed. The
+	 * resource holds the version, the number of phases and the number of
+	 * features, followed by the weights. Without the resource the weights
+	 * only count discs, corners and stable discs.
+	 * 
+	 * @return The weights of each phase and feature
+	 */
+	private static synchronized short[] loadEvaluation() {
+		if (evalWeights != null)
+			return evalWeights;
+		short[] weights = new short[EVAL_PHASES * EVAL_FEATURES];
+		for (int phase = 0; phase < EVAL_PHASES; phase++) {
+			weights[phase * EVAL_FEATURES] = EVAL_SCALE;
+			weights[phase * EVAL_FEATURES + 1] = CORNER_WEIGHT * EVAL_SCALE;
+			weights[phase * EVAL_FEATURES + 2] = STABLE_WEIGHT * EVAL_SCALE;
+		}
+		evalWeights = weights;
+		InputStream stream = OthelloBot.class
+				.getResourceAsStream(EVAL_RESOURCE);
+		if (stream == null)
+			return evalWeights;
+		try {
+			DataInputStream in = new DataInputStream(stream);
+			if (in.readByte() != EVAL_VERSION
+					|| in.readByte() != EVAL_PHASES
+					|| in.readByte() != EVAL_FEATURES)
+				return evalWeights;
+			short[] trained = new short[weights.length];
+			for (int i = 0; i < trained.length; i++)
+				trained[i] = in.readShort();
+			evalWeights = trained;
+		} catch (IOException e) {
+		} finally {
+			try {
+				stream.close();
+			} catch (IOException e) {
+			}
+		}
+		return evalWeights;
+	}
+
+	/**
+	 * Starts a separate thread that calculates the best move on a copy of the
+	 * table and posts it to the event queue when ready
+	 * 
+	 * @param ticket
+	 *            The ticket posted along with the move, used by the receiver
+	 *            to drop stale moves
+	 */
+	public synchronized void play(final int ticket) {
+		startThread(new Runnable() {
 			public void run() {
 
 				// Reset timer
-				long timer = System.currentTimeMillis() + MINIMUM_MOVE_TIME;
+				long start = System.currentTimeMillis();
+				long timer = start + MINIMUM_MOVE_TIME;
+				OthelloProbe probe = OthelloProbe.probe;
+				Object event = probe != null ? probe.beginSearch() : null;
 
 				// Find the best move
-				byte[] move = findBestMove(player, recursionDepth);
+				nodes = 0;
+				sliceCountdown = sliceNodes;
+				sliceStart = start;
+				byte[] move = findCachedMove();
+				if (move == null) {
+					move = findBestMove();
+					if (move != null && !dying && cache != null
+							&& recursionDepth >= MIN_CACHE_DEPTH) {
+						int square = symmetry.toCanonical(move[1]
+								* OthelloTable.TABLE_WIDTH + move[0]);
+						cache.store(symmetry.getHash(), recursionDepth,
+								(byte) (square % OthelloTable.TABLE_WIDTH),
+								(byte) (square / OthelloTable.TABLE_WIDTH),
+								move[2]);
+					}
+				}
+				if (event != null)
+					probe.endSearch(event, isEndgame() ? EXACT_DEPTH
+							: recursionDepth, nodes, move != null ? move[1]
+							* OthelloTable.TABLE_WIDTH + move[0] : -1,
+							move != null ? move[2] : 0);
 
 				if (move != null && !dying) {
 					// Make sure we are not too fast
@@ -104,91 +796,816 @@ public class OthelloBot {
 					} catch (InterruptedException e) {
 					}
 
-					// Put the piece
+					// Post the move
 					if (!dying)
-						game.putPiece(move[0], move[1]);
+						queue.post(OthelloEventQueue.BOT_MOVE_EVENT, move[0],
+								move[1], ticket);
 				}
 			}
 		});
+	}
 
-		t.start();
+	/**
+	 * Starts a separate thread that scores every move on a copy of the table
+	 * for hints, deeper and deeper until the depth of the level. The scores
+	 * are published and a hint event is posted after each depth. The first
+	 * depth only evaluates the position after each move, so the first hint
+	 * is ready almost at once. The same bot can score the moves of either
+	 * player, one position after another.
+	 * 
+	 * @param player
+	 *            The color of the player to move
+	 * @param ticket
+	 *            The ticket posted along with the hints, used by the
+	 *            receiver to drop stale hints
+	 */
+	public synchronized void hint(final byte player, final int ticket) {
+		startThread(new Runnable() {
+			public void run() {
+				OthelloBot.this.player = player;
+				OthelloProbe probe = OthelloProbe.probe;
+				Object event = probe != null ? probe.beginSearch() : null;
+				hints = null;
+				nodes = 0;
+				sliceCountdown = sliceNodes;
+				sliceStart = System.currentTimeMillis();
+				findHints(ticket);
+				if (event != null)
+					probe.endSearch(event, hintDepth, nodes, -1, 0);
+			}
+		});
+	}
+
+	/**
+	 * Returns the scores of the deepest completed hint search
+	 * 
+	 * @return The score of each square (y * TABLE_WIDTH + x) from the view of
+	 *         the player in EVAL_SCALE units, -INFINITY for squares that are
+	 *         not moves, or null if no depth is completed
+	 */
+	public int[] getHints() {
+		return hints;
+	}
+
+	/**
+	 * Returns the depth of the scores returned by getHints()
+	 * 
+	 * @return The depth in plies, or -1 if the game was solved exactly
+	 */
+	public int getHintDepth() {
+		return hintDepth;
+	}
+
+	/**
+	 * Starts the search thread on a fresh copy of the table, after making
+	 * sure that an earlier search has left the private table
+	 * 
+	 * @param runnable
+	 *            The search
+	 */
+	private void startThread(Runnable runnable) {
+		if (thread != null && thread.isAlive()) {
+			dying = true;
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+			}
+		}
+
+		table.copy(gameTable);
+		dying = false;
+		thread = new Thread(runnable);
+
+		// Let the gui win any contention for the cpu
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
 	}
 
 	/**
 	 * Kills the bot so that its thread dies
 	 */
-	public synchronized void kill() {
+	public void kill() {
 		dying = true;
 	}
 
 	/**
-	 * Finds the best move given a table, a color and a recursion depth.
+	 * Clears a kill so that the bot can search again in the calling thread.
+	 * The searches in the calling thread keep a kill that lands before they
+	 * start, so tools that reuse a bot revive it before they arm whatever
+	 * may kill the next search.
+	 */
+	public void revive() {
+		dying = false;
+	}
+
+	/**
+	 * Looks up the move for the current position in the cache. The position
+	 * is looked up in its canonical form, which is kept for storing the
+	 * result of the search.
+	 * 
+	 * @return An array of {x-coordinate, y-coordinate, score} or null if not
+	 *         found
+	 */
+	private byte[] findCachedMove() {
+		if (cache == null || recursionDepth < MIN_CACHE_DEPTH)
+			return null;
+		symmetry.canonicalize(table.getMask(OthelloTable.BLACK_PLAYER), table
+				.getMask(OthelloTable.WHITE_PLAYER), player);
+		byte[] move = cache.lookup(symmetry.getHash(), recursionDepth);
+		if (move == null)
+			return null;
+
+		// Map the move back to the actual orientation
+		int square = symmetry.toActual(move[1] * OthelloTable.TABLE_WIDTH
+				+ move[0]);
+		move[0] = (byte) (square % OthelloTable.TABLE_WIDTH);
+		move[1] = (byte) (square / OthelloTable.TABLE_WIDTH);
+
+		// Guard against hash collisions
+		if (table.putPiece(move[0], move[1], player) == OthelloTable.INVALID_MOVE)
+			return null;
+		table.rewind();
+		principalVariation = new byte[] { (byte) square };
+		return move;
+	}
+
+	/**
+	 * Finds the best move for the position of the private table. The search
+	 * deepens one ply at a time, trying the best move so far first and
+	 * searching each depth in a narrow window around the score of the
+	 * previous one. Moves of the same static class are first tried in random
+	 * order, so that equally good moves vary between games.
+	 * 
+	 * @return An array of {x-coordinate, y-coordinate, score in discs} or
+	 *         null if there is no move
+	 */
+	private byte[] findBestMove() {
+
+		int count = collectRootMoves();
+		if (count == 0)
+			return null;
+
+		// Shuffle each class of squares
+		for (int i = count - 1; i > 0; i--) {
+			int first = i;
+			while (first > 0
+					&& SQUARE_CLASS[rootMoves[first - 1]] == SQUARE_CLASS[rootMoves[i]])
+				first--;
+			int j = first + Math.abs(random.nextInt() % (i - first + 1));
+			byte square = rootMoves[i];
+			rootMoves[i] = rootMoves[j];
+			rootMoves[j] = square;
+		}
+
+		// Solve the end of the game exactly in a single pass
+		int score;
+		if (isEndgame()) {
+			score = searchRoot(count, EXACT_DEPTH, -INFINITY, INFINITY);
+			if (dying)
+				return null;
+		} else {
+			score = 0;
+			for (int depth = 1; depth <= recursionDepth; depth++) {
+				int alpha = depth == 1 ? -INFINITY : score - ASPIRATION_WINDOW;
+				int beta = depth == 1 ? INFINITY : score + ASPIRATION_WINDOW;
+
+				// Widen the failing side of the window until the score is
+				// inside
+				while (true) {
+					score = searchRoot(count, depth, alpha, beta);
+					if (dying)
+						return null;
+					if (score <= alpha)
+						alpha = -INFINITY;
+					else if (score >= beta)
+						beta = INFINITY;
+					else
+						break;
+				}
+			}
+			score /= EVAL_SCALE;
+		}
+
+		principalVariation = new byte[pvLength[0]];
+		System.arraycopy(pv[0], 0, principalVariation, 0, pvLength[0]);
+		return new byte[] { (byte) (rootMoves[0] % OthelloTable.TABLE_WIDTH),
+				(byte) (rootMoves[0] / OthelloTable.TABLE_WIDTH),
+				(byte) Math.max(Byte.MIN_VALUE, Math.min(Byte.MAX_VALUE, score)) };
+	}
+
+	/**
+	 * Scores every move of the private table with the full window, one depth
+	 * at a time, and publishes the scores after each depth. In the endgame a
+	 * depth 1 hint is published at once, before the game is solved.
+	 * 
+	 * @param ticket
+	 *            The ticket posted along with the hints
+	 */
+	private void findHints(int ticket) {
+		int count = collectRootMoves();
+		boolean exact = isEndgame();
+		int last = exact ? 2 : recursionDepth;
+		for (int pass = 1; pass <= last; pass++) {
+			int depth = exact && pass == last ? EXACT_DEPTH : pass;
+			searchMultiPv(count, count, depth);
+			if (dying)
+				return;
+			int[] scores = new int[OthelloTable.TABLE_WIDTH
+					* OthelloTable.TABLE_HEIGHT];
+			for (int i = 0; i < scores.length; i++)
+				scores[i] = -INFINITY;
+			for (int i = 0; i < count; i++)
+				scores[rootMoves[i]] = depth == EXACT_DEPTH ? rootScores[i]
+						* EVAL_SCALE : rootScores[i];
+			hints = scores;
+			hintDepth = depth;
+			queue.post(OthelloEventQueue.HINT_EVENT, depth, 0, ticket);
+		}
+	}
+
+	/**
+	 * Searches the root moves for the best moves and sorts them best first.
+	 * A move is searched with a null window at the score of the last of the
+	 * best moves so far, and only searched again for an exact score if it
+	 * turns out better.
+	 * 
+	 * @param count
+	 *            The number of root moves
+	 * @param best
+	 *            The number of moves to score exactly
+	 * @param depth
+	 *            The depth in plies, or EXACT_DEPTH to solve the game
+	 */
+	private void searchMultiPv(int count, int best, int depth) {
+		byte opponent = OthelloTable.alternatePlayer(player);
+		for (int i = 0; i < count; i++) {
+			byte square = rootMoves[i];
+			table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+					(byte) (square / OthelloTable.TABLE_WIDTH), player);
+			int score;
+			boolean exact = true;
+			if (i < best) {
+				score = -searchChild(opponent, depth, -INFINITY, INFINITY);
+			} else {
+				int bound = rootScores[best - 1];
+				score = -searchChild(opponent, depth, -bound - 1, -bound);
+				if (score > bound)
+					score = -searchChild(opponent, depth, -INFINITY, -bound);
+				exact = score > bound;
+			}
+			table.rewind();
+			if (dying)
+				return;
+
+			byte[] line = new byte[exact ? Math.max(1, pvLength[1]) : 1];
+			line[0] = square;
+			if (exact)
+				System.arraycopy(pv[1], 1, line, 1, line.length - 1);
+
+			// Insert the move among the searched moves by score
+			int j = i;
+			for (; j > 0 && rootScores[j - 1] < score; j--) {
+				rootMoves[j] = rootMoves[j - 1];
+				rootScores[j] = rootScores[j - 1];
+				rootExact[j] = rootExact[j - 1];
+				rootLines[j] = rootLines[j - 1];
+			}
+			rootMoves[j] = square;
+			rootScores[j] = score;
+			rootExact[j] = exact;
+			rootLines[j] = line;
+		}
+	}
+
+	/**
+	 * Collects the moves of the private table in static order
+	 * 
+	 * @return The number of moves in rootMoves
+	 */
+	private int collectRootMoves() {
+		int count = 0;
+		for (int i = 0; i < SQUARE_ORDER.length; i++) {
+			byte square = SQUARE_ORDER[i];
+			if (table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+					(byte) (square / OthelloTable.TABLE_WIDTH), player) != OthelloTable.INVALID_MOVE) {
+				table.rewind();
+				rootMoves[count++] = square;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Checks if few enough squares are empty to solve the game exactly
+	 */
+	private boolean isEndgame() {
+		return OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT
+				- table.getBlackScore() - table.getWhiteScore() <= endgameEmpties;
+	}
+
+	/**
+	 * Searches the root moves and moves the best one first
+	 * 
+	 * @param count
+	 *            The number of root moves
+	 * @param depth
+	 *            The depth in plies, or EXACT_DEPTH to solve the game
+	 * @param alpha
+	 *            The lower bound of the window
+	 * @param beta
+	 *            The upper bound of the window
+	 * @return The score of the best move, alpha or below on a fail low and
+	 *         beta or above on a fail high
+	 */
+	private int searchRoot(int count, int depth, int alpha, int beta) {
+		byte opponent = OthelloTable.alternatePlayer(player);
+		int best = -1;
+		pvLength[0] = 0;
+		for (int i = 0; i < count; i++) {
+			table.putPiece((byte) (rootMoves[i] % OthelloTable.TABLE_WIDTH),
+					(byte) (rootMoves[i] / OthelloTable.TABLE_WIDTH), player);
+
+			// Search the first move with the full window and prove the
+			// others worse with a null window
+			int score;
+			if (i == 0) {
+				score = -searchChild(opponent, depth, -beta, -alpha);
+			} else {
+				score = -searchChild(opponent, depth, -alpha - 1, -alpha);
+				if (score > alpha && score < beta)
+					score = -searchChild(opponent, depth, -beta, -alpha);
+			}
+			table.rewind();
+			if (dying)
+				return alpha;
+
+			if (score > alpha) {
+				alpha = score;
+				best = i;
+				updatePrincipalVariation(0, rootMoves[i]);
+				if (alpha >= beta)
+					break;
+			}
+		}
+
+		// Keep the best move first for the next search
+		if (best > 0) {
+			byte square = rootMoves[best];
+			System.arraycopy(rootMoves, 0, rootMoves, 1, best);
+			rootMoves[0] = square;
+		}
+		return alpha;
+	}
+
+	/**
+	 * Searches the position after a root move
+	 */
+	private int searchChild(byte player, int depth, int alpha, int beta) {
+		if (depth == EXACT_DEPTH)
+			return solve(player, alpha, beta, false, 1);
+		return search(player, depth - 1, alpha, beta, false, 1);
+	}
+
+	/**
+	 * Searches the private table to a fixed depth with principal variation
+	 * search. The first move is searched with the full window, the others
+	 * with a null window that is only widened if they turn out better. Once
+	 * a line is known to win, as happens in the late midgame when lines
+	 * reach the end of the game, the stable discs of the opponent cut the
+	 * lines that can not win by as much.
 	 * 
-	 * @param table
-	 *            The game table
 	 * @param player
-	 *            The color of the player
+	 *            The player to move
 	 * @param depth
-	 *            The maximum allowed recursion level
-	 * @return An integer array of {x-coordinate, y-coordinate, score}
+	 *            The remaining depth in plies
+	 * @param alpha
+	 *            The score the player is already guaranteed
+	 * @param beta
+	 *            The score the opponent is already guaranteed
+	 * @param passed
+	 *            True if the opponent just passed
+	 * @param ply
+	 *            The distance from the root in moves
+	 * @return The score from the view of the player, between alpha and beta
 	 */
-	private byte[] findBestMove(byte player, byte depth) {
+	private int search(byte player, int depth, int alpha, int beta,
+			boolean passed, int ply) {
 
+		pvLength[ply] = ply;
 		if (dying)
-			return null;
+			return alpha;
+		checkpoint();
 
-		// Initialize all counters
-		byte max = Byte.MIN_VALUE;
-		byte maxCount = 0;
-		byte xmax = 0;
-		byte ymax = 0;
-		byte result = 0;
-		byte altColor = OthelloTable.alternatePlayer(player);
-
-		// Subtract the depth counter
-		depth--;
-
-		// Iterate over the entire table
-		for (byte y = 0; y < OthelloTable.TABLE_HEIGHT; y++)
-			for (byte x = 0; x < OthelloTable.TABLE_WIDTH; x++)
-
-				// Try to put a piece on this coordinate
-				if ((result = table.putPiece(x, y, player)) != OthelloTable.INVALID_MOVE) {
-
-					// Recurse counterattacks if allowed
-					if (depth > 0) {
-						byte[] counterMove = findBestMove(altColor, depth);
-						if (counterMove != null)
-							result -= counterMove[2];
-					}
+		if (depth <= 0)
+			return evaluate(player);
 
-					// Strategy weights
-					if ((x == 0 || x == OthelloTable.TABLE_WIDTH - 1)
-							&& (y == 0 || y == OthelloTable.TABLE_HEIGHT - 1))
-						result += 10;
-
-					// Check if a new maximum was found
-					if (result > max) {
-						max = result;
-						maxCount = 0;
-						xmax = x;
-						ymax = y;
-					} else if (result == max
-							&& Math.abs(random.nextInt()) < Integer.MAX_VALUE
-									/ ++maxCount) {
-						xmax = x;
-						ymax = y;
-					}
+		// The player ends with at most the squares not stable for the
+		// opponent. Only a won line raises alpha that high, which the cheap
+		// disc count tells before the stable discs are counted.
+		byte opponent = OthelloTable.alternatePlayer(player);
+		int squares = OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT;
+		if ((squares - 2 * getDiscs(opponent)) * FINAL_WEIGHT <= alpha) {
+			int bound = squares
+					- 2
+					* OthelloTable.countBits(table
+							.getStableDiscs(opponent));
+			if (bound * FINAL_WEIGHT <= alpha)
+				return alpha;
+		}
 
-					// Rewind the move
-					table.rewind();
-				}
+		// Prune the branch if a shallow search predicts that the deep search
+		// will fail high or low. Depths beyond the calibrated ones use the
+		// parameters of the deepest calibrated depth of the same parity.
+		int cut = depth;
+		if (selective && cut >= probCutShallow.length) {
+			int last = probCutShallow.length - 1;
+			cut = last - (depth - last) % 2;
+		}
+		if (selective && cut > 0 && probCutShallow[cut] > 0) {
+			int shallow = depth - cut + probCutShallow[cut];
+			int slope = probCutSlope[cut];
+			int offset = probCutOffset[cut];
+			int deviation = PROBCUT_THRESHOLD * probCutDeviation[cut]
+					/ PROBCUT_SCALE;
+			if (beta < INFINITY) {
+				int bound = (PROBCUT_SCALE * beta + deviation - offset)
+						/ slope + 1;
+				if (search(player, shallow, bound - 1, bound, passed, ply) >= bound)
+					return beta;
+			}
+			if (alpha > -INFINITY) {
+				int bound = (PROBCUT_SCALE * alpha - deviation - offset)
+						/ slope - 1;
+				if (search(player, shallow, bound, bound + 1, passed, ply) <= bound)
+					return alpha;
+			}
+			pvLength[ply] = ply;
+		}
 
-		// Return null if no maximum was found
-		if (max == Integer.MIN_VALUE)
-			return null;
+		boolean moved = false;
+		for (int i = 0; i < SQUARE_ORDER.length; i++) {
+			byte square = SQUARE_ORDER[i];
+			if (table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+					(byte) (square / OthelloTable.TABLE_WIDTH), player) == OthelloTable.INVALID_MOVE)
+				continue;
+			int score;
+			if (!moved) {
+				score = -search(opponent, depth - 1, -beta, -alpha, false,
+						ply + 1);
+			} else {
+				score = -search(opponent, depth - 1, -alpha - 1, -alpha,
+						false, ply + 1);
+				if (score > alpha && score < beta)
+					score = -search(opponent, depth - 1, -beta, -alpha,
+							false, ply + 1);
+			}
+			moved = true;
+			table.rewind();
+			if (score > alpha) {
+				alpha = score;
+				if (alpha >= beta)
+					return beta;
+				updatePrincipalVariation(ply, square);
+			}
+		}
+
+		if (!moved) {
+			// The game is over when neither player can move
+			if (passed)
+				return clamp(getDiscDifference(player) * FINAL_WEIGHT, alpha,
+						beta);
+			return -search(opponent, depth, -beta, -alpha, true, ply);
+		}
+		return alpha;
+	}
+
+	/**
+	 * Searches the private table to the end of the game for the exact final
+	 * disc difference, with principal variation search. Lines are cut as
+	 * soon as the stable discs of the opponent show that the player can not
+	 * reach alpha.
+	 * 
+	 * @param player
+	 *            The player to move
+	 * @param alpha
+	 *            The score the player is already guaranteed
+	 * @param beta
+	 *            The score the opponent is already guaranteed
+	 * @param passed
+	 *            True if the opponent just passed
+	 * @param ply
+	 *            The distance from the root in moves
+	 * @return The final disc difference from the view of the player, between
+	 *         alpha and beta
+	 */
+	private int solve(byte player, int alpha, int beta, boolean passed,
+			int ply) {
+
+		pvLength[ply] = ply;
+		if (dying)
+			return alpha;
+		checkpoint();
+
+		byte opponent = OthelloTable.alternatePlayer(player);
+
+		// The player ends with at most the squares not stable for the
+		// opponent. The cheap disc count tells if the bound can cut at all.
+		int squares = OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT;
+		if (squares - 2 * getDiscs(opponent) <= alpha) {
+			int bound = squares
+					- 2
+					* OthelloTable.countBits(table
+							.getStableDiscs(opponent));
+			if (bound <= alpha)
+				return alpha;
+		}
+
+		boolean moved = false;
+		for (int i = 0; i < SQUARE_ORDER.length; i++) {
+			byte square = SQUARE_ORDER[i];
+			if (table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+					(byte) (square / OthelloTable.TABLE_WIDTH), player) == OthelloTable.INVALID_MOVE)
+				continue;
+			int score;
+			if (!moved) {
+				score = -solve(opponent, -beta, -alpha, false, ply + 1);
+			} else {
+				score = -solve(opponent, -alpha - 1, -alpha, false, ply + 1);
+				if (score > alpha && score < beta)
+					score = -solve(opponent, -beta, -alpha, false, ply + 1);
+			}
+			moved = true;
+			table.rewind();
+			if (score > alpha) {
+				alpha = score;
+				if (alpha >= beta)
+					return beta;
+				updatePrincipalVariation(ply, square);
+			}
+		}
+
+		if (!moved) {
+			if (passed)
+				return clamp(getDiscDifference(player), alpha, beta);
+			return -solve(opponent, -beta, -alpha, true, ply);
+		}
+		return alpha;
+	}
+
+	/**
+	 * Searches a variant board to a fixed depth with principal variation
+	 * search
+	 * 
+	 * @param board
+	 *            The board
+	 * @param player
+	 *            The player to move
+	 * @param depth
+	 *            The remaining depth in plies
+	 * @param alpha
+	 *            The score the player is already guaranteed
+	 * @param beta
+	 *            The score the opponent is already guaranteed
+	 * @param passed
+	 *            True if the opponent just passed
+	 * @param ply
+	 *            The distance from the root in moves
+	 * @return The score from the view of the player, between alpha and beta
+	 */
+	private int searchBoard(OthelloBoard board, byte player, int depth,
+			int alpha, int beta, boolean passed, int ply) {
+
+		if (dying)
+			return alpha;
+		checkpoint();
+
+		if (depth <= 0)
+			return clamp(evaluateBoard(board, player), alpha, beta);
+
+		byte opponent = OthelloTable.alternatePlayer(player);
+		int[] moves = boardMoves[ply];
+		int count = board.getMoves(player, moves);
+		if (count == 0) {
+			// The game is over when neither player can move
+			if (passed)
+				return clamp(board.getDiscDifference(player) * FINAL_WEIGHT,
+						alpha, beta);
+			return -searchBoard(board, opponent, depth, -beta, -alpha, true,
+					ply);
+		}
+
+		for (int i = 0; i < count; i++) {
+			board.putPiece(moves[i], player);
+			int score;
+			if (i == 0) {
+				score = -searchBoard(board, opponent, depth - 1, -beta,
+						-alpha, false, ply + 1);
+			} else {
+				score = -searchBoard(board, opponent, depth - 1, -alpha - 1,
+						-alpha, false, ply + 1);
+				if (score > alpha && score < beta)
+					score = -searchBoard(board, opponent, depth - 1, -beta,
+							-alpha, false, ply + 1);
+			}
+			board.rewind();
+			if (score > alpha) {
+				alpha = score;
+				if (alpha >= beta)
+					return beta;
+			}
+		}
+		return alpha;
+	}
+
+	/**
+	 * Makes room for the principal variations of a search
+	 * 
+	 * @param maxPly
+	 *            The deepest ply the search reaches
+	 */
+	private void reservePlies(int maxPly) {
+		if (pv.length <= maxPly) {
+			pv = new byte[maxPly + 1][maxPly + 1];
+			pvLength = new int[maxPly + 1];
+		}
+	}
+
+	/**
+	 * Sets the principal variation of a ply to a move followed by the
+	 * principal variation of the next ply
+	 * 
+	 * @param ply
+	 *            The ply
+	 * @param square
+	 *            The move (y * TABLE_WIDTH + x)
+	 */
+	private void updatePrincipalVariation(int ply, byte square) {
+		pv[ply][ply] = square;
+		int length = pvLength[ply + 1];
+		System.arraycopy(pv[ply + 1], ply + 1, pv[ply], ply + 1, length
+				- ply - 1);
+		pvLength[ply] = Math.max(length, ply + 1);
+	}
+
+	/**
+	 * Evaluates the position of the private table by the weighted features
+	 * of its phase
+	 * 
+	 * @param player
+	 *            The player to evaluate for
+	 * @return The score from the view of the player, in EVAL_SCALE units
+	 */
+	private int evaluate(byte player) {
+		long own = table.getMask(player);
+		long opponent = table.getMask(OthelloTable.alternatePlayer(player));
+		extractFeatures(own, opponent, features, 0);
+		int offset = getPhase(own, opponent) * EVAL_FEATURES;
+		int score = 0;
+		for (int i = 0; i < EVAL_FEATURES; i++)
+			score += weights[offset + i] * features[i];
+		return score;
+	}
+
+	/**
+	 * Evaluates a variant board by the discs, the corners and the mobility
+	 * 
+	 * @param board
+	 *            The board
+	 * @param player
+	 *            The player to evaluate for
+	 * @return The score from the view of the player
+	 */
+	private static int evaluateBoard(OthelloBoard board, byte player) {
+		byte opponent = OthelloTable.alternatePlayer(player);
+		int last = board.getSize() - 1;
+		int corners = 0;
+		for (int i = 0; i < 4; i++) {
+			byte piece = board.getPiece(i / 2 * last * board.getSize() + i % 2
+					* last);
+			if (piece == player)
+				corners++;
+			else if (piece == opponent)
+				corners--;
+		}
+		return (board.getDiscs(player) - board.getDiscs(opponent)
+				+ CORNER_WEIGHT * corners + MOBILITY_WEIGHT
+				* (board.countMoves(player) - board.countMoves(opponent)))
+				* EVAL_SCALE;
+	}
+
+	/**
+	 * Returns the evaluation phase of a position
+	 * 
+	 * @param own
+	 *            The discs of the player to move
+	 * @param opponent
+	 *            The discs of the opponent
+	 * @return The phase, from 0 to EVAL_PHASES - 1
+	 */
+	public static int getPhase(long own, long opponent) {
+		return (OthelloTable.countBits(own | opponent) - 4) * EVAL_PHASES
+				/ (OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT - 3);
+	}
+
+	/**
+	 * Extracts the evaluation features of a position, each as the
+	 * difference between the player and the opponent
+	 * 
+	 * @param own
+	 *            The discs of the player to move
+	 * @param opponent
+	 *            The discs of the opponent
+	 * @param features
+	 *            Receives the EVAL_FEATURES features
+	 * @param offset
+	 *            The index of the first feature in the array
+	 */
+	public static void extractFeatures(long own, long opponent,
+			byte[] features, int offset) {
+		long empty = ~(own | opponent);
+		long frontier = OthelloTable.getNeighbours(empty);
+		long nearCorners = OthelloTable.getNeighbours(empty
+				& OthelloTable.CORNERS);
+		long xSquares = nearCorners & X_SQUARES;
+		long cSquares = nearCorners & ~X_SQUARES;
+		features[offset] = (byte) (OthelloTable.countBits(own) - OthelloTable
+				.countBits(opponent));
+		features[offset + 1] = (byte) (OthelloTable.countBits(own
+				& OthelloTable.CORNERS) - OthelloTable.countBits(opponent
+				& OthelloTable.CORNERS));
+		features[offset + 2] = (byte) (OthelloTable.countBits(OthelloTable
+				.getStableDiscs(own, opponent)) - OthelloTable
+				.countBits(OthelloTable.getStableDiscs(opponent, own)));
+		features[offset + 3] = (byte) (OthelloTable.countBits(own & frontier) - OthelloTable
+				.countBits(opponent & frontier));
+		features[offset + 4] = (byte) (OthelloTable.countBits(own & xSquares) - OthelloTable
+				.countBits(opponent & xSquares));
+		features[offset + 5] = (byte) (OthelloTable.countBits(own & cSquares) - OthelloTable
+				.countBits(opponent & cSquares));
+		features[offset + 6] = (byte) (OthelloTable.countBits(own
+				& EDGE_SQUARES) - OthelloTable.countBits(opponent
+				& EDGE_SQUARES));
+		features[offset + 7] = 1;
+	}
+
+	/**
+	 * Returns the number of discs of a player on the private table
+	 */
+	private int getDiscs(byte player) {
+		return player == OthelloTable.BLACK_PLAYER ? table.getBlackScore()
+				: table.getWhiteScore();
+	}
+
+	/**
+	 * Returns the final disc difference from the view of a player on the
+	 * private table. As in tournament scoring, empty squares left when
+	 * neither player can move count for the winner.
+	 */
+	private int getDiscDifference(byte player) {
+		int own = getDiscs(player);
+		int opponent = getDiscs(OthelloTable.alternatePlayer(player));
+		int empties = OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT
+				- own - opponent;
+		if (own > opponent)
+			return own - opponent + empties;
+		if (own < opponent)
+			return own - opponent - empties;
+		return 0;
+	}
+
+	/**
+	 * Limits a score to a window
+	 */
+	private static int clamp(int score, int alpha, int beta) {
+		return Math.max(alpha, Math.min(beta, score));
+	}
+
+	/**
+	 * Counts a searched node and yields to the gui when the current slice is
+	 * used up
+	 */
+	private void checkpoint() {
+		nodes++;
+		if (--sliceCountdown > 0)
+			return;
+
+		// Adapt the slice length so that a slice takes about the latency target
+		long time = System.currentTimeMillis() - sliceStart;
+		if (time > latencyTarget)
+			sliceNodes = Math.max(MIN_SLICE_NODES, sliceNodes / 2);
+		else if (time * 4 < latencyTarget)
+			sliceNodes = Math.min(MAX_SLICE_NODES, sliceNodes * 2);
+
+		// Back off while the gui is busy, otherwise just give it a chance
+		try {
+			if (queue.isBusy())
+				Thread.sleep(slicePause);
+			else
+				Thread.yield();
+		} catch (InterruptedException e) {
+		}
 
-		// Return the found maximum
-		return new byte[] { xmax, ymax, max };
+		sliceCountdown = sliceNodes;
+		sliceStart = System.currentTimeMillis();
 	}
 }
@@ -0,0 +1,231 @@
+package com.othello;
+
+/**
+ * This class holds a bounded cache of search results, kept across sessions
+ * so that common positions are only searched once
+ */
+public class OthelloCache {
+
+	/**
+	 * The size of a serialized entry (key, depth, move and score)
+	 */
+	public static final int ENTRY_SIZE = 8 + 1 + 1 + 1;
+
+	/**
+	 * The serialization format version
+	 */
+	private static final byte FORMAT_VERSION = 3;
+
+	/**
+	 * The size of the serialized header (version and entry count)
+	 */
+	private static final int HEADER_SIZE = 1 + 2;
+
+	/**
+	 * The position keys
+	 */
+	private long[] keys;
+
+	/**
+	 * The search depths
+	 */
+	private byte[] depths;
+
+	/**
+	 * The best moves as square indexes
+	 */
+	private byte[] moves;
+
+	/**
+	 * The scores of the best moves
+	 */
+	private byte[] scores;
+
+	/**
+	 * The time of the last use of each entry
+	 */
+	private int[] lastUse;
+
+	/**
+	 * The number of entries in use
+	 */
+	private int size;
+
+	/**
+	 * The use counter
+	 */
+	private int clock;
+
+	/**
+	 * True if the cache has changed since it was loaded or serialized
+	 */
+	private boolean dirty;
+
+	/**
+	 * Creates an empty cache
+	 * 
+	 * @param byteBudget
+	 *            The maximum size of the serialized cache
+	 */
+	public OthelloCache(int byteBudget) {
+		int capacity = Math.max(1, (byteBudget - HEADER_SIZE) / ENTRY_SIZE);
+		keys = new long[capacity];
+		depths = new byte[capacity];
+		moves = new byte[capacity];
+		scores = new byte[capacity];
+		lastUse = new int[capacity];
+	}
+
+	/**
+	 * Looks up the best move of a position
+	 * 
+	 * @param key
+	 *            The position key
+	 * @param depth
+	 *            The search depth the result must come from
+	 * @return An array of {x-coordinate, y-coordinate, score} or null if not
+	 *         found
+	 */
+	public synchronized byte[] lookup(long key, byte depth) {
+		int i = find(key, depth);
+		if (i < 0)
+			return null;
+		lastUse[i] = ++clock;
+		return new byte[] { (byte) (moves[i] % OthelloTable.TABLE_WIDTH),
+				(byte) (moves[i] / OthelloTable.TABLE_WIDTH), scores[i] };
+	}
+
+	/**
+	 * Stores the best move of a position, evicting the least recently used
+	 * entry if the cache is full
+	 * 
+	 * @param key
+	 *            The position key
+	 * @param depth
+	 *            The search depth of the result
+	 * @param x
+	 *            The x-coordinate of the best move
+	 * @param y
+	 *            The y-coordinate of the best move
+	 * @param score
+	 *            The score of the best move
+	 */
+	public synchronized void store(long key, byte depth, byte x, byte y,
+			byte score) {
+		int i = find(key, depth);
+		if (i < 0) {
+			if (size < keys.length) {
+				i = size++;
+			} else {
+				i = 0;
+				for (int j = 1; j < size; j++)
+					if (lastUse[j] < lastUse[i])
+						i = j;
+			}
+		}
+		keys[i] = key;
+		depths[i] = depth;
+		moves[i] = (byte) (y * OthelloTable.TABLE_WIDTH + x);
+		scores[i] = score;
+		lastUse[i] = ++clock;
+		dirty = true;
+	}
+
+	/**
+	 * Checks if the cache has changed since it was loaded or serialized
+	 * 
+	 * @return True if the cache needs to be saved
+	 */
+	public boolean isDirty() {
+		return dirty;
+	}
+
+	/**
+	 * Returns the maximum size of the serialized cache
+	 * 
+	 * @return The size in bytes
+	 */
+	public int getMaxSize() {
+		return HEADER_SIZE + keys.length * ENTRY_SIZE;
+	}
+
+	/**
+	 * Serializes the cache with the least recently used entries first
+	 * 
+	 * @param buffer
+	 *            The buffer to write to, with room for getMaxSize() bytes
+	 * @return The size of the serialized cache
+	 */
+	public synchronized int save(byte[] buffer) {
+		int offset = 0;
+		buffer[offset++] = FORMAT_VERSION;
+		buffer[offset++] = (byte) (size >> 8);
+		buffer[offset++] = (byte) size;
+
+		// Write in order of use, this is only done once per game
+		int previous = Integer.MIN_VALUE;
+		for (int n = 0; n < size; n++) {
+			int i = -1;
+			for (int j = 0; j < size; j++)
+				if (lastUse[j] > previous && (i < 0 || lastUse[j] < lastUse[i]))
+					i = j;
+			previous = lastUse[i];
+			long key = keys[i];
+			for (int b = 7; b >= 0; b--) {
+				buffer[offset + b] = (byte) key;
+				key >>>= 8;
+			}
+			offset += 8;
+			buffer[offset++] = depths[i];
+			buffer[offset++] = moves[i];
+			buffer[offset++] = scores[i];
+		}
+		dirty = false;
+		return offset;
+	}
+
+	/**
+	 * Restores a serialized cache. Unknown formats are ignored and excess
+	 * entries are dropped.
+	 * 
+	 * @param buffer
+	 *            The serialized cache
+	 */
+	public synchronized void load(byte[] buffer) {
+		size = 0;
+		clock = 0;
+		if (buffer.length < HEADER_SIZE || buffer[0] != FORMAT_VERSION)
+			return;
+		int count = (buffer[1] & 0xff) << 8 | buffer[2] & 0xff;
+		count = Math.min(count, (buffer.length - HEADER_SIZE) / ENTRY_SIZE);
+
+		// Keep the most recently used entries if the budget has shrunk
+		int offset = HEADER_SIZE
+				+ Math.max(0, count - keys.length) * ENTRY_SIZE;
+		count = Math.min(count, keys.length);
+		for (int i = 0; i < count; i++) {
+			long key = 0;
+			for (int b = 0; b < 8; b++)
+				key = key << 8 | (buffer[offset++] & 0xff);
+			keys[i] = key;
+			depths[i] = buffer[offset++];
+			moves[i] = buffer[offset++];
+			scores[i] = buffer[offset++];
+			lastUse[i] = ++clock;
+		}
+		size = count;
+		dirty = false;
+	}
+
+	/**
+	 * Finds an entry
+	 * 
+	 * @return The index of the entry or -1 if not found
+	 */
+	private int find(long key, byte depth) {
+		for (int i = 0; i < size; i++)
+			if (keys[i] == key && depths[i] == depth)
+				return i;
+		return -1;
+	}
+}
@@ -0,0 +1,21 @@
+package com.othello;
+
+/**
+ * This interface receives the events dispatched by an OthelloEventQueue
+ */
+public interface OthelloEventHandler {
+
+	/**
+	 * Handles a single event. Events are never handled concurrently.
+	 * 
+	 * @param type
+	 *            The event type (OthelloEventQueue.KEY_EVENT etc.)
+	 * @param arg0
+	 *            The first event argument
+	 * @param arg1
+	 *            The second event argument
+	 * @param arg2
+	 *            The third event argument
+	 */
+	public void handleEvent(byte type, int arg0, int arg1, int arg2);
+}
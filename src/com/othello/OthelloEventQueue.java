@@ -0,0 +1,221 @@
+package com.othello;
+
+import java.util.Vector;
+
+/**
+ * This class serializes game events from the gui, the bots and the midlet
+ * onto a single dispatch thread
+ */
+public class OthelloEventQueue implements Runnable {
+
+	/**
+	 * A key press carrying the game action
+	 */
+	public static final byte KEY_EVENT = 0;
+
+	/**
+	 * A command carrying the command type
+	 */
+	public static final byte COMMAND_EVENT = 1;
+
+	/**
+	 * A bot move carrying the coordinates and the move ticket
+	 */
+	public static final byte BOT_MOVE_EVENT = 2;
+
+	/**
+	 * The resources have been loaded
+	 */
+	public static final byte LOADED_EVENT = 3;
+
+	/**
+	 * The resources failed to load
+	 */
+	public static final byte FAILED_EVENT = 4;
+
+	/**
+	 * The midlet was started
+	 */
+	public static final byte START_EVENT = 5;
+
+	/**
+	 * The midlet is being destroyed
+	 */
+	public static final byte DESTROY_EVENT = 6;
+
+	/**
+	 * A bot has scored the moves one depth deeper for hints, carrying the
+	 * depth and the move ticket in the third argument
+	 */
+	public static final byte HINT_EVENT = 7;
+
+	/**
+	 * The time after user activity during which the gui counts as busy
+	 */
+	private static final int BUSY_PERIOD = 250;
+
+	/**
+	 * The handler receiving the events
+	 */
+	private OthelloEventHandler handler;
+
+	/**
+	 * The pending events as {type, arg0, arg1, arg2, post time}
+	 */
+	private Vector events;
+
+	/**
+	 * The time of the last user activity
+	 */
+	private long activityTime;
+
+	/**
+	 * The dispatch thread
+	 */
+	private Thread thread;
+
+	/**
+	 * Creates an event queue and starts its dispatch thread
+	 * 
+	 * @param handler
+	 *            The handler receiving the events
+	 */
+	public OthelloEventQueue(OthelloEventHandler handler) {
+		this.handler = handler;
+		events = new Vector();
+		thread = new Thread(this);
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Posts an event to be handled on the dispatch thread. May be called from
+	 * any thread.
+	 * 
+	 * @param type
+	 *            The event type
+	 * @param arg0
+	 *            The first event argument
+	 * @param arg1
+	 *            The second event argument
+	 * @param arg2
+	 *            The third event argument
+	 */
+	public void post(byte type, int arg0, int arg1, int arg2) {
+		synchronized (events) {
+			events.addElement(new int[] { type, arg0, arg1, arg2,
+					(int) System.currentTimeMillis() });
+			events.notify();
+		}
+		if (type == KEY_EVENT || type == COMMAND_EVENT)
+			markActivity();
+	}
+
+	/**
+	 * Marks that the gui is active, e.g. animating, so that background work
+	 * backs off
+	 */
+	public void markActivity() {
+		activityTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Checks if there are pending events or recent user activity. Background
+	 * work should back off while the gui is busy.
+	 * 
+	 * @return True if the gui is busy
+	 */
+	public boolean isBusy() {
+		return !events.isEmpty()
+				|| System.currentTimeMillis() - activityTime < BUSY_PERIOD;
+	}
+
+	/**
+	 * Handles all pending events on the calling thread. Used when the events
+	 * must be handled before returning, e.g. when the midlet is destroyed.
+	 */
+	public synchronized void flush() {
+		int[] event;
+		while ((event = nextEvent()) != null)
+			dispatch(event);
+	}
+
+	/**
+	 * Stops the dispatch thread. Pending events are discarded.
+	 */
+	public void stop() {
+		synchronized (events) {
+			thread = null;
+			events.removeAllElements();
+			events.notify();
+		}
+	}
+
+	/**
+	 * The dispatch loop
+	 */
+	public void run() {
+		while (waitForEvent()) {
+			// The queue itself is used as lock so that an event is removed
+			// and handled atomically
+			synchronized (this) {
+				int[] event = nextEvent();
+				if (event != null)
+					dispatch(event);
+			}
+		}
+	}
+
+	/**
+	 * Blocks until an event is available
+	 * 
+	 * @return False if the queue has been stopped
+	 */
+	private boolean waitForEvent() {
+		synchronized (events) {
+			while (thread != null && events.isEmpty()) {
+				try {
+					events.wait();
+				} catch (InterruptedException e) {
+				}
+			}
+			return thread != null;
+		}
+	}
+
+	/**
+	 * Removes the next event from the queue
+	 * 
+	 * @return The event or null if the queue is empty
+	 */
+	private int[] nextEvent() {
+		synchronized (events) {
+			if (events.isEmpty())
+				return null;
+			int[] event = (int[]) events.elementAt(0);
+			events.removeElementAt(0);
+			return event;
+		}
+	}
+
+	/**
+	 * Hands an event to the handler. Input events are reported to the probe
+	 * with the time they waited in the queue.
+	 * 
+	 * @param event
+	 *            The event to dispatch
+	 */
+	private void dispatch(int[] event) {
+		OthelloProbe probe = OthelloProbe.probe;
+		Object input = null;
+		int latency = 0;
+		if (probe != null
+				&& (event[0] == KEY_EVENT || event[0] == COMMAND_EVENT)) {
+			latency = (int) System.currentTimeMillis() - event[4];
+			input = probe.beginInput();
+		}
+		handler.handleEvent((byte) event[0], event[1], event[2], event[3]);
+		if (input != null)
+			probe.endInput(input, event[0], latency);
+	}
+}
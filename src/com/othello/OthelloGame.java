@@ -14,7 +14,8 @@ import javax.microedition.midlet.MIDlet;
  * 
  * @author Bjorn.Husberg@guide.se
  */
-public class OthelloGame extends Canvas implements CommandListener {
+public class OthelloGame extends Canvas implements CommandListener,
+		OthelloEventHandler {
 
 	/**
 	 * The enclosing midlet
@@ -27,38 +28,24 @@ public class OthelloGame extends Canvas implements CommandListener {
 	private OthelloTable table;
 
 	/**
-	 * The table layers
+	 * The record of the moves played on the table
 	 */
-	private Image[] tableLayers;
+	private OthelloRecord record;
 
 	/**
-	 * Cell bounds for the background images
+	 * The table layers and cell bounds scaled to the screen
 	 */
-	private static final byte[][] CELL_BOUNDS_X = new byte[][] {
-			{ 0, 32, 43, 54, 65, 75, 86, 97, 127 },
-			{ 0, 31, 42, 53, 64, 75, 86, 98, 127 },
-			{ 0, 29, 41, 53, 64, 76, 87, 99, 127 },
-			{ 0, 28, 40, 52, 64, 76, 88, 100, 127 },
-			{ 0, 26, 39, 51, 64, 77, 89, 102, 127 },
-			{ 0, 25, 38, 51, 64, 77, 91, 104, 127 },
-			{ 0, 23, 36, 51, 64, 78, 92, 106, 127 },
-			{ 0, 21, 35, 50, 65, 79, 93, 108, 127 } };
+	private OthelloSkin skin;
 
 	/**
-	 * Cell bounds for the background images
+	 * The resource holding all table layers
 	 */
-	private static final byte[] CELL_BOUNDS_Y = new byte[] { 0, 11, 19, 28, 38,
-			49, 61, 74, 91 };
+	private static final String LAYER_ATLAS = "/images/layers.png";
 
 	/**
-	 * The width of the table
+	 * The gap between the table and the textbox
 	 */
-	private static final byte TABLE_WIDTH = 127;
-
-	/**
-	 * The height of the table
-	 */
-	private static final byte TABLE_HEIGHT = 91;
+	private static final byte TEXT_GAP = 5;
 
 	/**
 	 * The textbox width
@@ -105,6 +92,34 @@ public class OthelloGame extends Canvas implements CommandListener {
 	 */
 	private Image renderedTable;
 
+	/**
+	 * Guards what paint() draws, the rendered table and the cursor. The
+	 * event thread only holds it while it draws the table or copies the
+	 * cursor, so painting never waits for the handling of an event, such as
+	 * a record store read.
+	 */
+	private final Object frameLock = new Object();
+
+	/**
+	 * True if paint() draws the cursor
+	 */
+	private boolean frameCursor;
+
+	/**
+	 * The horizontal cursor position drawn by paint()
+	 */
+	private byte frameCursorX;
+
+	/**
+	 * The vertical cursor position drawn by paint()
+	 */
+	private byte frameCursorY;
+
+	/**
+	 * The piece drawn under the cursor by paint()
+	 */
+	private byte frameCursorPiece;
+
 	/**
 	 * The offscreen buffer used for manual double buffering
 	 */
@@ -125,11 +140,74 @@ public class OthelloGame extends Canvas implements CommandListener {
 	 */
 	private byte state;
 
+	/**
+	 * The queue serializing all events that change the game
+	 */
+	private OthelloEventQueue queue;
+
+	/**
+	 * The ticket of the bot move currently awaited
+	 */
+	private int moveTicket;
+
+	/**
+	 * The size in bytes of the search result cache
+	 */
+	private static final int CACHE_BUDGET = 2048;
+
+	/**
+	 * The search results shared by the bots and kept across sessions
+	 */
+	private OthelloCache cache;
+
+	/**
+	 * The application property with the maximum time in milliseconds
+	 * between yields of the bots to the gui
+	 */
+	private static final String LATENCY_TARGET_PROPERTY = "Othello-Latency-Target";
+
+	/**
+	 * The application property with the time in milliseconds the bots sleep
+	 * between slices while the gui is busy
+	 */
+	private static final String SLICE_PAUSE_PROPERTY = "Othello-Slice-Pause";
+
+	/**
+	 * The maximum time in milliseconds between yields of the bots
+	 */
+	private int latencyTarget;
+
+	/**
+	 * The time in milliseconds the bots sleep while the gui is busy
+	 */
+	private int slicePause;
+
 	/**
 	 * The othelloBots if available
 	 */
 	private OthelloBot[] othelloBots;
 
+	/**
+	 * The difference from the best hint at which a hint is shaded fully red
+	 */
+	private static final int HINT_RANGE = 32 * OthelloBot.EVAL_SCALE;
+
+	/**
+	 * Indicates that the moves of human players are scored for hints
+	 */
+	private boolean hintsEnabled;
+
+	/**
+	 * The bot scoring the moves of the human players, created by the first
+	 * hints of a game, or null
+	 */
+	private OthelloBot hintBot;
+
+	/**
+	 * The latest hint score of each square, or null
+	 */
+	private int[] hintScores;
+
 	/**
 	 * The current player color
 	 */
@@ -151,9 +229,10 @@ public class OthelloGame extends Canvas implements CommandListener {
 	private boolean exitSelected;
 
 	/**
-	 * True if the load option is selected
+	 * The selected load option, zero for a new game followed by the saved
+	 * games and the archived games
 	 */
-	private boolean loadSelected;
+	private int loadSelection;
 
 	/**
 	 * The current level
@@ -165,12 +244,23 @@ public class OthelloGame extends Canvas implements CommandListener {
 	 */
 	private byte players;
 
+	/**
+	 * The probe event of the startup until the title is displayed, or null
+	 */
+	private Object startupEvent;
+
 	/**
 	 * Creates an instance of the OthelloGame
 	 */
 	public OthelloGame(MIDlet midlet) throws IOException {
 
 		this.midlet = midlet;
+		OthelloProbe probe = OthelloProbe.probe;
+		startupEvent = probe != null ? probe.beginStartup() : null;
+		latencyTarget = getIntProperty(LATENCY_TARGET_PROPERTY,
+				OthelloBot.DEFAULT_LATENCY_TARGET);
+		slicePause = getIntProperty(SLICE_PAUSE_PROPERTY,
+				OthelloBot.DEFAULT_SLICE_PAUSE);
 
 		if (!isDoubleBuffered())
 			offScreen = Image.createImage(getWidth(), getHeight());
@@ -179,6 +269,8 @@ public class OthelloGame extends Canvas implements CommandListener {
 				OthelloTable.WHITE_PLAYER) + 1];
 
 		table = new OthelloTable();
+		record = new OthelloRecord();
+		queue = new OthelloEventQueue(this);
 		textBox = new OthelloTextBox(TEXT_WIDTH);
 
 		addCommand(new Command("Cancel", Command.CANCEL, 0));
@@ -189,6 +281,8 @@ public class OthelloGame extends Canvas implements CommandListener {
 		settings = new OthelloSettings();
 		players = settings.getPlayers();
 		level = settings.getLevel();
+		cache = new OthelloCache(CACHE_BUDGET);
+		settings.loadCache(cache);
 		state = INITIALIZATION_STATE;
 		textBox.renderText("LOADING");
 		repaint();
@@ -196,69 +290,169 @@ public class OthelloGame extends Canvas implements CommandListener {
 		new Thread() {
 			public void run() {
 				try {
-					Image[] images = new Image[6];
-					images[OthelloTable.BLACK_PLAYER << 1] = Image
-							.createImage("/images/black.png");
-					images[(OthelloTable.BLACK_PLAYER << 1) | 1] = Image
-							.createImage("/images/blacksel.png");
-					images[OthelloTable.WHITE_PLAYER << 1] = Image
-							.createImage("/images/white.png");
-					images[(OthelloTable.WHITE_PLAYER << 1) | 1] = Image
-							.createImage("/images/whitesel.png");
-					images[OthelloTable.EMPTY_SQUARE << 1] = Image
-							.createImage("/images/empty.png");
-					images[(OthelloTable.EMPTY_SQUARE << 1) | 1] = Image
-							.createImage("/images/emptysel.png");
-					tableLayers = images;
+					// Decode the layer atlas once
+					skin = new OthelloSkin(Image.createImage(LAYER_ATLAS),
+							getWidth(), getHeight()
+									- OthelloTextBox.BOX_HEIGHT - TEXT_GAP);
+
+					// The title pattern only needs the unselected pieces
+					skin.scaleLayer(OthelloTable.BLACK_PLAYER, false);
+					skin.scaleLayer(OthelloTable.WHITE_PLAYER, false);
 				} catch (Exception e) {
-					textBox.renderText("FAILED");
-					repaint();
+					queue.post(OthelloEventQueue.FAILED_EVENT, 0, 0, 0);
 					return;
 				}
 
-				displayTitle();
+				queue.post(OthelloEventQueue.LOADED_EVENT, 0, 0, 0);
+
+				// Scale the remaining layers while the title is showing
+				scaleRemainingLayers();
 			}
 		}.start();
 	}
 
+	/**
+	 * Scales the layers that the title does not need. A layer that is
+	 * already scaled is skipped, and a layer that is being scaled by another
+	 * thread is waited for.
+	 */
+	private void scaleRemainingLayers() {
+		skin.scaleLayer(OthelloTable.EMPTY_SQUARE, false);
+		skin.scaleLayer(OthelloTable.EMPTY_SQUARE, true);
+		skin.scaleLayer(OthelloTable.BLACK_PLAYER, true);
+		skin.scaleLayer(OthelloTable.WHITE_PLAYER, true);
+	}
+
+	/**
+	 * Called when the midlet is started
+	 */
+	public void start() {
+		queue.post(OthelloEventQueue.START_EVENT, 0, 0, 0);
+	}
+
+	/**
+	 * Called when the midlet is destroyed. The current game is saved before
+	 * returning.
+	 */
+	public void destroy() {
+		queue.post(OthelloEventQueue.DESTROY_EVENT, 0, 0, 0);
+		queue.flush();
+		queue.stop();
+		settings.flush();
+	}
+
+	/**
+	 * Handles the events serialized by the event queue
+	 * 
+	 * @param type
+	 *            The event type
+	 * @param arg0
+	 *            The first event argument
+	 * @param arg1
+	 *            The second event argument
+	 * @param arg2
+	 *            The third event argument
+	 */
+	public void handleEvent(byte type, int arg0, int arg1, int arg2) {
+		dispatchEvent(type, arg0, arg1, arg2);
+		publishCursor();
+	}
+
+	/**
+	 * Handles an event on the event thread
+	 */
+	private void dispatchEvent(byte type, int arg0, int arg1, int arg2) {
+		switch (type) {
+		case OthelloEventQueue.KEY_EVENT:
+			gameAction(arg0);
+			return;
+		case OthelloEventQueue.COMMAND_EVENT:
+			commandAction(arg0);
+			return;
+		case OthelloEventQueue.BOT_MOVE_EVENT:
+			// Drop moves from killed or outdated bots
+			if (arg2 == moveTicket && othelloBots[currentPlayer] != null)
+				putPiece((byte) arg0, (byte) arg1);
+			return;
+		case OthelloEventQueue.HINT_EVENT:
+			// Drop hints for positions that have been left
+			if (arg2 == moveTicket && hintBot != null) {
+				hintScores = hintBot.getHints();
+				renderTable();
+				repaint();
+			}
+			return;
+		case OthelloEventQueue.LOADED_EVENT:
+			displayTitle();
+			if (startupEvent != null) {
+				OthelloProbe.probe.endStartup(startupEvent);
+				startupEvent = null;
+			}
+			return;
+		case OthelloEventQueue.FAILED_EVENT:
+			textBox.renderText("FAILED");
+			repaint();
+			return;
+		case OthelloEventQueue.START_EVENT:
+			repaint();
+			return;
+		case OthelloEventQueue.DESTROY_EVENT:
+			stopGame(true);
+			return;
+		}
+	}
+
 	/**
 	 * Stops and optionally saves the current game
 	 */
-	public void stopGame(boolean save) {
+	private void stopGame(boolean save) {
 		if (state == GAME_STATE) {
+			stopHints();
+			hintBot = null;
+			moveTicket++;
 			for (int i = 0; i < othelloBots.length; i++)
 				if (othelloBots[i] != null) {
 					othelloBots[i].kill();
 					othelloBots[i] = null;
 				}
 			if (save) {
-				settings.saveGame(players, level, table, currentPlayer,
+				settings.saveGame(players, level, table, record, currentPlayer,
 						cursorX, cursorY);
+			} else {
+				settings.saveSettings(players, level);
+				settings.discardGame();
 			}
+			settings.saveCache(cache);
 		}
 	}
 
 	/**
 	 * Restore a saved game
+	 * 
+	 * @param slot
+	 *            The save slot, zero for the most recently saved game
 	 */
-	private void loadSavedGame() {
-
-		// Set the old cursor position
-		cursorX = settings.getCursorX();
-		cursorY = settings.getCursorY();
+	private void loadSavedGame(int slot) {
 
+		// Load the previously saved table
+		if (!settings.loadGame(slot, table, record)) {
+			displaySaveCorrupt();
+			return;
+		}
 		players = settings.getPlayers();
 		level = settings.getLevel();
 		currentPlayer = settings.getCurrentPlayer();
 
+		// Set the old cursor position
+		cursorX = settings.getCursorX();
+		cursorY = settings.getCursorY();
+
 		// Initialize the bots
 		initializeBots();
 
-		// Load previously saved table
-		settings.loadSavedTable(table);
-
-		// Clean the settings
-		settings.saveSettings(players, level);
+		// Mark the game as the most recently played
+		settings.saveGame(players, level, table, record, currentPlayer,
+				cursorX, cursorY);
 
 		// Render the table
 		renderTable();
@@ -269,28 +463,49 @@ public class OthelloGame extends Canvas implements CommandListener {
 		switchPlayer();
 	}
 
+	/**
+	 * Shows the final table of an archived game
+	 * 
+	 * @param archive
+	 *            The archived game, zero for the most recently finished
+	 */
+	private void loadArchivedGame(int archive) {
+		if (!settings.loadArchive(archive, table, record)) {
+			displaySaveCorrupt();
+			return;
+		}
+		renderTable();
+		displayResult(false);
+	}
+
 	/**
 	 * Starts a new game
 	 */
 	private void startNewGame() {
 
+		// Take a save slot for the game
+		settings.newGame();
+
 		cursorX = 0;
 		cursorY = 0;
 
-		// Remember the settings
-		settings.saveSettings(players, level);
-
 		// Initialize the bots
 		initializeBots();
 
 		// Reset and re-render the table
 		table.startNewGame();
+		record.reset(table);
 		renderTable();
 
 		// Set to black player - will switch back to white in switchPlayer()
 		currentPlayer = OthelloTable.BLACK_PLAYER;
 		state = GAME_STATE;
 		switchPlayer();
+
+		// Remember the settings and start the journal from a full save
+		if (state == GAME_STATE)
+			settings.saveGame(players, level, table, record,
+					currentPlayer, cursorX, cursorY);
 	}
 
 	/**
@@ -300,19 +515,57 @@ public class OthelloGame extends Canvas implements CommandListener {
 	private void initializeBots() {
 		// Create the first bot if less than 1 players
 		if (players < 1)
-			othelloBots[OthelloTable.WHITE_PLAYER] = new OthelloBot(this,
-					table, OthelloTable.WHITE_PLAYER, level);
+			othelloBots[OthelloTable.WHITE_PLAYER] = createBot(cache,
+					OthelloTable.WHITE_PLAYER, level);
 		else
 			othelloBots[OthelloTable.WHITE_PLAYER] = null;
 
 		// Create a second bot if no players
 		if (players < 2)
-			othelloBots[OthelloTable.BLACK_PLAYER] = new OthelloBot(this,
-					table, OthelloTable.BLACK_PLAYER, level);
+			othelloBots[OthelloTable.BLACK_PLAYER] = createBot(cache,
+					OthelloTable.BLACK_PLAYER, level);
 		else
 			othelloBots[OthelloTable.BLACK_PLAYER] = null;
 	}
 
+	/**
+	 * Creates a bot playing on the table, sharing the cpu with the gui as
+	 * configured by the application properties
+	 * 
+	 * @param cache
+	 *            The cache of earlier search results, or null
+	 * @param player
+	 *            The color of the bot
+	 * @param level
+	 *            The difficulty level of the bot
+	 * @return The bot
+	 */
+	private OthelloBot createBot(OthelloCache cache, byte player, byte level) {
+		OthelloBot bot = new OthelloBot(queue, table, cache, player, level);
+		bot.setTimeSlicing(latencyTarget, slicePause);
+		return bot;
+	}
+
+	/**
+	 * Reads a numeric application property from the jad or the manifest
+	 * 
+	 * @param name
+	 *            The property name
+	 * @param value
+	 *            The value used if the property is missing or invalid
+	 * @return The value of the property
+	 */
+	private int getIntProperty(String name, int value) {
+		String property = midlet.getAppProperty(name);
+		if (property == null)
+			return value;
+		try {
+			return Math.max(0, Integer.parseInt(property.trim()));
+		} catch (NumberFormatException e) {
+			return value;
+		}
+	}
+
 	/**
 	 * Handles commands
 	 * 
@@ -322,12 +575,23 @@ public class OthelloGame extends Canvas implements CommandListener {
 	 *            The current display
 	 */
 	public void commandAction(Command command, Displayable display) {
+		queue.post(OthelloEventQueue.COMMAND_EVENT, command.getCommandType(),
+				0, 0);
+	}
+
+	/**
+	 * Handles commands on the event queue
+	 * 
+	 * @param commandType
+	 *            The command type
+	 */
+	private void commandAction(int commandType) {
 
-		if (command.getCommandType() == Command.OK) {
+		if (commandType == Command.OK) {
 			// The ok command is always redirected to a FIRE game action
 			gameAction(FIRE);
 			return;
-		} else if (command.getCommandType() == Command.CANCEL) {
+		} else if (commandType == Command.CANCEL) {
 			// The cancel command is state dependent
 			switch (state) {
 			case LOAD_STATE:
@@ -367,7 +631,7 @@ public class OthelloGame extends Canvas implements CommandListener {
 	 */
 	public void keyPressed(int key) {
 		try {
-			gameAction(getGameAction(key));
+			queue.post(OthelloEventQueue.KEY_EVENT, getGameAction(key), 0, 0);
 		} catch (Exception e) {
 		}
 	}
@@ -389,8 +653,11 @@ public class OthelloGame extends Canvas implements CommandListener {
 
 			// The action is state dependant
 			if (state == TITLE_STATE) {
-				if (action == FIRE)
+				if (action == FIRE) {
+					queue.stop();
+					settings.flush();
 					midlet.notifyDestroyed();
+				}
 				else
 					repaint();
 				return;
@@ -404,8 +671,17 @@ public class OthelloGame extends Canvas implements CommandListener {
 		// The behaviour is state dependent
 		switch (state) {
 		case TITLE_STATE:
-			if (settings.containsSavedGame()) {
-				loadSelected = true;
+			// Finish the remaining layers at once if the player is quicker
+			// than the background thread
+			if (!skin.isComplete())
+				scaleRemainingLayers();
+			if (settings.isSaveCorrupt()) {
+				displaySaveCorrupt();
+				return;
+			}
+			if (settings.containsSavedGame()
+					|| settings.getArchiveCount() > 0) {
+				loadSelection = settings.containsSavedGame() ? 1 : 0;
 				displayLoadSelection();
 				return;
 			} else {
@@ -413,16 +689,23 @@ public class OthelloGame extends Canvas implements CommandListener {
 				return;
 			}
 		case LOAD_STATE:
+			int slots = settings.getSlotCount();
+			int options = 1 + slots + settings.getArchiveCount();
 			if (action == FIRE) {
-				if (loadSelected) {
-					loadSavedGame();
+				if (loadSelection == 0) {
+					displayGameModeSelection();
+					return;
+				} else if (loadSelection <= slots) {
+					loadSavedGame(loadSelection - 1);
 					return;
 				} else {
-					displayGameModeSelection();
+					loadArchivedGame(loadSelection - 1 - slots);
 					return;
 				}
 			} else {
-				loadSelected = !loadSelected;
+				int step = action == Canvas.LEFT || action == Canvas.UP ? -1
+						: 1;
+				loadSelection = (loadSelection + options + step) % options;
 				displayLoadSelection();
 				return;
 			}
@@ -436,8 +719,24 @@ public class OthelloGame extends Canvas implements CommandListener {
 			displayTitle();
 			return;
 		case GAME_STATE:
+			if (action == GAME_A) {
+				undoMove();
+				return;
+			} else if (action == GAME_B) {
+				redoMove();
+				return;
+			}
 			if (othelloBots[currentPlayer] == null) {
-				if (action == Canvas.FIRE) {
+				if (action == GAME_C) {
+					hintsEnabled = !hintsEnabled;
+					if (hintsEnabled)
+						startHints();
+					else
+						stopHints();
+					renderTable();
+					repaint();
+					return;
+				} else if (action == Canvas.FIRE) {
 					putPiece(cursorX, cursorY);
 					repaint();
 					return;
@@ -512,15 +811,32 @@ public class OthelloGame extends Canvas implements CommandListener {
 	 * Displays the load screen
 	 */
 	private void displayLoadSelection() {
-		if (loadSelected) {
-			textBox.renderText("LOAD GAME");
-		} else {
+		int slots = settings.getSlotCount();
+		if (loadSelection == 0) {
 			textBox.renderText("NEW GAME");
+		} else if (loadSelection <= slots) {
+			textBox.renderText("LOAD "
+					+ settings.getSlotName(loadSelection - 1));
+		} else {
+			// Tell the archived games apart by their final scores
+			int score = settings.getArchiveScore(loadSelection - 1 - slots);
+			textBox.renderText("VIEW " + (score >> 8) + "-" + (score & 0xff));
 		}
 		state = LOAD_STATE;
 		repaint();
 	}
 
+	/**
+	 * Tells that the saved game could not be read. The saved game is replaced
+	 * with the current settings.
+	 */
+	private void displaySaveCorrupt() {
+		settings.saveSettings(players, level);
+		textBox.renderText("SAVE CORRUPT");
+		state = GAME_OVER_STATE;
+		repaint();
+	}
+
 	/**
 	 * Displays the title screen
 	 */
@@ -554,13 +870,25 @@ public class OthelloGame extends Canvas implements CommandListener {
 	 * Prints the game over results
 	 */
 	private void displayGameOver() {
+		settings.archiveGame(players, level, table, record, currentPlayer);
+		settings.saveCache(cache);
+		displayResult(players == 1);
+	}
+
+	/**
+	 * Prints the results of the game on the table
+	 * 
+	 * @param personal
+	 *            True to tell the result to the single player
+	 */
+	private void displayResult(boolean personal) {
 		int score = table.getWhiteScore() - table.getBlackScore();
 		if (score == 0)
 			textBox.renderText("ITS A DRAW");
 		else if (score > 0)
-			textBox.renderText(players == 1 ? "YOU WIN" : "WHITE WINS");
+			textBox.renderText(personal ? "YOU WIN" : "WHITE WINS");
 		else if (score < 0)
-			textBox.renderText(players == 1 ? "I WIN" : "BLACK WINS");
+			textBox.renderText(personal ? "I WIN" : "BLACK WINS");
 		state = GAME_OVER_STATE;
 		repaint();
 	}
@@ -598,10 +926,35 @@ public class OthelloGame extends Canvas implements CommandListener {
 			}
 			repaint();
 
-			// Start the bot if available
+			// Start the bot if available, otherwise the hints
 			if (othelloBots[currentPlayer] != null)
-				othelloBots[currentPlayer].play();
+				othelloBots[currentPlayer].play(++moveTicket);
+			else if (hintsEnabled)
+				startHints();
+		}
+	}
+
+	/**
+	 * Starts scoring the moves of the human player in the background. The
+	 * table is shaded as the scores come in.
+	 */
+	private void startHints() {
+		stopHints();
+		if (hintBot == null)
+			hintBot = createBot(null, currentPlayer, OthelloBot.MAX_LEVEL);
+		hintBot.hint(currentPlayer, moveTicket);
+	}
+
+	/**
+	 * Stops scoring moves and removes the hints. Hints still on the queue are
+	 * dropped by their ticket.
+	 */
+	private void stopHints() {
+		if (hintBot != null) {
+			hintBot.kill();
+			moveTicket++;
 		}
+		hintScores = null;
 	}
 
 	/**
@@ -612,68 +965,174 @@ public class OthelloGame extends Canvas implements CommandListener {
 	 * @param y
 	 *            The vertical position
 	 */
-	public void putPiece(byte x, byte y) {
+	private void putPiece(byte x, byte y) {
 		if (state == GAME_STATE
 				&& table.putPiece(x, y, currentPlayer) != OthelloTable.INVALID_MOVE) {
+			stopHints();
+			table.commit();
+			record.addMove(x, y, currentPlayer);
+			boolean compact = settings.journalMove(x, y, currentPlayer, table);
 			renderTable();
 			switchPlayer();
+
+			// Fold the journal into a full save now and then
+			if (compact && state == GAME_STATE)
+				settings.saveGame(players, level, table, record, currentPlayer,
+						cursorX, cursorY);
 		}
 	}
 
 	/**
-	 * Renders the table
+	 * Takes back moves until a human player is to move, or a single move if
+	 * all players are bots
 	 */
-	private void renderTable() {
+	private void undoMove() {
+		int move = record.getPosition() - 1;
+		if (move < 0)
+			return;
+		while (move > 0 && othelloBots[record.getMovePlayer(move)] != null)
+			move--;
+		if (othelloBots[record.getMovePlayer(move)] != null)
+			move = record.getPosition() - 1;
+		jumpTo(move);
+	}
 
-		// Create the buffer if not available
-		if (renderedTable == null)
-			renderedTable = Image.createImage(TABLE_WIDTH, TABLE_HEIGHT);
+	/**
+	 * Replays undone moves until a human player is to move
+	 */
+	private void redoMove() {
+		int move = record.getPosition() + 1;
+		if (move > record.getLength())
+			return;
+		while (move < record.getLength()
+				&& othelloBots[record.getMovePlayer(move)] != null)
+			move++;
+		jumpTo(move);
+	}
 
-		Graphics g = renderedTable.getGraphics();
-		for (byte x = 0; x < OthelloTable.TABLE_WIDTH; x++)
-			for (byte y = 0; y < OthelloTable.TABLE_HEIGHT; y++) {
+	/**
+	 * Continues the game from the position after a number of recorded moves
+	 * 
+	 * @param move
+	 *            The number of moves
+	 */
+	private void jumpTo(int move) {
 
-				// Set the clip to contain only the cell
-				g.setClip(CELL_BOUNDS_X[y][x], CELL_BOUNDS_Y[y],
-						CELL_BOUNDS_X[y][x + 1] - CELL_BOUNDS_X[y][x],
-						CELL_BOUNDS_Y[y + 1] - CELL_BOUNDS_Y[y]);
+		// Stop thinking about the abandoned position
+		stopHints();
+		moveTicket++;
+		for (int i = 0; i < othelloBots.length; i++)
+			if (othelloBots[i] != null)
+				othelloBots[i].kill();
 
-				// Draw from the appropriate layer
-				g.drawImage(tableLayers[table.getPiece(x, y) << 1], 0, 0,
-						Graphics.TOP | Graphics.LEFT);
-			}
+		if (!record.jumpTo(move, table))
+			return;
+		renderTable();
+
+		// Start with the player of the previous move since switchPlayer will
+		// switch to the player of the next move
+		if (move < record.getLength())
+			currentPlayer = OthelloTable.alternatePlayer(record
+					.getMovePlayer(move));
+		else
+			currentPlayer = record.getMovePlayer(move - 1);
+		switchPlayer();
+
+		// The journal does not follow undone moves, start it from a full save
+		if (state == GAME_STATE)
+			settings.saveGame(players, level, table, record, currentPlayer,
+					cursorX, cursorY);
+	}
+
+	/**
+	 * Renders the table
+	 */
+	private void renderTable() {
+		OthelloProbe probe = OthelloProbe.probe;
+		Object event = probe != null ? probe.beginTableRender() : null;
+		synchronized (frameLock) {
+
+			// Create the buffer if not available
+			if (renderedTable == null)
+				renderedTable = Image.createImage(skin.getWidth(), skin
+						.getHeight());
+
+			Graphics g = renderedTable.getGraphics();
+			for (byte x = 0; x < OthelloTable.TABLE_WIDTH; x++)
+				for (byte y = 0; y < OthelloTable.TABLE_HEIGHT; y++) {
+					skin.drawCell(g, table.getPiece(x, y), false, x, y, 0, 0);
+					renderHint(g, x, y, 0, 0);
+				}
+		}
+		if (event != null)
+			probe.endTableRender(event);
 	}
 
 	/**
-	 * Renders the cursor directly on a graphics object given the position of
-	 * the table
+	 * Copies the cursor of the handled event for paint(), which does not
+	 * read the game state itself
+	 */
+	private void publishCursor() {
+		boolean cursor = state == GAME_STATE
+				&& othelloBots[currentPlayer] == null;
+		byte piece = table.getPiece(cursorX, cursorY);
+		if (piece == OthelloTable.EMPTY_SQUARE)
+			piece = currentPlayer;
+		synchronized (frameLock) {
+			frameCursor = cursor;
+			frameCursorX = cursorX;
+			frameCursorY = cursorY;
+			frameCursorPiece = piece;
+		}
+	}
+
+	/**
+	 * Shades a move by its hint score, from green for the best move to red
+	 * for moves HINT_RANGE or more below it
 	 * 
 	 * @param g
 	 *            The graphics object that is used to draw on
+	 * @param x
+	 *            The horisontal position of the move
+	 * @param y
+	 *            The vertical position of the move
 	 * @param tableX
 	 *            The horisontal position of the table
 	 * @param tableY
 	 *            The vertical position of the table
 	 */
-	private void renderCursor(Graphics g, int tableX, int tableY) {
+	private void renderHint(Graphics g, byte x, byte y, int tableX, int tableY) {
+		int[] scores = hintScores;
+		if (scores == null
+				|| scores[y * OthelloTable.TABLE_WIDTH + x] == -OthelloBot.INFINITY)
+			return;
+		int best = -OthelloBot.INFINITY;
+		for (int i = 0; i < scores.length; i++)
+			best = Math.max(best, scores[i]);
+		int shade = Math.min(HINT_RANGE, best
+				- scores[y * OthelloTable.TABLE_WIDTH + x])
+				* 255 / HINT_RANGE;
+		skin.shadeCell(g, shade << 16 | 255 - shade << 8, x, y, tableX,
+				tableY);
+	}
 
-		// Collect the clip
-		int clipX = tableX + CELL_BOUNDS_X[cursorY][cursorX];
-		int clipY = tableY + CELL_BOUNDS_Y[cursorY];
-		int clipWidth = CELL_BOUNDS_X[cursorY][cursorX + 1]
-				- CELL_BOUNDS_X[cursorY][cursorX];
-		int clipHeight = CELL_BOUNDS_Y[cursorY + 1] - CELL_BOUNDS_Y[cursorY];
-		g.setClip(clipX, clipY, clipWidth, clipHeight);
+	/**
+	 * Renders the cursor copied by publishCursor() directly on a graphics
+	 * object given the position of the table
+	 * 
+	 * @param g
+	 *            The graphics object that is used to draw on
+	 * @param tableX
+	 *            The horisontal position of the table
+	 * @param tableY
+	 *            The vertical position of the table
+	 */
+	private void renderCursor(Graphics g, int tableX, int tableY) {
 
 		// Draw the appropriate cell
-		byte piece = table.getPiece(cursorX, cursorY);
-		if (piece == OthelloTable.EMPTY_SQUARE) {
-			g.drawImage(tableLayers[currentPlayer << 1 | 1], tableX, tableY,
-					Graphics.TOP | Graphics.LEFT);
-		} else {
-			g.drawImage(tableLayers[piece << 1 | 1], tableX, tableY,
-					Graphics.TOP | Graphics.LEFT);
-		}
+		skin.drawCell(g, frameCursorPiece, true, frameCursorX, frameCursorY,
+				tableX, tableY);
+		renderHint(g, frameCursorX, frameCursorY, tableX, tableY);
 	}
 
 	/**
@@ -688,28 +1147,35 @@ public class OthelloGame extends Canvas implements CommandListener {
 		Graphics g = isDoubleBuffered() ? graphics : offScreen.getGraphics();
 
 		// Get the positioning points
-		int tableX = (getWidth() - TABLE_WIDTH) / 2;
-		int tableY = (getHeight() - TABLE_HEIGHT - OthelloTextBox.BOX_HEIGHT + 5) / 2;
+		int tableWidth = skin != null ? skin.getWidth() : 0;
+		int tableHeight = skin != null ? skin.getHeight() : 0;
+		int tableX = (getWidth() - tableWidth) / 2;
+		int tableY = (getHeight() - tableHeight - OthelloTextBox.BOX_HEIGHT + TEXT_GAP) / 2;
 		int textX = (getWidth() - TEXT_WIDTH) / 2;
-		int textY = tableY + TABLE_HEIGHT + 5;
+		int textY = tableY + tableHeight + TEXT_GAP;
 
 		// Clear background
 		g.setColor(0);
 		g.fillRect(0, 0, getWidth(), getHeight());
 
-		// Draw the table
-		if (renderedTable != null)
-			g.drawImage(renderedTable, tableX, tableY,
-					(Graphics.TOP | Graphics.LEFT));
-
-		// Draw the text bar
+		// Draw the text bar, which guards its own image
 		if (textBox != null)
-			if (textBox.paint(g, textX, textY))
+			if (textBox.paint(g, textX, textY)) {
+				queue.markActivity();
 				repaint();
+			}
+
+		// Draw the table and the cursor as left by the last handled event,
+		// without waiting for the event being handled
+		synchronized (frameLock) {
+			if (renderedTable != null)
+				g.drawImage(renderedTable, tableX, tableY,
+						(Graphics.TOP | Graphics.LEFT));
 
-		// Draw cursor when in move state with human player
-		if (state == GAME_STATE && othelloBots[currentPlayer] == null)
-			renderCursor(g, tableX, tableY);
+			// Draw cursor when in move state with human player
+			if (frameCursor)
+				renderCursor(g, tableX, tableY);
+		}
 
 		// Draw the offScreen onto the screen if manually double buffering
 		if (!isDoubleBuffered())
@@ -34,7 +34,7 @@ public class OthelloMIDlet extends MIDlet {
 	 * Called when the MIDlet is started
 	 */
 	protected void startApp() throws MIDletStateChangeException {
-		game.repaint();
+		game.start();
 	}
 
 	/**
@@ -47,6 +47,6 @@ public class OthelloMIDlet extends MIDlet {
 	 * Called when the MIDlet is destroyed
 	 */
 	protected void destroyApp(boolean arg0) throws MIDletStateChangeException {
-		game.stopGame(true);
+		game.destroy();
 	}
 }
@@ -0,0 +1,240 @@
+package com.othello;
+
+/**
+ * This class holds a board of up to 64 squares with the discs of each
+ * player as the bits (y * size + x) of a long. All moves are found at once
+ * by shifting the discs of the player over the discs of the opponent in
+ * each direction, which costs the same for any number of moves.
+ */
+class OthelloPackedBoard extends OthelloBoard {
+
+	/**
+	 * All squares of the board
+	 */
+	private final long full;
+
+	/**
+	 * The squares that are not in the left column
+	 */
+	private final long notLeft;
+
+	/**
+	 * The squares that are not in the right column
+	 */
+	private final long notRight;
+
+	/**
+	 * The distance between neighbouring squares in each of the four
+	 * directions that run towards higher squares
+	 */
+	private final int[] shifts;
+
+	/**
+	 * The squares that a shift towards higher squares can reach without
+	 * wrapping around an edge, for each direction
+	 */
+	private final long[] upMasks;
+
+	/**
+	 * The squares that a shift towards lower squares can reach without
+	 * wrapping around an edge, for each direction
+	 */
+	private final long[] downMasks;
+
+	/**
+	 * The black discs of each position in the history
+	 */
+	private final long[] black;
+
+	/**
+	 * The white discs of each position in the history
+	 */
+	private final long[] white;
+
+	/**
+	 * Pointer to the current position in the history
+	 */
+	private int current;
+
+	/**
+	 * Creates an empty board
+	 * 
+	 * @param size
+	 *            The number of squares along each side, at most 8
+	 */
+	OthelloPackedBoard(int size) {
+		super(size);
+		full = size * size == 64 ? -1L : (1L << size * size) - 1;
+		long left = 0;
+		for (int y = 0; y < size; y++)
+			left |= 1L << y * size;
+		long right = left << size - 1;
+		notLeft = full & ~left;
+		notRight = full & ~right;
+
+		// East, south, south east and south west, and back
+		shifts = new int[] { 1, size, size + 1, size - 1 };
+		upMasks = new long[] { notLeft, full, notLeft, notRight };
+		downMasks = new long[] { notRight, full, notRight, notLeft };
+
+		black = new long[size * size - 3];
+		white = new long[black.length];
+	}
+
+	/**
+	 * Empties the board, leaving it without history
+	 */
+	public void clear() {
+		current = 0;
+		black[0] = 0;
+		white[0] = 0;
+	}
+
+	/**
+	 * Places a disc without flipping any discs, leaving the board without
+	 * history
+	 */
+	public void setPiece(int square, byte piece) {
+		long bit = 1L << square;
+		black[0] = black[current] & ~bit;
+		white[0] = white[current] & ~bit;
+		current = 0;
+		if (piece == OthelloTable.BLACK_PLAYER)
+			black[0] |= bit;
+		else if (piece == OthelloTable.WHITE_PLAYER)
+			white[0] |= bit;
+	}
+
+	/**
+	 * Returns the player or empty square of a square
+	 */
+	public byte getPiece(int square) {
+		long bit = 1L << square;
+		if ((black[current] & bit) != 0)
+			return OthelloTable.BLACK_PLAYER;
+		if ((white[current] & bit) != 0)
+			return OthelloTable.WHITE_PLAYER;
+		return OthelloTable.EMPTY_SQUARE;
+	}
+
+	/**
+	 * Returns the number of discs of a player
+	 */
+	public int getDiscs(byte player) {
+		return OthelloTable.countBits(getMask(player));
+	}
+
+	/**
+	 * Finds the moves of a player in increasing order
+	 */
+	public int getMoves(byte player, int[] squares) {
+		long moves = getMoveMask(player);
+		int count = 0;
+		for (int square = 0; moves != 0; square++, moves >>>= 1)
+			if ((moves & 1) != 0)
+				squares[count++] = square;
+		return count;
+	}
+
+	/**
+	 * Counts the moves of a player
+	 */
+	public int countMoves(byte player) {
+		return OthelloTable.countBits(getMoveMask(player));
+	}
+
+	/**
+	 * Performs a move and keeps the previous position in the history
+	 */
+	public int putPiece(int square, byte player) {
+		if (square < 0 || square >= size * size
+				|| current == black.length - 1)
+			return OthelloTable.INVALID_MOVE;
+		long own = getMask(player);
+		long opponent = getMask(OthelloTable.alternatePlayer(player));
+		long bit = 1L << square;
+		if (((own | opponent) & bit) != 0)
+			return OthelloTable.INVALID_MOVE;
+
+		// Walk from the move over the opponent in each direction and keep
+		// the walk if it ends on a disc of the player
+		long flips = 0;
+		for (int d = 0; d < shifts.length; d++) {
+			int shift = shifts[d];
+			long line = 0;
+			long next = bit << shift & upMasks[d];
+			while ((next & opponent) != 0) {
+				line |= next;
+				next = next << shift & upMasks[d];
+			}
+			if ((next & own) != 0)
+				flips |= line;
+			line = 0;
+			next = bit >>> shift & downMasks[d];
+			while ((next & opponent) != 0) {
+				line |= next;
+				next = next >>> shift & downMasks[d];
+			}
+			if ((next & own) != 0)
+				flips |= line;
+		}
+		if (flips == 0)
+			return OthelloTable.INVALID_MOVE;
+
+		own |= flips | bit;
+		opponent &= ~flips;
+		current++;
+		if (player == OthelloTable.BLACK_PLAYER) {
+			black[current] = own;
+			white[current] = opponent;
+		} else {
+			white[current] = own;
+			black[current] = opponent;
+		}
+		return OthelloTable.countBits(flips);
+	}
+
+	/**
+	 * Rewinds this board one move back in history
+	 */
+	public boolean rewind() {
+		if (current == 0)
+			return false;
+		current--;
+		return true;
+	}
+
+	/**
+	 * Returns the discs of a player
+	 */
+	private long getMask(byte player) {
+		return player == OthelloTable.BLACK_PLAYER ? black[current]
+				: white[current];
+	}
+
+	/**
+	 * Finds the moves of a player as a bit mask. In each direction the
+	 * discs of the opponent next to a disc of the player are extended one
+	 * step at a time, a run can be at most size - 2 discs long, and the
+	 * empty squares after the runs are the moves.
+	 */
+	private long getMoveMask(byte player) {
+		long own = getMask(player);
+		long opponent = getMask(OthelloTable.alternatePlayer(player));
+		long moves = 0;
+		for (int d = 0; d < shifts.length; d++) {
+			int shift = shifts[d];
+			long mask = upMasks[d] & opponent;
+			long run = own << shift & mask;
+			for (int i = 3; i < size; i++)
+				run |= run << shift & mask;
+			moves |= run << shift & upMasks[d];
+			mask = downMasks[d] & opponent;
+			run = own >>> shift & mask;
+			for (int i = 3; i < size; i++)
+				run |= run >>> shift & mask;
+			moves |= run >>> shift & downMasks[d];
+		}
+		return moves & ~(own | opponent);
+	}
+}
@@ -0,0 +1,162 @@
+package com.othello;
+
+/**
+ * This class receives timing events from the engine, so that a profiler
+ * can record where the time goes when the engine runs on a desktop JVM. A
+ * probe is installed by naming its class in the system property
+ * othello.probe. The class is loaded and installs an instance of itself
+ * with install() when it is initialized. Without one, as on the phone, each
+ * event costs a single field read.
+ * <p>
+ * Each event is bracketed by a begin and an end method. A probe returns
+ * null from a begin method for events it does not record, and the end
+ * method is then not called.
+ */
+public abstract class OthelloProbe {
+
+	/**
+	 * The system property naming the class of the probe
+	 */
+	public static final String PROBE_PROPERTY = "othello.probe";
+
+	/**
+	 * The installed probe, or null
+	 */
+	static OthelloProbe probe;
+
+	static {
+		String name = System.getProperty(PROBE_PROPERTY);
+		if (name != null) {
+			try {
+				Class.forName(name);
+			} catch (Exception e) {
+				// Run without a probe
+			}
+		}
+	}
+
+	/**
+	 * Installs a probe. A probe class named by the system property calls
+	 * this from its static initializer.
+	 * 
+	 * @param probe
+	 *            The probe, or null to run without one
+	 */
+	public static void install(OthelloProbe probe) {
+		OthelloProbe.probe = probe;
+	}
+
+	/**
+	 * Begins a bot search
+	 * 
+	 * @return The event, or null if searches are not recorded
+	 */
+	public abstract Object beginSearch();
+
+	/**
+	 * Ends a bot search
+	 * 
+	 * @param event
+	 *            The event returned by beginSearch()
+	 * @param depth
+	 *            The depth searched, or OthelloBot.EXACT_DEPTH if the game
+	 *            was solved exactly
+	 * @param nodes
+	 *            The number of nodes searched
+	 * @param square
+	 *            The square of the chosen move (y * TABLE_WIDTH + x), or -1
+	 *            if the search chose no move, as when it only scored the
+	 *            position or the moves for hints
+	 * @param score
+	 *            The score of the chosen move or the scored position, 0 for
+	 *            hints
+	 */
+	public abstract void endSearch(Object event, int depth, int nodes,
+			int square, int score);
+
+	/**
+	 * Begins rendering the table
+	 * 
+	 * @return The event, or null if table renders are not recorded
+	 */
+	public abstract Object beginTableRender();
+
+	/**
+	 * Ends rendering the table
+	 * 
+	 * @param event
+	 *            The event returned by beginTableRender()
+	 */
+	public abstract void endTableRender(Object event);
+
+	/**
+	 * Begins rendering the text of a text box
+	 * 
+	 * @return The event, or null if text renders are not recorded
+	 */
+	public abstract Object beginTextRender();
+
+	/**
+	 * Ends rendering the text of a text box
+	 * 
+	 * @param event
+	 *            The event returned by beginTextRender()
+	 * @param length
+	 *            The number of characters rendered
+	 */
+	public abstract void endTextRender(Object event, int length);
+
+	/**
+	 * Begins a record store write
+	 * 
+	 * @return The event, or null if writes are not recorded
+	 */
+	public abstract Object beginRecordWrite();
+
+	/**
+	 * Ends a record store write
+	 * 
+	 * @param event
+	 *            The event returned by beginRecordWrite()
+	 * @param type
+	 *            The write type (OthelloWriter.SET_RECORD etc.)
+	 * @param length
+	 *            The number of bytes written
+	 */
+	public abstract void endRecordWrite(Object event, int type, int length);
+
+	/**
+	 * Begins the startup of the game, when the game is created
+	 * 
+	 * @return The event, or null if the startup is not recorded
+	 */
+	public abstract Object beginStartup();
+
+	/**
+	 * Ends the startup of the game, when the title is displayed
+	 * 
+	 * @param event
+	 *            The event returned by beginStartup()
+	 */
+	public abstract void endStartup(Object event);
+
+	/**
+	 * Begins handling an input event of the event queue
+	 * 
+	 * @return The event, or null if input is not recorded
+	 */
+	public abstract Object beginInput();
+
+	/**
+	 * Ends handling an input event of the event queue
+	 * 
+	 * @param event
+	 *            The event returned by beginInput()
+	 * @param type
+	 *            The queue event type (OthelloEventQueue.KEY_EVENT or
+	 *            OthelloEventQueue.COMMAND_EVENT)
+	 * @param latency
+	 *            The time in milliseconds the input waited in the queue
+	 */
+	public abstract void endInput(Object event, int type, int latency);
+}
@@ -0,0 +1,232 @@
+package com.othello;
+
+/**
+ * This class holds the record of a game as a start position followed by the
+ * moves played, one byte per move. Moves that have been undone are kept
+ * until a new move is played, so that they can be redone.
+ */
+public class OthelloRecord {
+
+	/**
+	 * The maximum number of moves in a game
+	 */
+	public static final int MAX_MOVES = OthelloTable.TABLE_WIDTH
+			* OthelloTable.TABLE_HEIGHT - 4;
+
+	/**
+	 * The maximum size of a saved record
+	 */
+	public static final int MAX_SAVE_SIZE = 2 * 8 + 1 + MAX_MOVES;
+
+	/**
+	 * The bit marking a move by the white player
+	 */
+	private static final byte WHITE_MOVE = 64;
+
+	/**
+	 * The black pieces of the start position
+	 */
+	private long baseBlack;
+
+	/**
+	 * The white pieces of the start position
+	 */
+	private long baseWhite;
+
+	/**
+	 * The moves, each encoded as the square index with WHITE_MOVE set for the
+	 * white player
+	 */
+	private byte[] moves;
+
+	/**
+	 * The number of recorded moves, including undone moves
+	 */
+	private int length;
+
+	/**
+	 * The number of moves played on the table
+	 */
+	private int position;
+
+	/**
+	 * Creates an empty record
+	 */
+	public OthelloRecord() {
+		moves = new byte[MAX_MOVES];
+	}
+
+	/**
+	 * Starts a new record from the current position of a table
+	 * 
+	 * @param table
+	 *            The table holding the start position
+	 */
+	public void reset(OthelloTable table) {
+		baseBlack = table.getMask(OthelloTable.BLACK_PLAYER);
+		baseWhite = table.getMask(OthelloTable.WHITE_PLAYER);
+		length = 0;
+		position = 0;
+	}
+
+	/**
+	 * Records a move that has just been played. Any undone moves are
+	 * forgotten.
+	 * 
+	 * @param x
+	 *            The horizontal position of the move
+	 * @param y
+	 *            The vertical position of the move
+	 * @param player
+	 *            The player that made the move
+	 */
+	public void addMove(byte x, byte y, byte player) {
+		if (position == MAX_MOVES)
+			return;
+		byte move = (byte) (y * OthelloTable.TABLE_WIDTH + x);
+		if (player == OthelloTable.WHITE_PLAYER)
+			move |= WHITE_MOVE;
+		moves[position++] = move;
+		length = position;
+	}
+
+	/**
+	 * Returns the number of moves played on the table
+	 */
+	public int getPosition() {
+		return position;
+	}
+
+	/**
+	 * Returns the number of recorded moves, including undone moves
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the horizontal position of a recorded move
+	 */
+	public byte getMoveX(int move) {
+		return (byte) ((moves[move] & WHITE_MOVE - 1) % OthelloTable.TABLE_WIDTH);
+	}
+
+	/**
+	 * Returns the vertical position of a recorded move
+	 */
+	public byte getMoveY(int move) {
+		return (byte) ((moves[move] & WHITE_MOVE - 1) / OthelloTable.TABLE_WIDTH);
+	}
+
+	/**
+	 * Returns the player of a recorded move
+	 */
+	public byte getMovePlayer(int move) {
+		return (moves[move] & WHITE_MOVE) != 0 ? OthelloTable.WHITE_PLAYER
+				: OthelloTable.BLACK_PLAYER;
+	}
+
+	/**
+	 * Sets up a table with the position after a number of recorded moves.
+	 * Going forward only the moves in between are played, going back the
+	 * moves are replayed from the start position. Either way the table is
+	 * left without history.
+	 * 
+	 * @param move
+	 *            The number of moves to play, at most getLength()
+	 * @param table
+	 *            The table to set up, holding the current position
+	 * @return False if a recorded move is invalid on the table
+	 */
+	public boolean jumpTo(int move, OthelloTable table) {
+		if (move < 0 || move > length)
+			return false;
+		if (move < position) {
+			table.setPosition(baseBlack, baseWhite);
+			position = 0;
+		}
+		for (; position < move; position++)
+			if (table.putPiece(getMoveX(position), getMoveY(position),
+					getMovePlayer(position)) == OthelloTable.INVALID_MOVE) {
+				table.commit();
+				return false;
+			}
+		table.commit();
+		return true;
+	}
+
+	/**
+	 * Saves the start position (one bit mask per player) followed by the
+	 * moves played, one byte per move. Undone moves are not saved.
+	 * 
+	 * @param buffer
+	 *            The buffer to write to, with room for MAX_SAVE_SIZE bytes
+	 * @param offset
+	 *            The position to write the record at
+	 * @return The position after the saved record
+	 */
+	public int save(byte[] buffer, int offset) {
+		writeMask(buffer, offset, baseBlack);
+		writeMask(buffer, offset + 8, baseWhite);
+		offset += 2 * 8;
+		buffer[offset++] = (byte) position;
+		System.arraycopy(moves, 0, buffer, offset, position);
+		return offset + position;
+	}
+
+	/**
+	 * Loads a record saved by save() and plays all its moves on a table
+	 * 
+	 * @param buffer
+	 *            The buffer to read from
+	 * @param offset
+	 *            The position of the saved record in the buffer
+	 * @param length
+	 *            The number of valid bytes in the buffer
+	 * @param table
+	 *            The table to play the moves on
+	 * @return True if a valid record was loaded
+	 */
+	public boolean load(byte[] buffer, int offset, int length,
+			OthelloTable table) {
+
+		if (length - offset < 2 * 8 + 1)
+			return false;
+
+		long black = readMask(buffer, offset);
+		long white = readMask(buffer, offset + 8);
+		int count = buffer[offset + 2 * 8];
+		offset += 2 * 8 + 1;
+		if ((black & white) != 0 || count < 0 || count > length - offset
+				|| count > MAX_MOVES)
+			return false;
+
+		baseBlack = black;
+		baseWhite = white;
+		System.arraycopy(buffer, offset, moves, 0, count);
+		this.length = count;
+		position = 0;
+		table.setPosition(black, white);
+		return jumpTo(count, table);
+	}
+
+	/**
+	 * Reads a bit mask stored most significant byte first
+	 */
+	private static long readMask(byte[] buffer, int offset) {
+		long mask = 0;
+		for (int i = 0; i < 8; i++)
+			mask = mask << 8 | (buffer[offset + i] & 0xff);
+		return mask;
+	}
+
+	/**
+	 * Writes a bit mask most significant byte first
+	 */
+	private static void writeMask(byte[] buffer, int offset, long mask) {
+		for (int i = 7; i >= 0; i--) {
+			buffer[offset + i] = (byte) mask;
+			mask >>>= 8;
+		}
+	}
+}
@@ -1,33 +1,127 @@
 package com.othello;
 
-import javax.microedition.rms.InvalidRecordIDException;
+import javax.microedition.rms.RecordComparator;
 import javax.microedition.rms.RecordEnumeration;
 import javax.microedition.rms.RecordStore;
 import javax.microedition.rms.RecordStoreException;
-import javax.microedition.rms.RecordStoreFullException;
 
 /**
- * This class holds the permanent settings for the Othello game
+ * This class holds the permanent settings and the saved games for the Othello
+ * game. The games are kept in a library of save slots and archived finished
+ * games, listed by a single index record.
  *
  * @author Bjorn.Husberg@guide.se
  */
 public class OthelloSettings {
 
 	/**
-	 * The othello RecordStore
+	 * The legacy othello RecordStore, migrated into the library
 	 */
 	private static final String othelloRS = "othello";
 
 	/**
-	 * The identifier for settings only object
+	 * The RecordStore holding the index, the save slots and the archives
+	 */
+	private static final String libraryRS = "othellogames";
+
+	/**
+	 * The RecordStore holding the moves played since the last save
+	 */
+	private static final String journalRS = "othellojournal";
+
+	/**
+	 * The RecordStore holding the search result cache
+	 */
+	private static final String cacheRS = "othellocache";
+
+	/**
+	 * The number of save slots
+	 */
+	public static final byte MAX_SLOTS = 3;
+
+	/**
+	 * The number of archived finished games
+	 */
+	public static final byte MAX_ARCHIVES = 5;
+
+	/**
+	 * The total number of game records in the library
+	 */
+	private static final byte MAX_ENTRIES = MAX_SLOTS + MAX_ARCHIVES;
+
+	/**
+	 * The ID of the index record, always the first record of the library
+	 */
+	private static final int INDEX_RECORD_ID = 1;
+
+	/**
+	 * The number of journaled moves before the journal is compacted into a
+	 * full save
+	 */
+	private static final byte JOURNAL_COMPACT_INTERVAL = 12;
+
+	/**
+	 * Array position holder for the ply in a journal record
+	 */
+	private static final byte JOURNAL_PLY_POS = 0;
+
+	/**
+	 * Array position holder for the horizontal move position in a journal
+	 * record
+	 */
+	private static final byte JOURNAL_X_POS = 1;
+
+	/**
+	 * Array position holder for the vertical move position in a journal
+	 * record
+	 */
+	private static final byte JOURNAL_Y_POS = 2;
+
+	/**
+	 * Array position holder for the player in a journal record
+	 */
+	private static final byte JOURNAL_PLAYER_POS = 3;
+
+	/**
+	 * The size of a journal record
+	 */
+	private static final byte JOURNAL_RECORD_SIZE = 4;
+
+	/**
+	 * The identifier for settings only object in the legacy format
 	 */
 	private static final byte IDENTIFIER_SETTINGS_ONLY = -123;
 
 	/**
-	 * The identifier for a full save
+	 * The identifier for a full save in the legacy format
 	 */
 	private static final byte IDENTIFIER_FULL_SAVE = -122;
 
+	/**
+	 * The identifier for a versioned save
+	 */
+	private static final byte IDENTIFIER_VERSIONED = -121;
+
+	/**
+	 * The identifier for the library index
+	 */
+	private static final byte IDENTIFIER_INDEX = -120;
+
+	/**
+	 * The current version of the save format
+	 */
+	private static final byte FORMAT_VERSION = 1;
+
+	/**
+	 * The flag marking a full save
+	 */
+	private static final byte FLAG_FULL_SAVE = 1;
+
+	/**
+	 * The size of the trailing checksum
+	 */
+	private static final byte CHECKSUM_SIZE = 2;
+
 	/**
 	 * Default number of players
 	 */
@@ -43,153 +137,1023 @@ public class OthelloSettings {
 	 */
 	private static final byte IDENTIFIER_POS = 0;
 
+	/**
+	 * Array position holder for the format version
+	 */
+	private static final byte VERSION_POS = 1;
+
+	/**
+	 * Array position holder for the flags
+	 */
+	private static final byte FLAGS_POS = 2;
+
 	/**
 	 * Array position holder for the players count
 	 */
-	private static final byte PLAYERS_POS = 1;
+	private static final byte PLAYERS_POS = 3;
 
 	/**
 	 * Array position holder for the level
 	 */
-	private static final byte LEVEL_POS = 2;
+	private static final byte LEVEL_POS = 4;
 
 	/**
 	 * Array position holder for the current player
 	 */
-	private static final byte CURRENT_PLAYER_POS = 3;
+	private static final byte CURRENT_PLAYER_POS = 5;
 
 	/**
 	 * Array position holder for the horizontal cursor position
 	 */
-	private static final byte CURSOR_X_POS = 4;
+	private static final byte CURSOR_X_POS = 6;
 
 	/**
 	 * Array position holder for the vertical cursor position
 	 */
-	private static final byte CURSOR_Y_POS = 5;
-	
+	private static final byte CURSOR_Y_POS = 7;
+
 	/**
 	 * Array position holder for the table position
 	 */
-	private static final byte TABLE_POS = 6;
+	private static final byte TABLE_POS = 8;
+
+	/**
+	 * Array position holder for the players count in the legacy format,
+	 * followed by the level, current player and cursor position
+	 */
+	private static final byte LEGACY_PLAYERS_POS = 1;
+
+	/**
+	 * Array position holder for the table position in the legacy format
+	 */
+	private static final byte LEGACY_TABLE_POS = 6;
+
+	/**
+	 * Array position holder for the players count in the index
+	 */
+	private static final byte INDEX_PLAYERS_POS = 2;
 
 	/**
-	 * The ID for the single record
+	 * Array position holder for the level in the index
 	 */
-	private int recordId;
+	private static final byte INDEX_LEVEL_POS = 3;
 
 	/**
-	 * The actual record store object
+	 * Array position holder for the active entry in the index
 	 */
-	private RecordStore recordStore;
+	private static final byte INDEX_ACTIVE_POS = 4;
 
 	/**
-	 * The buffer used to save options
+	 * Array position holder for the next archive entry in the index
+	 */
+	private static final byte INDEX_NEXT_ARCHIVE_POS = 5;
+
+	/**
+	 * Array position holder for the next game number in the index (two
+	 * bytes)
+	 */
+	private static final byte INDEX_NEXT_NUMBER_POS = 6;
+
+	/**
+	 * Array position holder for the recency stamp counter in the index (four
+	 * bytes)
+	 */
+	private static final byte INDEX_STAMP_POS = 8;
+
+	/**
+	 * Array position holder for the first entry in the index
+	 */
+	private static final byte INDEX_ENTRIES_POS = 12;
+
+	/**
+	 * Entry position holder for the record ID (two bytes)
+	 */
+	private static final byte ENTRY_RECORD_ID_POS = 0;
+
+	/**
+	 * Entry position holder for the game number (two bytes), zero if unused
+	 */
+	private static final byte ENTRY_NUMBER_POS = 2;
+
+	/**
+	 * Entry position holder for the recency stamp (four bytes)
+	 */
+	private static final byte ENTRY_STAMP_POS = 4;
+
+	/**
+	 * Entry position holder for the black score
+	 */
+	private static final byte ENTRY_BLACK_POS = 8;
+
+	/**
+	 * Entry position holder for the white score
+	 */
+	private static final byte ENTRY_WHITE_POS = 9;
+
+	/**
+	 * The size of an index entry
+	 */
+	private static final byte ENTRY_SIZE = 10;
+
+	/**
+	 * The size of the index record without the checksum
+	 */
+	private static final int INDEX_SIZE = INDEX_ENTRIES_POS + MAX_ENTRIES
+			* ENTRY_SIZE;
+
+	/**
+	 * The library record store object
+	 */
+	private RecordStore libraryStore;
+
+	/**
+	 * The journal record store object
+	 */
+	private RecordStore journalStore;
+
+	/**
+	 * The cache record store object
+	 */
+	private RecordStore cacheStore;
+
+	/**
+	 * The ID of the single cache record, or 0 if not created yet
+	 */
+	private int cacheRecordId;
+
+	/**
+	 * The buffer used to save the cache
+	 */
+	private byte[] cacheBuffer;
+
+	/**
+	 * The number of records in the journal
+	 */
+	private int journalLength;
+
+	/**
+	 * The writer performing all record store writes in the background
+	 */
+	private OthelloWriter writer;
+
+	/**
+	 * The buffer holding the game record last read or written
 	 */
 	private byte[] saveBuffer;
 
 	/**
-	 * Creates an instance of Othello settings
+	 * The length of the valid data in the save buffer
+	 */
+	private int saveLength;
+
+	/**
+	 * True if the save buffer holds a table in the legacy format
+	 */
+	private boolean legacyTable;
+
+	/**
+	 * True if the index or a game record was found to be corrupt
+	 */
+	private boolean corrupt;
+
+	/**
+	 * The buffer used to write journal records
+	 */
+	private byte[] journalBuffer;
+
+	/**
+	 * The buffer used to write the index
+	 */
+	private byte[] indexBuffer;
+
+	/**
+	 * The selected number of players
+	 */
+	private byte players;
+
+	/**
+	 * The selected level
+	 */
+	private byte level;
+
+	/**
+	 * The entry of the game being played, which the journal belongs to, or
+	 * -1 if none
+	 */
+	private int activeEntry;
+
+	/**
+	 * The archive entry to overwrite next, relative to the first archive
+	 */
+	private int nextArchive;
+
+	/**
+	 * The number given to the next new game
+	 */
+	private int nextNumber;
+
+	/**
+	 * The last recency stamp given
+	 */
+	private int stamp;
+
+	/**
+	 * The record ID of every entry
+	 */
+	private int[] recordIds;
+
+	/**
+	 * The game number of every entry, zero for unused entries
+	 */
+	private int[] numbers;
+
+	/**
+	 * The recency stamp of every entry
+	 */
+	private int[] stamps;
+
+	/**
+	 * The black score of every entry
+	 */
+	private byte[] blackScores;
+
+	/**
+	 * The white score of every entry
+	 */
+	private byte[] whiteScores;
+
+	/**
+	 * Creates an instance of Othello settings. Only the index record is read,
+	 * the games are read when loaded.
 	 */
 	public OthelloSettings() {
 
-		saveBuffer = new byte[6 + OthelloTable.TABLE_HEIGHT
-				* OthelloTable.TABLE_WIDTH];
+		saveBuffer = new byte[Math.max(TABLE_POS + OthelloRecord.MAX_SAVE_SIZE
+				+ CHECKSUM_SIZE, LEGACY_TABLE_POS + OthelloTable.TABLE_HEIGHT
+				* OthelloTable.TABLE_WIDTH)];
+		journalBuffer = new byte[JOURNAL_RECORD_SIZE];
+		indexBuffer = new byte[INDEX_SIZE + CHECKSUM_SIZE];
+		recordIds = new int[MAX_ENTRIES];
+		numbers = new int[MAX_ENTRIES];
+		stamps = new int[MAX_ENTRIES];
+		blackScores = new byte[MAX_ENTRIES];
+		whiteScores = new byte[MAX_ENTRIES];
+		resetIndex();
+		writer = new OthelloWriter();
 
-		saveBuffer[PLAYERS_POS] = DEFAULT_PLAYERS;
-		saveBuffer[LEVEL_POS] = DEFAULT_LEVEL;
+		try {
+			journalStore = RecordStore.openRecordStore(journalRS, true);
+			journalLength = journalStore.getNumRecords();
+		} catch (RecordStoreException e) {
+			journalStore = null;
+		}
 
 		try {
-			recordStore = RecordStore.openRecordStore(othelloRS, true);
+			libraryStore = RecordStore.openRecordStore(libraryRS, true);
+			if (libraryStore.getNumRecords() == 0) {
+				createLibrary();
+				migrate();
+			} else {
+				byte[] record = libraryStore.getRecord(INDEX_RECORD_ID);
+				if (!readIndex(record == null ? new byte[0] : record)) {
+					resetIndex();
+					corrupt = true;
+				}
+			}
+		} catch (RecordStoreException e) {
+			libraryStore = null;
+		}
+
+		// Fold moves journaled before the midlet was killed into the active
+		// game, so that every game can be loaded without the journal
+		if (libraryStore != null && journalLength > 0 && activeEntry >= 0)
+			recoverJournal();
+	}
+
+	/**
+	 * Creates the index and an empty record for every entry, so that all
+	 * later writes replace existing records
+	 */
+	private void createLibrary() throws RecordStoreException {
+		writeIndexBuffer();
+		libraryStore.addRecord(indexBuffer, 0, indexBuffer.length);
+		for (int i = 0; i < MAX_ENTRIES; i++)
+			recordIds[i] = libraryStore.addRecord(saveBuffer, 0, 0);
+		writeIndexBuffer();
+		libraryStore.setRecord(INDEX_RECORD_ID, indexBuffer, 0,
+				indexBuffer.length);
+	}
 
-			RecordEnumeration records = recordStore.enumerateRecords(null,
+	/**
+	 * Moves the settings and the saved game of the legacy single record store
+	 * into the first save slot, and deletes the legacy store
+	 */
+	private void migrate() {
+		RecordStore legacyStore;
+		try {
+			legacyStore = RecordStore.openRecordStore(othelloRS, false);
+		} catch (RecordStoreException e) {
+			return;
+		}
+
+		try {
+			RecordEnumeration records = legacyStore.enumerateRecords(null,
 					null, false);
 			if (records.hasNextElement()) {
-				recordId = records.nextRecordId();
-			} else {
-				recordId = recordStore.addRecord(new byte[] {
-						IDENTIFIER_SETTINGS_ONLY, DEFAULT_PLAYERS,
-						DEFAULT_LEVEL }, 0, 3);
+				byte[] legacy = records.nextRecord();
+				if (legacy != null && read(legacy)) {
+					players = saveBuffer[PLAYERS_POS];
+					level = saveBuffer[LEVEL_POS];
+					OthelloTable table = new OthelloTable();
+					OthelloRecord record = new OthelloRecord();
+					if ((saveBuffer[FLAGS_POS] & FLAG_FULL_SAVE) != 0
+							&& loadTable(table, record)) {
+						// The journal belongs to the migrated game
+						activeEntry = 0;
+						numbers[0] = nextNumber++;
+						encodeGame(record, saveBuffer[CURRENT_PLAYER_POS],
+								saveBuffer[CURSOR_X_POS],
+								saveBuffer[CURSOR_Y_POS]);
+						writeEntry(table);
+					}
+				}
 			}
+			records.destroy();
+			writeIndex();
+			legacyStore.closeRecordStore();
+			RecordStore.deleteRecordStore(othelloRS);
+		} catch (RecordStoreException e) {
+		}
+	}
 
-			recordStore.getRecord(recordId, saveBuffer, 0);
+	/**
+	 * Replays the journal onto the active game and saves it
+	 */
+	private void recoverJournal() {
+		OthelloTable table = new OthelloTable();
+		OthelloRecord record = new OthelloRecord();
+		if (!readEntry(activeEntry) || !loadTable(table, record)) {
+			corrupt = true;
+			return;
+		}
+		replayJournal(table, record);
+		encodeGame(record, saveBuffer[CURRENT_PLAYER_POS],
+				saveBuffer[CURSOR_X_POS], saveBuffer[CURSOR_Y_POS]);
+		writeEntry(table);
+		writeIndex();
+		clearJournal();
+	}
 
-			if (saveBuffer[IDENTIFIER_POS] != IDENTIFIER_SETTINGS_ONLY
-					&& saveBuffer[IDENTIFIER_POS] != IDENTIFIER_FULL_SAVE) {
-				saveBuffer[PLAYERS_POS] = DEFAULT_PLAYERS;
-				saveBuffer[LEVEL_POS] = DEFAULT_LEVEL;
-			}
+	/**
+	 * Resets the index to an empty library with default settings. The record
+	 * IDs are assumed to follow the index record, as they do when the
+	 * library is created.
+	 */
+	private void resetIndex() {
+		players = DEFAULT_PLAYERS;
+		level = DEFAULT_LEVEL;
+		activeEntry = -1;
+		nextArchive = 0;
+		nextNumber = 1;
+		stamp = 0;
+		for (int i = 0; i < MAX_ENTRIES; i++) {
+			recordIds[i] = INDEX_RECORD_ID + 1 + i;
+			numbers[i] = 0;
+			stamps[i] = 0;
+		}
+	}
+
+	/**
+	 * Reads the index record
+	 * 
+	 * @param record
+	 *            The stored index record
+	 * @return False if the record is corrupt or of an unknown version
+	 */
+	private boolean readIndex(byte[] record) {
+		if (record.length != INDEX_SIZE + CHECKSUM_SIZE
+				|| record[IDENTIFIER_POS] != IDENTIFIER_INDEX
+				|| record[VERSION_POS] != FORMAT_VERSION
+				|| checksum(record, INDEX_SIZE) != readShort(record,
+						INDEX_SIZE))
+			return false;
+
+		players = record[INDEX_PLAYERS_POS];
+		level = record[INDEX_LEVEL_POS];
+		activeEntry = record[INDEX_ACTIVE_POS];
+		nextArchive = record[INDEX_NEXT_ARCHIVE_POS];
+		nextNumber = readShort(record, INDEX_NEXT_NUMBER_POS);
+		stamp = readInt(record, INDEX_STAMP_POS);
+		for (int i = 0; i < MAX_ENTRIES; i++) {
+			int pos = INDEX_ENTRIES_POS + i * ENTRY_SIZE;
+			recordIds[i] = readShort(record, pos + ENTRY_RECORD_ID_POS);
+			numbers[i] = readShort(record, pos + ENTRY_NUMBER_POS);
+			stamps[i] = readInt(record, pos + ENTRY_STAMP_POS);
+			blackScores[i] = record[pos + ENTRY_BLACK_POS];
+			whiteScores[i] = record[pos + ENTRY_WHITE_POS];
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the index into the index buffer, including the checksum
+	 */
+	private void writeIndexBuffer() {
+		indexBuffer[IDENTIFIER_POS] = IDENTIFIER_INDEX;
+		indexBuffer[VERSION_POS] = FORMAT_VERSION;
+		indexBuffer[INDEX_PLAYERS_POS] = players;
+		indexBuffer[INDEX_LEVEL_POS] = level;
+		indexBuffer[INDEX_ACTIVE_POS] = (byte) activeEntry;
+		indexBuffer[INDEX_NEXT_ARCHIVE_POS] = (byte) nextArchive;
+		writeShort(indexBuffer, INDEX_NEXT_NUMBER_POS, nextNumber);
+		writeInt(indexBuffer, INDEX_STAMP_POS, stamp);
+		for (int i = 0; i < MAX_ENTRIES; i++) {
+			int pos = INDEX_ENTRIES_POS + i * ENTRY_SIZE;
+			writeShort(indexBuffer, pos + ENTRY_RECORD_ID_POS, recordIds[i]);
+			writeShort(indexBuffer, pos + ENTRY_NUMBER_POS, numbers[i]);
+			writeInt(indexBuffer, pos + ENTRY_STAMP_POS, stamps[i]);
+			indexBuffer[pos + ENTRY_BLACK_POS] = blackScores[i];
+			indexBuffer[pos + ENTRY_WHITE_POS] = whiteScores[i];
+		}
+		writeShort(indexBuffer, INDEX_SIZE, checksum(indexBuffer, INDEX_SIZE));
+	}
+
+	/**
+	 * Writes the index record in the background
+	 */
+	private void writeIndex() {
+		corrupt = false;
+		if (libraryStore == null)
+			return;
+		writeIndexBuffer();
+		writer.setRecord(libraryStore, INDEX_RECORD_ID, indexBuffer,
+				indexBuffer.length);
+	}
+
+	/**
+	 * Reads a 16 bit unsigned big endian value
+	 */
+	private static int readShort(byte[] buffer, int pos) {
+		return (buffer[pos] & 0xff) << 8 | buffer[pos + 1] & 0xff;
+	}
+
+	/**
+	 * Writes a 16 bit big endian value
+	 */
+	private static void writeShort(byte[] buffer, int pos, int value) {
+		buffer[pos] = (byte) (value >> 8);
+		buffer[pos + 1] = (byte) value;
+	}
+
+	/**
+	 * Reads a 32 bit big endian value
+	 */
+	private static int readInt(byte[] buffer, int pos) {
+		return readShort(buffer, pos) << 16 | readShort(buffer, pos + 2);
+	}
+
+	/**
+	 * Writes a 32 bit big endian value
+	 */
+	private static void writeInt(byte[] buffer, int pos, int value) {
+		writeShort(buffer, pos, value >> 16);
+		writeShort(buffer, pos + 2, value);
+	}
 
+	/**
+	 * Reads the game record of an entry into the save buffer. A pending
+	 * write of the record is read instead of the stored record.
+	 * 
+	 * @param entry
+	 *            The entry
+	 * @return False if the record is corrupt or could not be read
+	 */
+	private boolean readEntry(int entry) {
+		if (libraryStore == null)
+			return false;
+		try {
+			byte[] record = writer.readRecord(libraryStore, recordIds[entry]);
+			return record != null && read(record);
 		} catch (RecordStoreException e) {
-			recordStore = null;
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the game record in the save buffer to the active entry, and
+	 * updates the entry in the index
+	 * 
+	 * @param table
+	 *            The saved table
+	 */
+	private void writeEntry(OthelloTable table) {
+		stamps[activeEntry] = ++stamp;
+		blackScores[activeEntry] = table.getBlackScore();
+		whiteScores[activeEntry] = table.getWhiteScore();
+		if (libraryStore != null)
+			writer.setRecord(libraryStore, recordIds[activeEntry],
+					saveBuffer, saveLength + CHECKSUM_SIZE);
+	}
+
+	/**
+	 * Reads a stored record into the save buffer, converting the legacy
+	 * format if needed
+	 * 
+	 * @param record
+	 *            The stored record
+	 * @return False if the record is corrupt or of an unknown version
+	 */
+	private boolean read(byte[] record) {
+		if (record.length > saveBuffer.length)
+			return false;
+
+		if (record.length >= LEGACY_PLAYERS_POS + 2
+				&& record[IDENTIFIER_POS] == IDENTIFIER_SETTINGS_ONLY) {
+			// Legacy settings only
+			setSettings(record[LEGACY_PLAYERS_POS],
+					record[LEGACY_PLAYERS_POS + 1]);
+			return true;
+		}
+
+		if (record.length >= LEGACY_TABLE_POS
+				&& record[IDENTIFIER_POS] == IDENTIFIER_FULL_SAVE) {
+			// Move the legacy header fields into place, the fields are
+			// stored in the same order in both formats
+			System.arraycopy(record, LEGACY_PLAYERS_POS, saveBuffer,
+					PLAYERS_POS, LEGACY_TABLE_POS - LEGACY_PLAYERS_POS);
+			System.arraycopy(record, LEGACY_TABLE_POS, saveBuffer, TABLE_POS,
+					record.length - LEGACY_TABLE_POS);
+			saveBuffer[IDENTIFIER_POS] = IDENTIFIER_VERSIONED;
+			saveBuffer[VERSION_POS] = FORMAT_VERSION;
+			saveBuffer[FLAGS_POS] = FLAG_FULL_SAVE;
+			saveLength = TABLE_POS + record.length - LEGACY_TABLE_POS;
+			legacyTable = true;
+			return true;
+		}
+
+		if (record.length < TABLE_POS + CHECKSUM_SIZE
+				|| record[IDENTIFIER_POS] != IDENTIFIER_VERSIONED
+				|| record[VERSION_POS] != FORMAT_VERSION)
+			return false;
+
+		int length = record.length - CHECKSUM_SIZE;
+		if (checksum(record, length) != readShort(record, length))
+			return false;
+
+		System.arraycopy(record, 0, saveBuffer, 0, length);
+		saveLength = length;
+		legacyTable = false;
+		return true;
+	}
+
+	/**
+	 * Sets up the save buffer with settings only
+	 */
+	private void setSettings(byte players, byte level) {
+		saveBuffer[IDENTIFIER_POS] = IDENTIFIER_VERSIONED;
+		saveBuffer[VERSION_POS] = FORMAT_VERSION;
+		saveBuffer[FLAGS_POS] = 0;
+		saveBuffer[PLAYERS_POS] = players;
+		saveBuffer[LEVEL_POS] = level;
+		saveLength = TABLE_POS;
+		legacyTable = false;
+		appendChecksum();
+	}
+
+	/**
+	 * Sets up the save buffer with a full save using the current settings
+	 */
+	private void encodeGame(OthelloRecord record, byte currentPlayer,
+			byte cursorX, byte cursorY) {
+		setSettings(players, level);
+		saveBuffer[FLAGS_POS] = FLAG_FULL_SAVE;
+		saveBuffer[CURRENT_PLAYER_POS] = currentPlayer;
+		saveBuffer[CURSOR_X_POS] = cursorX;
+		saveBuffer[CURSOR_Y_POS] = cursorY;
+		saveLength = record.save(saveBuffer, TABLE_POS);
+		appendChecksum();
+	}
+
+	/**
+	 * Loads the game record in the save buffer and plays it on the table. A
+	 * legacy table starts a new record.
+	 * 
+	 * @return False if the saved game is corrupt
+	 */
+	private boolean loadTable(OthelloTable table, OthelloRecord record) {
+		if ((saveBuffer[FLAGS_POS] & FLAG_FULL_SAVE) == 0)
+			return false;
+		if (!legacyTable)
+			return record.load(saveBuffer, TABLE_POS, saveLength, table);
+		if (!table.loadLegacy(saveBuffer, TABLE_POS, saveLength))
+			return false;
+		record.reset(table);
+		return true;
+	}
+
+	/**
+	 * Appends the checksum of the save buffer, without counting it in the
+	 * valid length
+	 */
+	private void appendChecksum() {
+		writeShort(saveBuffer, saveLength, checksum(saveBuffer, saveLength));
+	}
+
+	/**
+	 * Calculates a Fletcher-16 checksum
+	 * 
+	 * @param buffer
+	 *            The data
+	 * @param length
+	 *            The length of the data
+	 * @return The 16 bit checksum
+	 */
+	private static int checksum(byte[] buffer, int length) {
+		int sum1 = 0;
+		int sum2 = 0;
+		for (int i = 0; i < length; i++) {
+			sum1 = (sum1 + (buffer[i] & 0xff)) % 255;
+			sum2 = (sum2 + sum1) % 255;
 		}
+		return sum2 << 8 | sum1;
 	}
 
 	/**
 	 * Save the permanent players count (game mode) and level settings
 	 */
 	public void saveSettings(byte players, byte level) {
-		if (recordStore != null) {
-			saveBuffer[IDENTIFIER_POS] = IDENTIFIER_SETTINGS_ONLY;
-			saveBuffer[PLAYERS_POS] = players;
-			saveBuffer[LEVEL_POS] = level;
-			try {
-				recordStore.setRecord(recordId, saveBuffer, 0, 3);
-			} catch (InvalidRecordIDException e1) {
-			} catch (RecordStoreFullException e2) {
-			} catch (RecordStoreException e3) {
+		this.players = players;
+		this.level = level;
+		writeIndex();
+	}
+
+	/**
+	 * Makes a new game the active one. It is given the first free save slot,
+	 * or the least recently saved slot if all are in use. The slot is not
+	 * listed until the game is saved.
+	 */
+	public void newGame() {
+		clearJournal();
+		activeEntry = 0;
+		for (int i = 0; i < MAX_SLOTS; i++) {
+			if (numbers[i] == 0) {
+				activeEntry = i;
+				break;
 			}
+			if (stamps[i] < stamps[activeEntry])
+				activeEntry = i;
 		}
+		numbers[activeEntry] = 0;
 	}
 
 	/**
-	 * Save both permanent settings (players and level) and a full game save
+	 * Save both permanent settings (players and level) and a full save of the
+	 * active game
 	 */
-	public void saveGame(byte players, byte level, OthelloTable table, byte currentPlayer, byte cursorX,
+	public void saveGame(byte players, byte level, OthelloTable table,
+			OthelloRecord record, byte currentPlayer, byte cursorX,
 			byte cursorY) {
-		if (recordStore != null) {
-			saveBuffer[IDENTIFIER_POS] = IDENTIFIER_FULL_SAVE;
-			saveBuffer[PLAYERS_POS] = players;
-			saveBuffer[LEVEL_POS] = level;
-			saveBuffer[CURRENT_PLAYER_POS] = currentPlayer;
-			saveBuffer[CURSOR_X_POS] = cursorX;
-			saveBuffer[CURSOR_Y_POS] = cursorY;
-			int length = table.save(saveBuffer, TABLE_POS);
+		if (activeEntry < 0)
+			newGame();
+		if (numbers[activeEntry] == 0)
+			numbers[activeEntry] = nextNumber++;
+		this.players = players;
+		this.level = level;
+		encodeGame(record, currentPlayer, cursorX, cursorY);
+		writeEntry(table);
+		writeIndex();
+
+		// The moves are now part of the full save
+		clearJournal();
+	}
+
+	/**
+	 * Removes the active game from the save slots
+	 */
+	public void discardGame() {
+		if (activeEntry >= 0) {
+			numbers[activeEntry] = 0;
+			activeEntry = -1;
+		}
+		writeIndex();
+		clearJournal();
+	}
+
+	/**
+	 * Moves the finished active game from its save slot to the archive,
+	 * replacing the oldest archived game
+	 */
+	public void archiveGame(byte players, byte level, OthelloTable table,
+			OthelloRecord record, byte currentPlayer) {
+		if (activeEntry < 0)
+			newGame();
+		int number = numbers[activeEntry] != 0 ? numbers[activeEntry]
+				: nextNumber++;
+		numbers[activeEntry] = 0;
+
+		activeEntry = MAX_SLOTS + nextArchive;
+		nextArchive = (nextArchive + 1) % MAX_ARCHIVES;
+		numbers[activeEntry] = number;
+		this.players = players;
+		this.level = level;
+		encodeGame(record, currentPlayer, (byte) 0, (byte) 0);
+		writeEntry(table);
+		activeEntry = -1;
+		writeIndex();
+		clearJournal();
+	}
+
+	/**
+	 * Appends a move that has just been played to the journal, so that the
+	 * game survives without a full save
+	 * 
+	 * @param x
+	 *            The horizontal position of the move
+	 * @param y
+	 *            The vertical position of the move
+	 * @param player
+	 *            The player that made the move
+	 * @param table
+	 *            The table after the move
+	 * @return True if the journal should be compacted with a full save
+	 */
+	public boolean journalMove(byte x, byte y, byte player, OthelloTable table) {
+		if (journalStore != null) {
+			journalBuffer[JOURNAL_PLY_POS] = (byte) (getPly(table) - 1);
+			journalBuffer[JOURNAL_X_POS] = x;
+			journalBuffer[JOURNAL_Y_POS] = y;
+			journalBuffer[JOURNAL_PLAYER_POS] = player;
+			writer.addRecord(journalStore, journalBuffer, JOURNAL_RECORD_SIZE);
+			journalLength++;
+		}
+		return journalLength >= JOURNAL_COMPACT_INTERVAL;
+	}
+
+	/**
+	 * Removes all moves from the journal
+	 */
+	private void clearJournal() {
+		if (journalStore != null && journalLength > 0) {
+			writer.clearRecords(journalStore);
+			journalLength = 0;
+		}
+	}
+
+	/**
+	 * Replays the journaled moves onto a table and its record. Moves already
+	 * contained in the table are skipped, so a journal that survived a
+	 * compaction does no harm.
+	 * 
+	 * @param table
+	 *            The table to replay onto
+	 * @param record
+	 *            The record of the table
+	 */
+	private void replayJournal(OthelloTable table, OthelloRecord record) {
+		if (journalStore == null || journalLength == 0)
+			return;
+		writer.flush();
+		try {
+			RecordEnumeration records = journalStore.enumerateRecords(null,
+					new RecordComparator() {
+						public int compare(byte[] rec1, byte[] rec2) {
+							if (rec1[JOURNAL_PLY_POS] < rec2[JOURNAL_PLY_POS])
+								return PRECEDES;
+							if (rec1[JOURNAL_PLY_POS] > rec2[JOURNAL_PLY_POS])
+								return FOLLOWS;
+							return EQUIVALENT;
+						}
+					}, false);
+			while (records.hasNextElement()) {
+				byte[] move = records.nextRecord();
+				if (move.length < JOURNAL_RECORD_SIZE
+						|| move[JOURNAL_PLY_POS] != getPly(table))
+					continue;
+				byte player = move[JOURNAL_PLAYER_POS];
+				if (table.putPiece(move[JOURNAL_X_POS], move[JOURNAL_Y_POS],
+						player) == OthelloTable.INVALID_MOVE)
+					break;
+				table.commit();
+				record.addMove(move[JOURNAL_X_POS], move[JOURNAL_Y_POS], player);
+				saveBuffer[CURRENT_PLAYER_POS] = OthelloTable
+						.alternatePlayer(player);
+			}
+			records.destroy();
+		} catch (RecordStoreException e) {
+		}
+	}
+
+	/**
+	 * Returns the number of moves played on a table, not counting passes
+	 * 
+	 * @param table
+	 *            The table
+	 * @return The number of pieces added to the start position
+	 */
+	private static int getPly(OthelloTable table) {
+		return table.getBlackScore() + table.getWhiteScore() - 4;
+	}
+
+	/**
+	 * Loads the search result cache saved in an earlier session
+	 * 
+	 * @param cache
+	 *            The cache to load into
+	 */
+	public void loadCache(OthelloCache cache) {
+		try {
+			cacheStore = RecordStore.openRecordStore(cacheRS, true);
+			RecordEnumeration records = cacheStore.enumerateRecords(null,
+					null, false);
+			if (records.hasNextElement()) {
+				cacheRecordId = records.nextRecordId();
+				byte[] record = cacheStore.getRecord(cacheRecordId);
+				if (record != null)
+					cache.load(record);
+			}
+			records.destroy();
+		} catch (RecordStoreException e) {
+			cacheStore = null;
+		}
+	}
+
+	/**
+	 * Saves the search result cache if it has changed
+	 * 
+	 * @param cache
+	 *            The cache to save
+	 */
+	public void saveCache(OthelloCache cache) {
+		if (cacheStore == null || !cache.isDirty())
+			return;
+		if (cacheBuffer == null)
+			cacheBuffer = new byte[cache.getMaxSize()];
+		int length = cache.save(cacheBuffer);
+		if (cacheRecordId == 0) {
+			// The record is created once, on the calling thread, since its
+			// ID is needed for the following writes
 			try {
-				recordStore.setRecord(recordId, saveBuffer, 0, length);
-			} catch (InvalidRecordIDException e1) {
-			} catch (RecordStoreFullException e2) {
-			} catch (RecordStoreException e3) {
+				cacheRecordId = cacheStore.addRecord(cacheBuffer, 0, length);
+			} catch (RecordStoreException e) {
 			}
+		} else {
+			writer.setRecord(cacheStore, cacheRecordId, cacheBuffer, length);
 		}
 	}
 
+	/**
+	 * Writes everything that is still pending and stops the background
+	 * writer. Called when the midlet is destroyed.
+	 */
+	public void flush() {
+		writer.stop();
+	}
+
 	/**
 	 * Get the number of players in the selected game mode (0, 1 or 2)
 	 */
 	public byte getPlayers() {
-		return saveBuffer[PLAYERS_POS];
+		return players;
 	}
 
 	/**
 	 * Get the level in the selected game mode
 	 */
 	public byte getLevel() {
-		return saveBuffer[LEVEL_POS];
+		return level;
 	}
 
 	/**
-	 * Checks if this settings object contains a saved game data
+	 * Checks if there is any saved game to load
 	 */
 	public boolean containsSavedGame() {
-		return saveBuffer[IDENTIFIER_POS] == IDENTIFIER_FULL_SAVE;
+		return getSlotCount() > 0;
+	}
+
+	/**
+	 * Checks if the index or the last loaded game was found to be corrupt.
+	 * The stored records are kept until the next save.
+	 */
+	public boolean isSaveCorrupt() {
+		return corrupt;
+	}
+
+	/**
+	 * Get the number of saved games
+	 */
+	public int getSlotCount() {
+		return countEntries(0, MAX_SLOTS);
+	}
+
+	/**
+	 * Get the number of archived finished games
+	 */
+	public int getArchiveCount() {
+		return countEntries(MAX_SLOTS, MAX_ARCHIVES);
+	}
+
+	/**
+	 * Get the name of a saved game, the games are ordered most recently saved
+	 * first
+	 */
+	public String getSlotName(int slot) {
+		return "GAME " + numbers[findEntry(0, MAX_SLOTS, slot)];
+	}
+
+	/**
+	 * Get the black and white scores of an archived game, the games are
+	 * ordered most recently finished first
+	 * 
+	 * @return The black score in the high byte and the white score in the low
+	 *         byte
+	 */
+	public int getArchiveScore(int archive) {
+		int entry = findEntry(MAX_SLOTS, MAX_ARCHIVES, archive);
+		return blackScores[entry] << 8 | whiteScores[entry];
+	}
+
+	/**
+	 * Load a saved game into the table and its record, and make it the active
+	 * game. The players, level, current player and cursor position are
+	 * updated.
+	 * 
+	 * @return False if the saved game is corrupt
+	 */
+	public boolean loadGame(int slot, OthelloTable table,
+			OthelloRecord record) {
+		clearJournal();
+		activeEntry = findEntry(0, MAX_SLOTS, slot);
+		if (!loadEntry(activeEntry, table, record))
+			return false;
+		players = saveBuffer[PLAYERS_POS];
+		level = saveBuffer[LEVEL_POS];
+		return true;
 	}
 
 	/**
-	 * Load a saved game into the table
+	 * Load an archived game into the table and its record. The current player
+	 * is updated, the settings are left as they are.
+	 * 
+	 * @return False if the archived game is corrupt
 	 */
-	public void loadSavedTable(OthelloTable table) {
-		table.load(saveBuffer, TABLE_POS);
+	public boolean loadArchive(int archive, OthelloTable table,
+			OthelloRecord record) {
+		return loadEntry(findEntry(MAX_SLOTS, MAX_ARCHIVES, archive), table,
+				record);
+	}
+
+	/**
+	 * Reads the game record of an entry into the table. A corrupt entry is
+	 * removed from the library.
+	 */
+	private boolean loadEntry(int entry, OthelloTable table,
+			OthelloRecord record) {
+		if (!readEntry(entry) || !loadTable(table, record)) {
+			numbers[entry] = 0;
+			if (entry == activeEntry)
+				activeEntry = -1;
+			writeIndex();
+			corrupt = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Counts the used entries in a range
+	 */
+	private int countEntries(int first, int count) {
+		int used = 0;
+		for (int i = first; i < first + count; i++)
+			if (numbers[i] != 0)
+				used++;
+		return used;
+	}
+
+	/**
+	 * Finds a used entry in a range by its recency order
+	 * 
+	 * @param first
+	 *            The first entry of the range
+	 * @param count
+	 *            The number of entries in the range
+	 * @param order
+	 *            Zero for the most recently written entry
+	 * @return The entry
+	 */
+	private int findEntry(int first, int count, int order) {
+		int limit = Integer.MAX_VALUE;
+		int entry = first;
+		for (int i = 0; i <= order; i++) {
+			int best = -1;
+			for (int j = first; j < first + count; j++)
+				if (numbers[j] != 0 && stamps[j] < limit
+						&& (best < 0 || stamps[j] > stamps[best]))
+					best = j;
+			entry = best;
+			limit = stamps[best];
+		}
+		return entry;
 	}
 
 	/**
@@ -212,4 +1176,4 @@ public class OthelloSettings {
 	public byte getCursorY() {
 		return saveBuffer[CURSOR_Y_POS];
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,259 @@
+package com.othello;
+
+import javax.microedition.lcdui.Graphics;
+import javax.microedition.lcdui.Image;
+
+/**
+ * This class holds the table layer atlas and cell bounds, scaled once to the
+ * size of the screen
+ */
+public class OthelloSkin {
+
+	/**
+	 * Cell bounds for the unscaled background images
+	 */
+	private static final byte[][] CELL_BOUNDS_X = new byte[][] {
+			{ 0, 32, 43, 54, 65, 75, 86, 97, 127 },
+			{ 0, 31, 42, 53, 64, 75, 86, 98, 127 },
+			{ 0, 29, 41, 53, 64, 76, 87, 99, 127 },
+			{ 0, 28, 40, 52, 64, 76, 88, 100, 127 },
+			{ 0, 26, 39, 51, 64, 77, 89, 102, 127 },
+			{ 0, 25, 38, 51, 64, 77, 91, 104, 127 },
+			{ 0, 23, 36, 51, 64, 78, 92, 106, 127 },
+			{ 0, 21, 35, 50, 65, 79, 93, 108, 127 } };
+
+	/**
+	 * Cell bounds for the unscaled background images
+	 */
+	private static final byte[] CELL_BOUNDS_Y = new byte[] { 0, 11, 19, 28, 38,
+			49, 61, 74, 91 };
+
+	/**
+	 * The width of the unscaled table
+	 */
+	private static final int BASE_WIDTH = 127;
+
+	/**
+	 * The height of the unscaled table
+	 */
+	private static final int BASE_HEIGHT = 91;
+
+	/**
+	 * The fixed point representation of a scale factor of one
+	 */
+	private static final int SCALE_ONE = 256;
+
+	/**
+	 * The number of layers in the atlas
+	 */
+	public static final int LAYER_COUNT = 6;
+
+	/**
+	 * The table layers stacked vertically and indexed by (piece << 1 |
+	 * selected)
+	 */
+	private Image atlas;
+
+	/**
+	 * The unscaled atlas, kept until all layers are scaled
+	 */
+	private Image sourceAtlas;
+
+	/**
+	 * The horizontally scaled buffer, kept until all layers are scaled
+	 */
+	private Image columns;
+
+	/**
+	 * Bit mask of the layers that are ready to be drawn
+	 */
+	private int readyLayers;
+
+	/**
+	 * The scaled horizontal cell bounds
+	 */
+	private short[][] cellBoundsX;
+
+	/**
+	 * The scaled vertical cell bounds
+	 */
+	private short[] cellBoundsY;
+
+	/**
+	 * The scaled width of the table
+	 */
+	private int width;
+
+	/**
+	 * The scaled height of the table
+	 */
+	private int height;
+
+	/**
+	 * Creates a skin for the given layer atlas, fitted to the given area while
+	 * keeping the aspect ratio. No layers are scaled until scaleLayer is
+	 * called.
+	 *
+	 * @param sourceAtlas
+	 *            The unscaled table layers stacked vertically
+	 * @param maxWidth
+	 *            The available width
+	 * @param maxHeight
+	 *            The available height
+	 */
+	public OthelloSkin(Image sourceAtlas, int maxWidth, int maxHeight) {
+
+		// Pick the largest scale factor that fits both dimensions
+		int scale = Math.min(maxWidth * SCALE_ONE / BASE_WIDTH, maxHeight
+				* SCALE_ONE / BASE_HEIGHT);
+		width = Math.max(1, BASE_WIDTH * scale / SCALE_ONE);
+		height = Math.max(1, BASE_HEIGHT * scale / SCALE_ONE);
+
+		// Scale the cell bounds
+		cellBoundsY = new short[CELL_BOUNDS_Y.length];
+		for (int y = 0; y < CELL_BOUNDS_Y.length; y++)
+			cellBoundsY[y] = (short) (CELL_BOUNDS_Y[y] * height / BASE_HEIGHT);
+		cellBoundsX = new short[CELL_BOUNDS_X.length][];
+		for (int y = 0; y < CELL_BOUNDS_X.length; y++) {
+			cellBoundsX[y] = new short[CELL_BOUNDS_X[y].length];
+			for (int x = 0; x < CELL_BOUNDS_X[y].length; x++)
+				cellBoundsX[y][x] = (short) (CELL_BOUNDS_X[y][x] * width / BASE_WIDTH);
+		}
+
+		// The atlas is used as is when it fits exactly
+		if (width == BASE_WIDTH && height == BASE_HEIGHT) {
+			atlas = sourceAtlas;
+			readyLayers = (1 << LAYER_COUNT) - 1;
+		} else {
+			this.sourceAtlas = sourceAtlas;
+			atlas = Image.createImage(width, height * LAYER_COUNT);
+			columns = Image.createImage(width, BASE_HEIGHT);
+		}
+	}
+
+	/**
+	 * Scales a single layer of the atlas unless it is already done
+	 *
+	 * @param piece
+	 *            The piece of the layer (or OthelloTable.EMPTY_SQUARE)
+	 * @param selected
+	 *            True for the selected layer
+	 */
+	public synchronized void scaleLayer(byte piece, boolean selected) {
+		int layer = piece << 1 | (selected ? 1 : 0);
+		if ((readyLayers & 1 << layer) != 0)
+			return;
+
+		// Scale horizontally using nearest neighbour sampling. Since MIDP
+		// gives no access to the pixels, every column and row is blitted
+		// through a one pixel wide clip.
+		Graphics g = columns.getGraphics();
+		for (int x = 0; x < width; x++) {
+			g.setClip(x, 0, 1, BASE_HEIGHT);
+			g.drawImage(sourceAtlas, x - (2 * x + 1) * BASE_WIDTH
+					/ (2 * width), -layer * BASE_HEIGHT, Graphics.TOP
+					| Graphics.LEFT);
+		}
+
+		// Scale vertically into the layer slot of the atlas
+		g = atlas.getGraphics();
+		for (int y = 0; y < height; y++) {
+			g.setClip(0, layer * height + y, width, 1);
+			g.drawImage(columns, 0, layer * height + y - (2 * y + 1)
+					* BASE_HEIGHT / (2 * height), Graphics.TOP | Graphics.LEFT);
+		}
+
+		// Release the source images when all layers are done
+		readyLayers |= 1 << layer;
+		if (isComplete()) {
+			sourceAtlas = null;
+			columns = null;
+		}
+	}
+
+	/**
+	 * Checks if all layers are ready to be drawn
+	 *
+	 * @return True if all layers are scaled
+	 */
+	public boolean isComplete() {
+		return readyLayers == (1 << LAYER_COUNT) - 1;
+	}
+
+	/**
+	 * Returns the scaled width of the table
+	 *
+	 * @return The width in pixels
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Returns the scaled height of the table
+	 *
+	 * @return The height in pixels
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Draws a single cell from the appropriate layer
+	 *
+	 * @param g
+	 *            The graphics object used to draw on
+	 * @param piece
+	 *            The piece in the cell (or OthelloTable.EMPTY_SQUARE)
+	 * @param selected
+	 *            True if the cell should be drawn as selected
+	 * @param x
+	 *            The horizontal table coordinate
+	 * @param y
+	 *            The vertical table coordinate
+	 * @param tableX
+	 *            The horizontal position of the table
+	 * @param tableY
+	 *            The vertical position of the table
+	 */
+	public void drawCell(Graphics g, byte piece, boolean selected, byte x,
+			byte y, int tableX, int tableY) {
+
+		// Set the clip to contain only the cell
+		g.setClip(tableX + cellBoundsX[y][x], tableY + cellBoundsY[y],
+				cellBoundsX[y][x + 1] - cellBoundsX[y][x], cellBoundsY[y + 1]
+						- cellBoundsY[y]);
+
+		// Draw from the appropriate layer
+		g.drawImage(atlas, tableX, tableY - (piece << 1 | (selected ? 1 : 0))
+				* height, Graphics.TOP | Graphics.LEFT);
+	}
+
+	/**
+	 * Shades a cell with a marker covering the middle third of the cell
+	 *
+	 * @param g
+	 *            The graphics object used to draw on
+	 * @param color
+	 *            The color of the marker as 0xRRGGBB
+	 * @param x
+	 *            The horizontal table coordinate
+	 * @param y
+	 *            The vertical table coordinate
+	 * @param tableX
+	 *            The horizontal position of the table
+	 * @param tableY
+	 *            The vertical position of the table
+	 */
+	public void shadeCell(Graphics g, int color, byte x, byte y, int tableX,
+			int tableY) {
+		int left = tableX + cellBoundsX[y][x];
+		int top = tableY + cellBoundsY[y];
+		int cellWidth = cellBoundsX[y][x + 1] - cellBoundsX[y][x];
+		int cellHeight = cellBoundsY[y + 1] - cellBoundsY[y];
+		g.setClip(left, top, cellWidth, cellHeight);
+		g.setColor(color);
+		g.fillRect(left + cellWidth / 3, top + cellHeight / 3, cellWidth
+				- 2 * (cellWidth / 3), cellHeight - 2 * (cellHeight / 3));
+	}
+}
@@ -0,0 +1,249 @@
+package com.othello;
+
+/**
+ * This class finds the canonical form of a position among the up to eight
+ * positions that are equal under rotation and reflection. Positions are bit
+ * masks with bit (y * TABLE_WIDTH + x) set for each square.
+ * <p>
+ * A transform is a number from 0 to 7. Bit 2 transposes the table (swaps x
+ * and y), then bit 0 flips it vertically and bit 1 mirrors it horizontally.
+ */
+public class OthelloSymmetry {
+
+	/**
+	 * The number of transforms
+	 */
+	public static final int TRANSFORM_COUNT = 8;
+
+	/**
+	 * The transform bit for transposing
+	 */
+	private static final int TRANSPOSE = 4;
+
+	/**
+	 * The transform bit for flipping vertically
+	 */
+	private static final int FLIP = 1;
+
+	/**
+	 * The transform bit for mirroring horizontally
+	 */
+	private static final int MIRROR = 2;
+
+	/**
+	 * The black pieces of the last canonical position
+	 */
+	private long black;
+
+	/**
+	 * The white pieces of the last canonical position
+	 */
+	private long white;
+
+	/**
+	 * The hash of the last canonical position
+	 */
+	private long hash;
+
+	/**
+	 * The transform from the actual to the last canonical position
+	 */
+	private int transform;
+
+	/**
+	 * Finds the canonical form of a position, which is then available through
+	 * the getters. The canonical form is the transformed position with the
+	 * smallest black mask, and then the smallest white mask.
+	 * 
+	 * @param black
+	 *            The black pieces
+	 * @param white
+	 *            The white pieces
+	 * @param player
+	 *            The player to move, included in the hash
+	 */
+	public void canonicalize(long black, long white, byte player) {
+		this.black = black;
+		this.white = white;
+		transform = 0;
+		for (int t = 1; t < TRANSFORM_COUNT; t++) {
+			long b = transform(black, t);
+			if (b > this.black)
+				continue;
+			long w = transform(white, t);
+			if (b == this.black && w >= this.white)
+				continue;
+			this.black = b;
+			this.white = w;
+			transform = t;
+		}
+		hash = OthelloTable.getHash(this.black, this.white, player);
+	}
+
+	/**
+	 * Returns the black pieces of the last canonical position
+	 */
+	public long getBlack() {
+		return black;
+	}
+
+	/**
+	 * Returns the white pieces of the last canonical position
+	 */
+	public long getWhite() {
+		return white;
+	}
+
+	/**
+	 * Returns the hash of the last canonical position
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Returns the transform from the actual to the last canonical position
+	 */
+	public int getTransform() {
+		return transform;
+	}
+
+	/**
+	 * Maps a square of the actual position to the last canonical position
+	 * 
+	 * @param square
+	 *            The square index (y * TABLE_WIDTH + x)
+	 * @return The square index in the canonical position
+	 */
+	public int toCanonical(int square) {
+		return transformSquare(square, transform);
+	}
+
+	/**
+	 * Maps a square of the last canonical position to the actual position
+	 * 
+	 * @param square
+	 *            The square index (y * TABLE_WIDTH + x)
+	 * @return The square index in the actual position
+	 */
+	public int toActual(int square) {
+		return inverseSquare(square, transform);
+	}
+
+	/**
+	 * Transforms a bit mask
+	 * 
+	 * @param mask
+	 *            The bit mask
+	 * @param transform
+	 *            The transform
+	 * @return The transformed mask
+	 */
+	public static long transform(long mask, int transform) {
+		if ((transform & TRANSPOSE) != 0)
+			mask = transpose(mask);
+		if ((transform & FLIP) != 0)
+			mask = flip(mask);
+		if ((transform & MIRROR) != 0)
+			mask = mirror(mask);
+		return mask;
+	}
+
+	/**
+	 * Reverts a transform of a bit mask
+	 * 
+	 * @param mask
+	 *            The transformed bit mask
+	 * @param transform
+	 *            The transform
+	 * @return The original mask
+	 */
+	public static long inverse(long mask, int transform) {
+		if ((transform & MIRROR) != 0)
+			mask = mirror(mask);
+		if ((transform & FLIP) != 0)
+			mask = flip(mask);
+		if ((transform & TRANSPOSE) != 0)
+			mask = transpose(mask);
+		return mask;
+	}
+
+	/**
+	 * Transforms a square index
+	 * 
+	 * @param square
+	 *            The square index (y * TABLE_WIDTH + x)
+	 * @param transform
+	 *            The transform
+	 * @return The transformed square index
+	 */
+	public static int transformSquare(int square, int transform) {
+		int x = square & 7;
+		int y = square >> 3;
+		if ((transform & TRANSPOSE) != 0) {
+			int t = x;
+			x = y;
+			y = t;
+		}
+		if ((transform & FLIP) != 0)
+			y = 7 - y;
+		if ((transform & MIRROR) != 0)
+			x = 7 - x;
+		return y << 3 | x;
+	}
+
+	/**
+	 * Reverts a transform of a square index
+	 * 
+	 * @param square
+	 *            The transformed square index
+	 * @param transform
+	 *            The transform
+	 * @return The original square index
+	 */
+	public static int inverseSquare(int square, int transform) {
+		int x = square & 7;
+		int y = square >> 3;
+		if ((transform & MIRROR) != 0)
+			x = 7 - x;
+		if ((transform & FLIP) != 0)
+			y = 7 - y;
+		if ((transform & TRANSPOSE) != 0) {
+			int t = x;
+			x = y;
+			y = t;
+		}
+		return y << 3 | x;
+	}
+
+	/**
+	 * Flips a bit mask vertically (y becomes 7 - y) by swapping its bytes
+	 */
+	private static long flip(long mask) {
+		mask = mask >>> 8 & 0x00ff00ff00ff00ffL | (mask & 0x00ff00ff00ff00ffL) << 8;
+		mask = mask >>> 16 & 0x0000ffff0000ffffL | (mask & 0x0000ffff0000ffffL) << 16;
+		return mask >>> 32 | mask << 32;
+	}
+
+	/**
+	 * Mirrors a bit mask horizontally (x becomes 7 - x) by reversing the bits
+	 * of every byte
+	 */
+	private static long mirror(long mask) {
+		mask = mask >>> 1 & 0x5555555555555555L | (mask & 0x5555555555555555L) << 1;
+		mask = mask >>> 2 & 0x3333333333333333L | (mask & 0x3333333333333333L) << 2;
+		return mask >>> 4 & 0x0f0f0f0f0f0f0f0fL | (mask & 0x0f0f0f0f0f0f0f0fL) << 4;
+	}
+
+	/**
+	 * Transposes a bit mask (x and y are swapped) with three delta swaps
+	 */
+	private static long transpose(long mask) {
+		long t = 0x0f0f0f0f00000000L & (mask ^ mask << 28);
+		mask ^= t ^ t >>> 28;
+		t = 0x3333000033330000L & (mask ^ mask << 14);
+		mask ^= t ^ t >>> 14;
+		t = 0x5500550055005500L & (mask ^ mask << 7);
+		return mask ^ t ^ t >>> 7;
+	}
+}
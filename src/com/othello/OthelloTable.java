@@ -1,7 +1,8 @@
 package com.othello;
 
 /**
- * This class holds the Othello game table
+ * This class holds the Othello game table. The table is always 8x8,
+ * variants on other board sizes are played on an OthelloBoard.
  * 
  * @author Bjorn.Husberg@guide.se
  */
@@ -42,6 +43,64 @@ public class OthelloTable {
 	 */
 	private static final byte HISTORY_DEPTH = TABLE_WIDTH * TABLE_HEIGHT;
 
+	/**
+	 * The squares of the left column as a bit mask
+	 */
+	private static final long LEFT_EDGE = 0x0101010101010101L;
+
+	/**
+	 * The squares of the right column as a bit mask
+	 */
+	private static final long RIGHT_EDGE = 0x8080808080808080L;
+
+	/**
+	 * The squares of the top and bottom rows as a bit mask
+	 */
+	private static final long TOP_BOTTOM_EDGES = 0xff000000000000ffL;
+
+	/**
+	 * The squares of all four edges as a bit mask
+	 */
+	private static final long EDGES = LEFT_EDGE | RIGHT_EDGE | TOP_BOTTOM_EDGES;
+
+	/**
+	 * The four corners as a bit mask
+	 */
+	public static final long CORNERS = 0x8100000000000081L;
+
+	/**
+	 * The rows as bit masks
+	 */
+	private static final long[] ROWS = new long[TABLE_HEIGHT];
+
+	/**
+	 * The columns as bit masks
+	 */
+	private static final long[] COLUMNS = new long[TABLE_WIDTH];
+
+	/**
+	 * The diagonals running down to the right as bit masks
+	 */
+	private static final long[] DIAGONALS = new long[TABLE_WIDTH
+			+ TABLE_HEIGHT - 1];
+
+	/**
+	 * The diagonals running down to the left as bit masks
+	 */
+	private static final long[] ANTI_DIAGONALS = new long[TABLE_WIDTH
+			+ TABLE_HEIGHT - 1];
+
+	static {
+		for (int y = 0; y < TABLE_HEIGHT; y++)
+			for (int x = 0; x < TABLE_WIDTH; x++) {
+				long bit = 1L << (y * TABLE_WIDTH + x);
+				ROWS[y] |= bit;
+				COLUMNS[x] |= bit;
+				DIAGONALS[x - y + TABLE_HEIGHT - 1] |= bit;
+				ANTI_DIAGONALS[x + y] |= bit;
+			}
+	}
+
 	/**
 	 * The table history
 	 */
@@ -99,6 +158,23 @@ public class OthelloTable {
 		title = false;
 	}
 	
+	/**
+	 * Copies the current position of another table, leaving the history of
+	 * this table empty
+	 * 
+	 * @param source
+	 *            The table to copy from
+	 */
+	public void copy(OthelloTable source) {
+		currentTable = 1;
+		for (byte x = 0; x < TABLE_WIDTH; x++)
+			System.arraycopy(source.table[source.currentTable][x], 0,
+					table[currentTable][x], 0, TABLE_HEIGHT);
+		score[currentTable][BLACK_PLAYER] = source.score[source.currentTable][BLACK_PLAYER];
+		score[currentTable][WHITE_PLAYER] = source.score[source.currentTable][WHITE_PLAYER];
+		title = false;
+	}
+
 	/**
 	 * Sets the title display
 	 * 
@@ -320,43 +396,230 @@ public class OthelloTable {
 	}
 
 	/**
-	 * Loads a saved table from a byte buffer
+	 * Sets the position from one bit mask per player, leaving the table
+	 * without history
+	 * 
+	 * @param black
+	 *            The black pieces, bit (y * TABLE_WIDTH + x) set for each
+	 *            square
+	 * @param white
+	 *            The white pieces
+	 */
+	public void setPosition(long black, long white) {
+		currentTable = 1;
+		score[currentTable][WHITE_PLAYER] = 0;
+		score[currentTable][BLACK_PLAYER] = 0;
+		for (byte x = 0; x < TABLE_WIDTH; x++)
+			for (byte y = 0; y < TABLE_HEIGHT; y++) {
+				long bit = 1L << (y * TABLE_WIDTH + x);
+				byte piece = EMPTY_SQUARE;
+				if ((white & bit) != 0)
+					piece = WHITE_PLAYER;
+				else if ((black & bit) != 0)
+					piece = BLACK_PLAYER;
+				if (piece != EMPTY_SQUARE)
+					score[currentTable][piece]++;
+				table[currentTable][x][y] = piece;
+			}
+		title = false;
+	}
+
+	/**
+	 * Makes the current position the start of the history, so that the whole
+	 * history depth is free for searching
+	 */
+	public void commit() {
+		if (currentTable == 1)
+			return;
+		for (byte x = 0; x < TABLE_WIDTH; x++)
+			System.arraycopy(table[currentTable][x], 0, table[1][x], 0,
+					TABLE_HEIGHT);
+		score[1][BLACK_PLAYER] = score[currentTable][BLACK_PLAYER];
+		score[1][WHITE_PLAYER] = score[currentTable][WHITE_PLAYER];
+		currentTable = 1;
+	}
+
+	/**
+	 * Loads a table saved with one byte per square by earlier versions
 	 * 
 	 * @param buffer
+	 *            The buffer to read from
+	 * @param offset
+	 *            The position of the saved table in the buffer
+	 * @param length
+	 *            The number of valid bytes in the buffer
+	 * @return True if a valid table was loaded
 	 */
-	public int load(byte[] buffer, int offset) {
+	public boolean loadLegacy(byte[] buffer, int offset, int length) {
 
-		if (buffer.length - offset < TABLE_WIDTH * TABLE_HEIGHT) {
-			startNewGame();
-		} else {
-			currentTable = 1;
-			score[currentTable][WHITE_PLAYER] = 0;
-			score[currentTable][BLACK_PLAYER] = 0;
-			for (byte x = 0; x < TABLE_WIDTH; x++)
-				for (byte y = 0; y < TABLE_HEIGHT; y++) {
-					byte piece = buffer[offset++];
-					if (piece == WHITE_PLAYER)
-						score[currentTable][WHITE_PLAYER]++;
-					else if (piece == BLACK_PLAYER)
-						score[currentTable][BLACK_PLAYER]++;
-					table[currentTable][x][y] = piece;
-				}
-		}
+		if (length - offset < TABLE_WIDTH * TABLE_HEIGHT)
+			return false;
+
+		currentTable = 1;
+		score[currentTable][WHITE_PLAYER] = 0;
+		score[currentTable][BLACK_PLAYER] = 0;
+		for (byte x = 0; x < TABLE_WIDTH; x++)
+			for (byte y = 0; y < TABLE_HEIGHT; y++) {
+				byte piece = buffer[offset++];
+				if (piece == WHITE_PLAYER)
+					score[currentTable][WHITE_PLAYER]++;
+				else if (piece == BLACK_PLAYER)
+					score[currentTable][BLACK_PLAYER]++;
+				else if (piece != EMPTY_SQUARE)
+					return false;
+				table[currentTable][x][y] = piece;
+			}
 		title = false;
-		return offset;
+		return true;
 	}
 
 	/**
-	 * Saves a saved table from a byte buffer
+	 * Returns the squares held by a player as a bit mask with bit (y *
+	 * TABLE_WIDTH + x) set for each square
 	 * 
-	 * @return The saved table buffer
+	 * @param player
+	 *            The player color
+	 * @return The bit mask
 	 */
-	public int save(byte[] buffer, int offset) {
-		if (buffer.length >= offset + TABLE_WIDTH * TABLE_HEIGHT) {
-			for (byte x = 0; x < TABLE_WIDTH; x++)
-				for (byte y = 0; y < TABLE_HEIGHT; y++)
-					buffer[offset++] = table[currentTable][x][y];
-		}
-		return offset;
+	public long getMask(byte player) {
+		return getMask(currentTable, player);
+	}
+
+	/**
+	 * Returns the discs of a player that can never be flipped
+	 * 
+	 * @param player
+	 *            The player color
+	 * @return The stable discs as a bit mask
+	 */
+	public long getStableDiscs(byte player) {
+		return getStableDiscs(getMask(player), getMask(alternatePlayer(player)));
+	}
+
+	/**
+	 * Finds the discs that can never be flipped. A disc is stable if it can
+	 * not be outflanked along any of the four lines through it, which holds
+	 * for a line that is full or where the disc has the edge or another
+	 * stable disc of its own as a neighbour. Starting from nothing, the
+	 * stable discs spread from the corners and the full lines until nothing
+	 * changes.
+	 * 
+	 * @param own
+	 *            The discs of the player
+	 * @param opponent
+	 *            The discs of the opponent
+	 * @return The stable discs of the player as a bit mask
+	 */
+	public static long getStableDiscs(long own, long opponent) {
+		long filled = own | opponent;
+		long horizontal = getFullLines(filled, ROWS) | LEFT_EDGE | RIGHT_EDGE;
+		long vertical = getFullLines(filled, COLUMNS) | TOP_BOTTOM_EDGES;
+		long diagonal = getFullLines(filled, DIAGONALS) | EDGES;
+		long antiDiagonal = getFullLines(filled, ANTI_DIAGONALS) | EDGES;
+
+		// Nothing spreads without an anchor
+		long stable = own & horizontal & vertical & diagonal & antiDiagonal;
+		if (stable == 0)
+			return 0;
+
+		long last;
+		do {
+			last = stable;
+			stable = own
+					& (horizontal | stable << 1 & ~LEFT_EDGE | stable >>> 1
+							& ~RIGHT_EDGE)
+					& (vertical | stable << 8 | stable >>> 8)
+					& (diagonal | stable << 9 & ~LEFT_EDGE | stable >>> 9
+							& ~RIGHT_EDGE)
+					& (antiDiagonal | stable << 7 & ~RIGHT_EDGE | stable >>> 7
+							& ~LEFT_EDGE);
+		} while (stable != last);
+		return stable;
+	}
+
+	/**
+	 * Finds the squares next to a set of squares in any of the eight
+	 * directions
+	 * 
+	 * @param mask
+	 *            The squares as a bit mask
+	 * @return The neighbouring squares that are not in the mask
+	 */
+	public static long getNeighbours(long mask) {
+		long column = mask | mask << 8 | mask >>> 8;
+		return (column | column << 1 & ~LEFT_EDGE | column >>> 1 & ~RIGHT_EDGE)
+				& ~mask;
+	}
+
+	/**
+	 * Returns the union of the lines that have no empty square
+	 */
+	private static long getFullLines(long filled, long[] lines) {
+		long full = 0;
+		for (int i = 0; i < lines.length; i++)
+			if ((filled & lines[i]) == lines[i])
+				full |= lines[i];
+		return full;
+	}
+
+	/**
+	 * Counts the bits of a bit mask
+	 * 
+	 * @param mask
+	 *            The bit mask
+	 * @return The number of set bits
+	 */
+	public static int countBits(long mask) {
+		mask -= mask >>> 1 & 0x5555555555555555L;
+		mask = (mask & 0x3333333333333333L) + (mask >>> 2 & 0x3333333333333333L);
+		mask = mask + (mask >>> 4) & 0x0f0f0f0f0f0f0f0fL;
+		return (int) (mask * 0x0101010101010101L >>> 56);
+	}
+
+	/**
+	 * Returns a 64 bit hash of the current position and the player to move
+	 * 
+	 * @param player
+	 *            The player to move
+	 * @return The hash
+	 */
+	public long getHash(byte player) {
+		return getHash(getMask(BLACK_PLAYER), getMask(WHITE_PLAYER), player);
+	}
+
+	/**
+	 * Returns a 64 bit hash of a position given as bit masks
+	 * 
+	 * @param black
+	 *            The black pieces
+	 * @param white
+	 *            The white pieces
+	 * @param player
+	 *            The player to move
+	 * @return The hash
+	 */
+	public static long getHash(long black, long white, byte player) {
+		return mix(mix(black) ^ white) ^ player;
+	}
+
+	/**
+	 * Returns the squares held by a player in a table in the history
+	 */
+	private long getMask(int level, byte player) {
+		long mask = 0;
+		for (byte x = 0; x < TABLE_WIDTH; x++)
+			for (byte y = 0; y < TABLE_HEIGHT; y++)
+				if (table[level][x][y] == player)
+					mask |= 1L << (y * TABLE_WIDTH + x);
+		return mask;
+	}
+
+	/**
+	 * Scrambles the bits of a 64 bit value
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		return z ^ (z >>> 33);
 	}
 }
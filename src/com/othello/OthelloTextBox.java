@@ -139,6 +139,8 @@ public class OthelloTextBox {
 	 * @param text
 	 */
 	private synchronized void renderTextImage(String text) {
+		OthelloProbe probe = OthelloProbe.probe;
+		Object event = probe != null ? probe.beginTextRender() : null;
 		Graphics g = image.getGraphics();
 		int length = text.length();
 		if (DOT_WIDTH * length * CHAR_WIDTH > image.getWidth())
@@ -178,6 +180,8 @@ public class OthelloTextBox {
 		}
 
 		textTime = System.currentTimeMillis();
+		if (event != null)
+			probe.endTextRender(event, length);
 	}
 
 	/**
@@ -0,0 +1,80 @@
+package com.othello;
+
+/**
+ * This class holds a move found by a search together with its score and
+ * the line of play the search expects after it
+ */
+public class OthelloVariation {
+
+	/**
+	 * The moves of the line, starting with the move itself, as squares (y *
+	 * TABLE_WIDTH + x)
+	 */
+	private byte[] moves;
+
+	/**
+	 * The score of the move from the view of the player
+	 */
+	private int score;
+
+	/**
+	 * Indicates that the score is exact and not only an upper bound
+	 */
+	private boolean exact;
+
+	/**
+	 * Creates a variation
+	 * 
+	 * @param moves
+	 *            The moves of the line, starting with the move itself
+	 * @param score
+	 *            The score of the move
+	 * @param exact
+	 *            True if the score is exact, false if it is an upper bound
+	 */
+	OthelloVariation(byte[] moves, int score, boolean exact) {
+		this.moves = moves;
+		this.score = score;
+		this.exact = exact;
+	}
+
+	/**
+	 * Returns the horizontal position of the move
+	 */
+	public byte getX() {
+		return (byte) (moves[0] % OthelloTable.TABLE_WIDTH);
+	}
+
+	/**
+	 * Returns the vertical position of the move
+	 */
+	public byte getY() {
+		return (byte) (moves[0] / OthelloTable.TABLE_WIDTH);
+	}
+
+	/**
+	 * Returns the score of the move from the view of the player
+	 */
+	public int getScore() {
+		return score;
+	}
+
+	/**
+	 * Returns true if the score is exact, false if the move is only known to
+	 * be no better than the score
+	 */
+	public boolean isExact() {
+		return exact;
+	}
+
+	/**
+	 * Returns the line of play expected after the move, starting with the
+	 * move itself. Passes are left out. Moves with a bounded score only hold
+	 * the move itself.
+	 * 
+	 * @return The moves as squares (y * TABLE_WIDTH + x)
+	 */
+	public byte[] getMoves() {
+		return moves;
+	}
+}
@@ -0,0 +1,273 @@
+package com.othello;
+
+/**
+ * This class holds a board of more than 64 squares with the discs of each
+ * player as one int per row, bit x set for each square of the row. Moves
+ * are found row by row in each direction, carrying the runs of opponent
+ * discs from one row to the next, so that a single pass over the rows
+ * covers the vertical and diagonal directions.
+ */
+class OthelloWideBoard extends OthelloBoard {
+
+	/**
+	 * The horizontal step of each direction
+	 */
+	private static final int[] DX = { 1, 1, 0, -1, -1, -1, 0, 1 };
+
+	/**
+	 * The vertical step of each direction
+	 */
+	private static final int[] DY = { 0, 1, 1, 1, 0, -1, -1, -1 };
+
+	/**
+	 * All squares of a row
+	 */
+	private final int row;
+
+	/**
+	 * The black rows of each position in the history
+	 */
+	private final int[][] black;
+
+	/**
+	 * The white rows of each position in the history
+	 */
+	private final int[][] white;
+
+	/**
+	 * The moves found by the last move generation, as rows
+	 */
+	private final int[] moves;
+
+	/**
+	 * Pointer to the current position in the history
+	 */
+	private int current;
+
+	/**
+	 * Creates an empty board
+	 * 
+	 * @param size
+	 *            The number of squares along each side, at most 32
+	 */
+	OthelloWideBoard(int size) {
+		super(size);
+		row = (int) ((1L << size) - 1);
+		black = new int[size * size - 3][size];
+		white = new int[black.length][size];
+		moves = new int[size];
+	}
+
+	/**
+	 * Empties the board, leaving it without history
+	 */
+	public void clear() {
+		current = 0;
+		for (int y = 0; y < size; y++) {
+			black[0][y] = 0;
+			white[0][y] = 0;
+		}
+	}
+
+	/**
+	 * Places a disc without flipping any discs, leaving the board without
+	 * history
+	 */
+	public void setPiece(int square, byte piece) {
+		if (current != 0) {
+			System.arraycopy(black[current], 0, black[0], 0, size);
+			System.arraycopy(white[current], 0, white[0], 0, size);
+			current = 0;
+		}
+		int y = square / size;
+		int bit = 1 << square % size;
+		black[0][y] &= ~bit;
+		white[0][y] &= ~bit;
+		if (piece == OthelloTable.BLACK_PLAYER)
+			black[0][y] |= bit;
+		else if (piece == OthelloTable.WHITE_PLAYER)
+			white[0][y] |= bit;
+	}
+
+	/**
+	 * Returns the player or empty square of a square
+	 */
+	public byte getPiece(int square) {
+		int y = square / size;
+		int bit = 1 << square % size;
+		if ((black[current][y] & bit) != 0)
+			return OthelloTable.BLACK_PLAYER;
+		if ((white[current][y] & bit) != 0)
+			return OthelloTable.WHITE_PLAYER;
+		return OthelloTable.EMPTY_SQUARE;
+	}
+
+	/**
+	 * Returns the number of discs of a player
+	 */
+	public int getDiscs(byte player) {
+		int[] rows = getRows(player);
+		int discs = 0;
+		for (int y = 0; y < size; y++)
+			discs += countBits(rows[y]);
+		return discs;
+	}
+
+	/**
+	 * Finds the moves of a player in increasing order
+	 */
+	public int getMoves(byte player, int[] squares) {
+		findMoves(player);
+		int count = 0;
+		for (int y = 0; y < size; y++)
+			for (int x = 0, bits = moves[y]; bits != 0; x++, bits >>>= 1)
+				if ((bits & 1) != 0)
+					squares[count++] = y * size + x;
+		return count;
+	}
+
+	/**
+	 * Counts the moves of a player
+	 */
+	public int countMoves(byte player) {
+		findMoves(player);
+		int count = 0;
+		for (int y = 0; y < size; y++)
+			count += countBits(moves[y]);
+		return count;
+	}
+
+	/**
+	 * Performs a move and keeps the previous position in the history
+	 */
+	public int putPiece(int square, byte player) {
+		if (square < 0 || square >= size * size
+				|| current == black.length - 1)
+			return OthelloTable.INVALID_MOVE;
+		int[] own = getRows(player);
+		int[] opponent = getRows(OthelloTable.alternatePlayer(player));
+		int x = square % size;
+		int y = square / size;
+		if (((own[y] | opponent[y]) & 1 << x) != 0)
+			return OthelloTable.INVALID_MOVE;
+
+		// Copy the position and flip the discs on the new one
+		int[] nextOwn = getRows(current + 1, player);
+		int[] nextOpponent = getRows(current + 1, OthelloTable
+				.alternatePlayer(player));
+		System.arraycopy(own, 0, nextOwn, 0, size);
+		System.arraycopy(opponent, 0, nextOpponent, 0, size);
+		int flips = 0;
+		for (int d = 0; d < DX.length; d++) {
+			int dx = DX[d];
+			int dy = DY[d];
+			int steps = 0;
+			int cx = x + dx;
+			int cy = y + dy;
+			while (cx >= 0 && cx < size && cy >= 0 && cy < size
+					&& (opponent[cy] & 1 << cx) != 0) {
+				steps++;
+				cx += dx;
+				cy += dy;
+			}
+			if (steps == 0 || cx < 0 || cx >= size || cy < 0 || cy >= size
+					|| (own[cy] & 1 << cx) == 0)
+				continue;
+			flips += steps;
+			for (; steps > 0; steps--) {
+				cx -= dx;
+				cy -= dy;
+				nextOwn[cy] |= 1 << cx;
+				nextOpponent[cy] &= ~(1 << cx);
+			}
+		}
+		if (flips == 0)
+			return OthelloTable.INVALID_MOVE;
+
+		nextOwn[y] |= 1 << x;
+		current++;
+		return flips;
+	}
+
+	/**
+	 * Rewinds this board one move back in history
+	 */
+	public boolean rewind() {
+		if (current == 0)
+			return false;
+		current--;
+		return true;
+	}
+
+	/**
+	 * Returns the rows of a player
+	 */
+	private int[] getRows(byte player) {
+		return getRows(current, player);
+	}
+
+	/**
+	 * Returns the rows of a player in a position in the history
+	 */
+	private int[] getRows(int level, byte player) {
+		return player == OthelloTable.BLACK_PLAYER ? black[level]
+				: white[level];
+	}
+
+	/**
+	 * Finds the moves of a player as rows. A direction that changes rows is
+	 * followed over the rows in its own order, so the run of opponent discs
+	 * that reaches a row is complete when the row is visited. Runs along a
+	 * row are extended one step at a time, up to size - 2 discs.
+	 */
+	private void findMoves(byte player) {
+		int[] own = getRows(player);
+		int[] opponent = getRows(OthelloTable.alternatePlayer(player));
+		for (int y = 0; y < size; y++) {
+			int run = shift(own[y], 1) & opponent[y];
+			int back = shift(own[y], -1) & opponent[y];
+			for (int i = 3; i < size; i++) {
+				run |= shift(run, 1) & opponent[y];
+				back |= shift(back, -1) & opponent[y];
+			}
+			moves[y] = shift(run, 1) | shift(back, -1);
+		}
+		for (int d = 0; d < DX.length; d++) {
+			int dx = DX[d];
+			int dy = DY[d];
+			if (dy == 0)
+				continue;
+			int lastOwn = 0;
+			int lastRun = 0;
+			for (int y = dy > 0 ? 0 : size - 1; y >= 0 && y < size; y += dy) {
+				int reached = shift(lastRun, dx);
+				moves[y] |= reached;
+				lastRun = (shift(lastOwn, dx) | reached) & opponent[y];
+				lastOwn = own[y];
+			}
+		}
+		for (int y = 0; y < size; y++)
+			moves[y] &= ~(own[y] | opponent[y]);
+	}
+
+	/**
+	 * Shifts a row one square in a horizontal direction
+	 */
+	private int shift(int bits, int dx) {
+		if (dx > 0)
+			return bits << 1 & row;
+		if (dx < 0)
+			return bits >>> 1;
+		return bits;
+	}
+
+	/**
+	 * Counts the bits of a row
+	 */
+	private static int countBits(int bits) {
+		bits -= bits >>> 1 & 0x55555555;
+		bits = (bits & 0x33333333) + (bits >>> 2 & 0x33333333);
+		bits = bits + (bits >>> 4) & 0x0f0f0f0f;
+		return bits * 0x01010101 >>> 24;
+	}
+}
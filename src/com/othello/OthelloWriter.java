@@ -0,0 +1,269 @@
+package com.othello;
+
+import java.util.Vector;
+
+import javax.microedition.rms.RecordEnumeration;
+import javax.microedition.rms.RecordStore;
+import javax.microedition.rms.RecordStoreException;
+
+/**
+ * This class performs record store writes on a background thread. Repeated
+ * writes are merged so that only the last state is written.
+ */
+public class OthelloWriter implements Runnable {
+
+	/**
+	 * Replaces the data of a record
+	 */
+	public static final byte SET_RECORD = 0;
+
+	/**
+	 * Appends a new record
+	 */
+	public static final byte ADD_RECORD = 1;
+
+	/**
+	 * Deletes all records
+	 */
+	public static final byte CLEAR_RECORDS = 2;
+
+	/**
+	 * The time in milliseconds to wait for more writes before flushing
+	 */
+	private static final int WRITE_DELAY = 500;
+
+	/**
+	 * A pending write
+	 */
+	private static class Write {
+
+		/**
+		 * The write type (SET_RECORD, ADD_RECORD or CLEAR_RECORDS)
+		 */
+		byte type;
+
+		/**
+		 * The record store to write to
+		 */
+		RecordStore store;
+
+		/**
+		 * The record id for SET_RECORD
+		 */
+		int recordId;
+
+		/**
+		 * A private copy of the data to write
+		 */
+		byte[] data;
+	}
+
+	/**
+	 * The pending writes in order
+	 */
+	private Vector pending;
+
+	/**
+	 * The background thread
+	 */
+	private Thread thread;
+
+	/**
+	 * Creates a writer and starts its background thread
+	 */
+	public OthelloWriter() {
+		pending = new Vector();
+		thread = new Thread(this);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Replaces the data of a record. A pending write to the same record is
+	 * dropped.
+	 * 
+	 * @param store
+	 *            The record store
+	 * @param recordId
+	 *            The record id
+	 * @param data
+	 *            The data, copied before returning
+	 * @param length
+	 *            The length of the data
+	 */
+	public void setRecord(RecordStore store, int recordId, byte[] data,
+			int length) {
+		synchronized (pending) {
+			for (int i = pending.size() - 1; i >= 0; i--) {
+				Write write = (Write) pending.elementAt(i);
+				if (write.type == SET_RECORD && write.store == store
+						&& write.recordId == recordId)
+					pending.removeElementAt(i);
+			}
+			post(SET_RECORD, store, recordId, data, length);
+		}
+	}
+
+	/**
+	 * Appends a new record
+	 * 
+	 * @param store
+	 *            The record store
+	 * @param data
+	 *            The data, copied before returning
+	 * @param length
+	 *            The length of the data
+	 */
+	public void addRecord(RecordStore store, byte[] data, int length) {
+		synchronized (pending) {
+			post(ADD_RECORD, store, 0, data, length);
+		}
+	}
+
+	/**
+	 * Deletes all records of a store. Pending appends to the store are
+	 * dropped.
+	 * 
+	 * @param store
+	 *            The record store
+	 */
+	public void clearRecords(RecordStore store) {
+		synchronized (pending) {
+			for (int i = pending.size() - 1; i >= 0; i--) {
+				Write write = (Write) pending.elementAt(i);
+				if (write.type != SET_RECORD && write.store == store)
+					pending.removeElementAt(i);
+			}
+			post(CLEAR_RECORDS, store, 0, null, 0);
+		}
+	}
+
+	/**
+	 * Reads a record as it will be stored once the pending writes are done
+	 * 
+	 * @param store
+	 *            The record store
+	 * @param recordId
+	 *            The record id
+	 * @return The data of the record, not to be modified
+	 */
+	public synchronized byte[] readRecord(RecordStore store, int recordId)
+			throws RecordStoreException {
+		synchronized (pending) {
+			for (int i = pending.size() - 1; i >= 0; i--) {
+				Write write = (Write) pending.elementAt(i);
+				if (write.type == SET_RECORD && write.store == store
+						&& write.recordId == recordId)
+					return write.data;
+			}
+		}
+		return store.getRecord(recordId);
+	}
+
+	/**
+	 * Performs all pending writes on the calling thread
+	 */
+	public synchronized void flush() {
+		Write write;
+		boolean failed = false;
+		OthelloProbe probe = OthelloProbe.probe;
+		while ((write = nextWrite()) != null) {
+			Object event = probe != null ? probe.beginRecordWrite() : null;
+			try {
+				switch (write.type) {
+				case SET_RECORD:
+					write.store.setRecord(write.recordId, write.data, 0,
+							write.data.length);
+					break;
+				case ADD_RECORD:
+					write.store.addRecord(write.data, 0, write.data.length);
+					break;
+				case CLEAR_RECORDS:
+					// Keep the records if an earlier write failed, they may
+					// be all that is left of the data
+					if (failed)
+						break;
+					RecordEnumeration records = write.store.enumerateRecords(
+							null, null, false);
+					while (records.hasNextElement())
+						write.store.deleteRecord(records.nextRecordId());
+					records.destroy();
+					break;
+				}
+			} catch (RecordStoreException e) {
+				failed = true;
+			}
+			if (event != null)
+				probe.endRecordWrite(event, write.type,
+						write.data != null ? write.data.length : 0);
+		}
+	}
+
+	/**
+	 * Stops the background thread after flushing all pending writes
+	 */
+	public void stop() {
+		synchronized (pending) {
+			thread = null;
+			pending.notify();
+		}
+		flush();
+	}
+
+	/**
+	 * The background loop
+	 */
+	public void run() {
+		while (true) {
+			synchronized (pending) {
+				while (thread != null && pending.isEmpty()) {
+					try {
+						pending.wait();
+					} catch (InterruptedException e) {
+					}
+				}
+				if (thread == null)
+					return;
+			}
+
+			// Give repeated writes a chance to be merged
+			try {
+				Thread.sleep(WRITE_DELAY);
+			} catch (InterruptedException e) {
+			}
+			flush();
+		}
+	}
+
+	/**
+	 * Queues a write, must be called with the pending lock held
+	 */
+	private void post(byte type, RecordStore store, int recordId,
+			byte[] data, int length) {
+		Write write = new Write();
+		write.type = type;
+		write.store = store;
+		write.recordId = recordId;
+		if (data != null) {
+			write.data = new byte[length];
+			System.arraycopy(data, 0, write.data, 0, length);
+		}
+		pending.addElement(write);
+		pending.notify();
+	}
+
+	/**
+	 * Removes the next pending write
+	 * 
+	 * @return The write or null if none is pending
+	 */
+	private Write nextWrite() {
+		synchronized (pending) {
+			if (pending.isEmpty())
+				return null;
+			Write write = (Write) pending.elementAt(0);
+			pending.removeElementAt(0);
+			return write;
+		}
+	}
+}
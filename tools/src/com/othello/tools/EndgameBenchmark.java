@@ -0,0 +1,241 @@
+package com.othello.tools;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.othello.OthelloBot;
+import com.othello.OthelloEventQueue;
+import com.othello.OthelloTable;
+import com.othello.OthelloVariation;
+
+/**
+ * This tool benchmarks the endgame solver on a suite of positions in the
+ * text format of the FFO test positions. Each line holds 64 squares (X or *
+ * for black, O for white, - or . for empty), the player to move and
+ * optionally the best moves with their scores, as in
+ * <p>
+ * <code>--XXXXX--OOOXX-O-OOOXXOX-OXOXOXXOXXXOXXX--XOXOXX-XXXOOO--OOOOO-- X; G8:+18; H1:+12;</code>
+ * <p>
+ * Each position is solved exactly and checked against the best expected
+ * score and moves. The time, nodes and speed are reported per position and
+ * in total. Positions are solved in parallel unless the sequential mode is
+ * asked for, which gives more stable timing.
+ * <p>
+ * Usage: EndgameBenchmark [--sequential] [--threads n] file
+ */
+public class EndgameBenchmark {
+
+	/**
+	 * A move and its expected score
+	 */
+	private static final Pattern EXPECTED = Pattern
+			.compile("([A-Ha-h][1-8]|PA|pa)\\s*:\\s*([+-]?\\d+)");
+
+	/**
+	 * A position of the suite
+	 * 
+	 * @param number
+	 *            The line number of the position
+	 * @param black
+	 *            The black discs
+	 * @param white
+	 *            The white discs
+	 * @param player
+	 *            The player to move
+	 * @param bestScore
+	 *            The best expected score, or null if not given
+	 * @param bestMoves
+	 *            The moves with the best expected score
+	 */
+	private record Position(int number, long black, long white, byte player,
+			Integer bestScore, List<String> bestMoves) {
+	}
+
+	/**
+	 * The solution of a position
+	 * 
+	 * @param move
+	 *            The best move found
+	 * @param score
+	 *            The exact score
+	 * @param time
+	 *            The time in milliseconds
+	 * @param nodes
+	 *            The number of nodes searched
+	 */
+	private record Solution(String move, int score, long time, long nodes) {
+	}
+
+	/**
+	 * The event queue of the bots, which have no events to post here
+	 */
+	private static final OthelloEventQueue QUEUE = new OthelloEventQueue((
+			type, arg0, arg1, arg2) -> {
+	});
+
+	/**
+	 * Parses a position line
+	 * 
+	 * @return The position, or null if the line holds no position
+	 */
+	private static Position parse(int number, String line) {
+		line = line.trim();
+		if (line.isEmpty() || line.startsWith("%") || line.startsWith("#"))
+			return null;
+
+		long black = 0;
+		long white = 0;
+		int square = 0;
+		int i = 0;
+		for (; i < line.length() && square < 64; i++) {
+			char c = line.charAt(i);
+			if (Character.isWhitespace(c))
+				continue;
+			if (c == 'X' || c == 'x' || c == '*')
+				black |= 1L << square;
+			else if (c == 'O' || c == 'o')
+				white |= 1L << square;
+			else if (c != '-' && c != '.')
+				return null;
+			square++;
+		}
+		while (i < line.length() && Character.isWhitespace(line.charAt(i)))
+			i++;
+		if (square < 64 || i == line.length())
+			return null;
+		char side = Character.toUpperCase(line.charAt(i));
+		byte player = side == 'X' || side == '*' ? OthelloTable.BLACK_PLAYER
+				: OthelloTable.WHITE_PLAYER;
+
+		Integer bestScore = null;
+		List<String> bestMoves = new ArrayList<>();
+		Matcher expected = EXPECTED.matcher(line.substring(i + 1));
+		while (expected.find()) {
+			int score = Integer.parseInt(expected.group(2).replace("+", ""));
+			if (bestScore == null || score > bestScore) {
+				bestScore = score;
+				bestMoves.clear();
+			}
+			if (score == bestScore)
+				bestMoves.add(expected.group(1).toUpperCase());
+		}
+		return new Position(number, black, white, player, bestScore,
+				bestMoves);
+	}
+
+	/**
+	 * Solves a position on its own table
+	 */
+	private static Solution solve(Position position) {
+		OthelloTable table = new OthelloTable();
+		table.setPosition(position.black(), position.white());
+		// A player that has to pass is scored by the reply of the opponent
+		byte player = position.player();
+		boolean pass = !table.canMove(player);
+		if (pass)
+			player = OthelloTable.alternatePlayer(player);
+
+		OthelloBot bot = new OthelloBot(QUEUE, table, null, player,
+				OthelloBot.MAX_LEVEL);
+		long start = System.nanoTime();
+		OthelloVariation[] variations = bot.analyzeMoves(1,
+				OthelloBot.EXACT_DEPTH);
+		long time = (System.nanoTime() - start) / 1000000;
+		if (variations.length == 0)
+			return new Solution("--", 0, time, bot.getNodes());
+		OthelloVariation best = variations[0];
+		if (pass)
+			return new Solution("PA", -best.getScore(), time, bot.getNodes());
+		String move = "" + (char) ('A' + best.getX())
+				+ (char) ('1' + best.getY());
+		return new Solution(move, best.getScore(), time, bot.getNodes());
+	}
+
+	/**
+	 * Runs the benchmark
+	 * 
+	 * @param args
+	 *            The options and the file of positions
+	 */
+	public static void main(String[] args) throws Exception {
+		boolean sequential = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String file = null;
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--sequential"))
+				sequential = true;
+			else if (args[i].equals("--threads"))
+				threads = Integer.parseInt(args[++i]);
+			else
+				file = args[i];
+		}
+		if (file == null) {
+			System.err.println("Usage: EndgameBenchmark [--sequential] "
+					+ "[--threads n] file");
+			System.exit(1);
+		}
+
+		List<Position> positions = new ArrayList<>();
+		List<String> lines = Files.readAllLines(Path.of(file));
+		for (int i = 0; i < lines.size(); i++) {
+			Position position = parse(i + 1, lines.get(i));
+			if (position != null)
+				positions.add(position);
+		}
+
+		ExecutorService pool = sequential ? null : Executors
+				.newFixedThreadPool(threads);
+		List<Future<Solution>> futures = new ArrayList<>();
+		if (pool != null)
+			for (Position position : positions)
+				futures.add(pool.submit(() -> solve(position)));
+
+		System.out.printf("%5s %3s %-6s %5s %5s %6s %10s %12s %10s%n",
+				"line", "emp", "move", "score", "want", "result", "time ms",
+				"nodes", "nodes/s");
+		long start = System.nanoTime();
+		long totalNodes = 0;
+		int failures = 0;
+		for (int i = 0; i < positions.size(); i++) {
+			Position position = positions.get(i);
+			Solution solution = pool != null ? futures.get(i).get()
+					: solve(position);
+			totalNodes += solution.nodes();
+
+			String result = "-";
+			if (position.bestScore() != null) {
+				boolean correct = solution.score() == position.bestScore()
+						&& (position.bestMoves().isEmpty() || position
+								.bestMoves().contains(solution.move()));
+				result = correct ? "ok" : "FAIL";
+				if (!correct)
+					failures++;
+			}
+			int empties = 64 - Long.bitCount(position.black()
+					| position.white());
+			System.out.printf("%5d %3d %-6s %+5d %5s %6s %10d %12d %10d%n",
+					position.number(), empties, solution.move(), solution
+							.score(), position.bestScore() == null ? "?"
+							: String.format("%+d", position.bestScore()),
+					result, solution.time(), solution.nodes(), solution
+							.nodes()
+							* 1000 / Math.max(1, solution.time()));
+		}
+		long time = (System.nanoTime() - start) / 1000000;
+		if (pool != null)
+			pool.shutdown();
+
+		System.out.printf("%d positions, %d failed, %d ms, %d nodes, "
+				+ "%d nodes/s (%s)%n", positions.size(), failures, time,
+				totalNodes, totalNodes * 1000 / Math.max(1, time),
+				sequential ? "sequential" : threads + " threads");
+		System.exit(failures == 0 ? 0 : 1);
+	}
+}
@@ -0,0 +1,428 @@
+package com.othello.tools;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import com.othello.OthelloBot;
+import com.othello.OthelloEventQueue;
+import com.othello.OthelloTable;
+import com.othello.OthelloVariation;
+
+/**
+ * This tool fits the evaluation weights of the bot to labeled positions.
+ * The positions come from self-play games and optionally from WTHOR
+ * databases, each labeled with the final disc difference of its game from
+ * the view of the player to move. Their features are kept in primitive
+ * arrays, and the weights of each phase are fitted by full batch gradient
+ * descent on the squared error, with the gradient summed over chunks of
+ * the positions in parallel. Every tenth position is held out to validate
+ * the fit. The weights are written as the resource loaded by OthelloBot.
+ * <p>
+ * Usage: EvalTrainer [--games n] [--wthor file or directory] [--epochs n]
+ * [--output file]
+ */
+public class EvalTrainer {
+
+	/**
+	 * The number of random moves that open a self-play game
+	 */
+	private static final int RANDOM_PLIES = 10;
+
+	/**
+	 * The depth of the searches choosing the moves of a self-play game
+	 */
+	private static final int SELF_PLAY_DEPTH = 3;
+
+	/**
+	 * The number of empty squares from which self-play games are played
+	 * perfectly
+	 */
+	private static final int SOLVE_EMPTIES = 12;
+
+	/**
+	 * The number of positions in a chunk of the parallel gradient
+	 */
+	private static final int CHUNK_SIZE = 4096;
+
+	/**
+	 * The number of positions a dataset has room for at first
+	 */
+	private static final int INITIAL_CAPACITY = 1 << 16;
+
+	/**
+	 * The step size of the gradient descent
+	 */
+	private static final double LEARNING_RATE = 0.05;
+
+	/**
+	 * The decay rates of the running means of the gradient and its square
+	 */
+	private static final double BETA1 = 0.9, BETA2 = 0.999;
+
+	/**
+	 * The labeled positions as primitive arrays that grow as positions are
+	 * added
+	 */
+	private static final class Dataset {
+
+		/**
+		 * The features of each position, EVAL_FEATURES per position
+		 */
+		byte[] features = new byte[INITIAL_CAPACITY
+				* OthelloBot.EVAL_FEATURES];
+
+		/**
+		 * The final disc difference of each position
+		 */
+		byte[] labels = new byte[INITIAL_CAPACITY];
+
+		/**
+		 * The phase of each position
+		 */
+		byte[] phases = new byte[INITIAL_CAPACITY];
+
+		/**
+		 * The number of positions
+		 */
+		int size;
+
+		/**
+		 * Adds a position
+		 * 
+		 * @param own
+		 *            The discs of the player to move
+		 * @param opponent
+		 *            The discs of the opponent
+		 * @param label
+		 *            The final disc difference from the view of the player
+		 */
+		void add(long own, long opponent, int label) {
+			if (size == labels.length) {
+				features = Arrays.copyOf(features, features.length * 2);
+				labels = Arrays.copyOf(labels, labels.length * 2);
+				phases = Arrays.copyOf(phases, phases.length * 2);
+			}
+			OthelloBot.extractFeatures(own, opponent, features, size
+					* OthelloBot.EVAL_FEATURES);
+			labels[size] = (byte) label;
+			phases[size] = (byte) OthelloBot.getPhase(own, opponent);
+			size++;
+		}
+	}
+
+	/**
+	 * The positions of a self-play game and its result
+	 * 
+	 * @param own
+	 *            The discs of the player to move in each position
+	 * @param opponent
+	 *            The discs of the opponent in each position
+	 * @param black
+	 *            Indicates that black is to move in each position
+	 * @param count
+	 *            The number of positions
+	 * @param blackDifference
+	 *            The final disc difference from the view of black
+	 */
+	private record Game(long[] own, long[] opponent, boolean[] black,
+			int count, int blackDifference) {
+	}
+
+	/**
+	 * The event queue of the bots, which have no events to post here
+	 */
+	private static final OthelloEventQueue QUEUE = new OthelloEventQueue((
+			type, arg0, arg1, arg2) -> {
+	});
+
+	/**
+	 * Plays a self-play game with a random opening
+	 * 
+	 * @param seed
+	 *            The seed of the opening
+	 */
+	private static Game playGame(long seed) {
+		Random random = new Random(seed);
+		OthelloTable table = new OthelloTable();
+		table.startNewGame();
+		OthelloBot[] bots = new OthelloBot[3];
+		bots[OthelloTable.BLACK_PLAYER] = new OthelloBot(QUEUE, table, null,
+				OthelloTable.BLACK_PLAYER, OthelloBot.MAX_LEVEL);
+		bots[OthelloTable.WHITE_PLAYER] = new OthelloBot(QUEUE, table, null,
+				OthelloTable.WHITE_PLAYER, OthelloBot.MAX_LEVEL);
+
+		int size = OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT;
+		long[] own = new long[size];
+		long[] opponent = new long[size];
+		boolean[] black = new boolean[size];
+		int count = 0;
+		byte player = OthelloTable.BLACK_PLAYER;
+		for (int ply = 0;; ply++) {
+			if (!table.canMove(player)) {
+				player = OthelloTable.alternatePlayer(player);
+				if (!table.canMove(player))
+					break;
+			}
+			own[count] = table.getMask(player);
+			opponent[count] = table.getMask(OthelloTable
+					.alternatePlayer(player));
+			black[count] = player == OthelloTable.BLACK_PLAYER;
+			count++;
+
+			int square;
+			int empties = size - table.getBlackScore()
+					- table.getWhiteScore();
+			if (ply < RANDOM_PLIES) {
+				List<Integer> moves = new ArrayList<>();
+				for (square = 0; square < size; square++)
+					if (table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+							(byte) (square / OthelloTable.TABLE_WIDTH), player) != OthelloTable.INVALID_MOVE) {
+						table.rewind();
+						moves.add(square);
+					}
+				square = moves.get(random.nextInt(moves.size()));
+			} else {
+				OthelloVariation[] variations = bots[player].analyzeMoves(1,
+						empties <= SOLVE_EMPTIES ? OthelloBot.EXACT_DEPTH
+								: SELF_PLAY_DEPTH);
+				square = variations[0].getMoves()[0];
+			}
+			table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+					(byte) (square / OthelloTable.TABLE_WIDTH), player);
+			table.commit();
+			player = OthelloTable.alternatePlayer(player);
+		}
+		return new Game(own, opponent, black, count, table.getBlackScore()
+				- table.getWhiteScore());
+	}
+
+	/**
+	 * Adds the positions of self-play games played in parallel
+	 */
+	private static void addSelfPlay(Dataset dataset, int games) {
+		int[] done = new int[1];
+		IntStream.range(0, games).parallel().mapToObj(seed -> {
+			Game game = playGame(seed);
+			synchronized (done) {
+				System.err.print("\rgame " + ++done[0] + "/" + games);
+			}
+			return game;
+		}).forEachOrdered(game -> {
+			for (int i = 0; i < game.count(); i++)
+				dataset.add(game.own()[i], game.opponent()[i],
+						game.black()[i] ? game.blackDifference() : -game
+								.blackDifference());
+		});
+		System.err.println();
+	}
+
+	/**
+	 * Adds the positions of WTHOR databases, labeled with the final score of
+	 * each game
+	 */
+	private static void addDatabase(Dataset dataset, Path path)
+			throws IOException {
+		List<Path> files = new ArrayList<>();
+		if (Files.isDirectory(path)) {
+			try (Stream<Path> entries = Files.list(path)) {
+				entries.filter(
+						file -> file.getFileName().toString().toLowerCase()
+								.endsWith(".wtb")).sorted().forEach(files::add);
+			}
+		} else
+			files.add(path);
+		for (Path file : files)
+			new WthorReader(file).replay((ply, black, white, player, square,
+					blackDiscs) -> {
+				int difference = 2 * blackDiscs
+						- OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT;
+				if (player == OthelloTable.BLACK_PLAYER)
+					dataset.add(black, white, difference);
+				else
+					dataset.add(white, black, -difference);
+			});
+	}
+
+	/**
+	 * Fits the weights of a phase to its training positions
+	 * 
+	 * @param weights
+	 *            The weights of the phase in disc units, the start of the
+	 *            fit and replaced by its result
+	 */
+	private static void fit(Dataset dataset, int phase, double[] weights,
+			int epochs) {
+		int features = OthelloBot.EVAL_FEATURES;
+		int chunks = (dataset.size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		double[] mean = new double[features];
+		double[] variance = new double[features];
+		for (int epoch = 1; epoch <= epochs; epoch++) {
+			double[][] parts = new double[chunks][];
+			IntStream.range(0, chunks).parallel().forEach(
+					chunk -> parts[chunk] = gradient(dataset, phase, weights,
+							chunk * CHUNK_SIZE, Math.min(dataset.size,
+									(chunk + 1) * CHUNK_SIZE)));
+			double[] gradient = new double[features + 1];
+			for (double[] part : parts)
+				for (int i = 0; i <= features; i++)
+					gradient[i] += part[i];
+			if (gradient[features] == 0)
+				return;
+
+			// Adam steps on the mean gradient
+			for (int i = 0; i < features; i++) {
+				double g = gradient[i] / gradient[features];
+				mean[i] = BETA1 * mean[i] + (1 - BETA1) * g;
+				variance[i] = BETA2 * variance[i] + (1 - BETA2) * g * g;
+				double m = mean[i] / (1 - Math.pow(BETA1, epoch));
+				double v = variance[i] / (1 - Math.pow(BETA2, epoch));
+				weights[i] -= LEARNING_RATE * m / (Math.sqrt(v) + 1e-8);
+			}
+		}
+	}
+
+	/**
+	 * Sums the gradient of the squared error over the training positions of
+	 * a phase in a range
+	 * 
+	 * @return The gradient of each weight followed by the number of
+	 *         positions
+	 */
+	private static double[] gradient(Dataset dataset, int phase,
+			double[] weights, int from, int to) {
+		int features = OthelloBot.EVAL_FEATURES;
+		double[] gradient = new double[features + 1];
+		for (int i = from; i < to; i++) {
+			if (dataset.phases[i] != phase || isValidation(i))
+				continue;
+			int offset = i * features;
+			double error = -dataset.labels[i];
+			for (int j = 0; j < features; j++)
+				error += weights[j] * dataset.features[offset + j];
+			for (int j = 0; j < features; j++)
+				gradient[j] += 2 * error * dataset.features[offset + j];
+			gradient[features]++;
+		}
+		return gradient;
+	}
+
+	/**
+	 * Returns the root mean squared error of the weights of a phase
+	 * 
+	 * @param validation
+	 *            True for the held out positions, false for the training
+	 *            positions
+	 */
+	private static double error(Dataset dataset, int phase,
+			double[] weights, boolean validation) {
+		int features = OthelloBot.EVAL_FEATURES;
+		double squares = 0;
+		int count = 0;
+		for (int i = 0; i < dataset.size; i++) {
+			if (dataset.phases[i] != phase || isValidation(i) != validation)
+				continue;
+			double error = -dataset.labels[i];
+			for (int j = 0; j < features; j++)
+				error += weights[j] * dataset.features[i * features + j];
+			squares += error * error;
+			count++;
+		}
+		return Math.sqrt(squares / Math.max(1, count));
+	}
+
+	/**
+	 * Returns true if a position is held out for validation
+	 */
+	private static boolean isValidation(int index) {
+		return index % 10 == 9;
+	}
+
+	/**
+	 * Writes the weights in the format read by OthelloBot
+	 */
+	private static void write(short[] weights, String file)
+			throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(
+				file))) {
+			out.writeByte(OthelloBot.EVAL_VERSION);
+			out.writeByte(OthelloBot.EVAL_PHASES);
+			out.writeByte(OthelloBot.EVAL_FEATURES);
+			for (short weight : weights)
+				out.writeShort(weight);
+		}
+	}
+
+	/**
+	 * Runs the training
+	 * 
+	 * @param args
+	 *            The options
+	 */
+	public static void main(String[] args) throws IOException {
+		int games = 1000;
+		int epochs = 500;
+		String output = "res/eval.dat";
+		List<Path> databases = new ArrayList<>();
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--games":
+				games = Integer.parseInt(args[++i]);
+				break;
+			case "--wthor":
+				databases.add(Path.of(args[++i]));
+				break;
+			case "--epochs":
+				epochs = Integer.parseInt(args[++i]);
+				break;
+			case "--output":
+				output = args[++i];
+				break;
+			default:
+				System.err.println("Usage: EvalTrainer [--games n] "
+						+ "[--wthor file or directory] [--epochs n] "
+						+ "[--output file]");
+				System.exit(1);
+			}
+		}
+
+		Dataset dataset = new Dataset();
+		addSelfPlay(dataset, games);
+		for (Path database : databases)
+			addDatabase(dataset, database);
+		System.out.println(dataset.size + " positions");
+
+		// The fit starts from the weights the bot uses now
+		short[] weights = OthelloBot.getEvaluationWeights();
+		int features = OthelloBot.EVAL_FEATURES;
+		for (int phase = 0; phase < OthelloBot.EVAL_PHASES; phase++) {
+			double[] fitted = new double[features];
+			for (int i = 0; i < features; i++)
+				fitted[i] = (double) weights[phase * features + i]
+						/ OthelloBot.EVAL_SCALE;
+			double before = error(dataset, phase, fitted, true);
+			fit(dataset, phase, fitted, epochs);
+			StringBuilder line = new StringBuilder();
+			for (int i = 0; i < features; i++) {
+				weights[phase * features + i] = (short) Math.max(
+						Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math
+								.round(fitted[i] * OthelloBot.EVAL_SCALE)));
+				line.append(String.format(" %6.2f", fitted[i]));
+			}
+			System.out.printf("phase %d: weights%s, rms error %.2f "
+					+ "(training %.2f, before %.2f)%n", phase, line, error(
+					dataset, phase, fitted, true), error(dataset, phase,
+					fitted, false), before);
+		}
+		write(weights, output);
+		System.exit(0);
+	}
+}
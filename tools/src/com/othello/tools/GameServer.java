@@ -0,0 +1,658 @@
+package com.othello.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.othello.OthelloBot;
+import com.othello.OthelloEventQueue;
+import com.othello.OthelloTable;
+import com.othello.OthelloVariation;
+
+/**
+ * This class hosts many games against the bot on one JVM over TCP. Each
+ * client session runs on its own virtual thread and plays one side of a
+ * game, while the bot searches run on a bounded pool of platform threads.
+ * The pool takes searches in the order they are asked for, and a session
+ * waits for its move before it can ask again, so busy sessions cannot
+ * starve the others. Each search is stopped at the move time limit of its
+ * session and plays the best move of the last completed depth.
+ * <p>
+ * The protocol is line based. The client sends new [black|white], move
+ * d3, pass, time ms, board or quit. Moves are answered with ok followed by
+ * the moves of the bot, or with end, the final black and white scores and
+ * the moves of the bot when the game is over.
+ * <p>
+ * Usage: GameServer [--port n] [--threads n] [--time ms] [--load sessions
+ * games]. With --load the server is driven by the given number of local
+ * client sessions and reports the throughput and latency of the bot.
+ */
+public class GameServer {
+
+	/**
+	 * The default port
+	 */
+	private static final int DEFAULT_PORT = 5000;
+
+	/**
+	 * The default move time limit in milliseconds
+	 */
+	private static final long DEFAULT_TIME = 100;
+
+	/**
+	 * The number of empty squares from which a search tries to solve the
+	 * game exactly after the depth limited search
+	 */
+	private static final int SOLVE_EMPTIES = 14;
+
+	/**
+	 * The table and bots of a search thread
+	 */
+	private static final class Worker {
+
+		/**
+		 * The table searched by the bots
+		 */
+		final OthelloTable table = new OthelloTable();
+
+		/**
+		 * The bot of each player
+		 */
+		final OthelloBot[] bots = new OthelloBot[3];
+
+		/**
+		 * Creates the bots of a worker
+		 */
+		Worker(OthelloEventQueue queue) {
+			bots[OthelloTable.BLACK_PLAYER] = new OthelloBot(queue, table,
+					null, OthelloTable.BLACK_PLAYER, OthelloBot.MAX_LEVEL);
+			bots[OthelloTable.WHITE_PLAYER] = new OthelloBot(queue, table,
+					null, OthelloTable.WHITE_PLAYER, OthelloBot.MAX_LEVEL);
+		}
+	}
+
+	/**
+	 * The time limit of a running search. The bot is only killed while the
+	 * search runs, so that a late timer cannot stop the next search of the
+	 * same bot.
+	 */
+	private static final class Deadline {
+
+		/**
+		 * The bot searching
+		 */
+		private final OthelloBot bot;
+
+		/**
+		 * Indicates that the time is up
+		 */
+		private boolean expired;
+
+		/**
+		 * Indicates that the search has finished
+		 */
+		private boolean finished;
+
+		/**
+		 * Creates the deadline of a search
+		 */
+		Deadline(OthelloBot bot) {
+			this.bot = bot;
+		}
+
+		/**
+		 * Stops the search if it still runs
+		 */
+		synchronized void expire() {
+			if (!finished) {
+				expired = true;
+				bot.kill();
+			}
+		}
+
+		/**
+		 * Returns true if the time is up
+		 */
+		synchronized boolean isExpired() {
+			return expired;
+		}
+
+		/**
+		 * Marks the search as finished
+		 */
+		synchronized void finish() {
+			finished = true;
+		}
+	}
+
+	/**
+	 * The latencies of the bot moves and the number of moves played
+	 */
+	private static final class Statistics {
+
+		/**
+		 * The latencies in microseconds, from asking for a move until it is
+		 * found
+		 */
+		private final List<Long> latencies = new ArrayList<>();
+
+		/**
+		 * Records a bot move
+		 */
+		synchronized void record(long micros) {
+			latencies.add(micros);
+		}
+
+		/**
+		 * Returns the number of bot moves
+		 */
+		synchronized int getMoves() {
+			return latencies.size();
+		}
+
+		/**
+		 * Returns a percentile of the latencies in microseconds
+		 * 
+		 * @param percent
+		 *            The percentile, such as 99
+		 */
+		synchronized long getPercentile(double percent) {
+			if (latencies.isEmpty())
+				return 0;
+			List<Long> sorted = new ArrayList<>(latencies);
+			Collections.sort(sorted);
+			int index = (int) Math.ceil(percent / 100 * sorted.size()) - 1;
+			return sorted.get(Math.max(0, index));
+		}
+	}
+
+	/**
+	 * The socket accepting clients
+	 */
+	private final ServerSocket server;
+
+	/**
+	 * The virtual threads of the client sessions
+	 */
+	private final ExecutorService sessions = Executors
+			.newVirtualThreadPerTaskExecutor();
+
+	/**
+	 * The bounded pool running the bot searches in first come, first served
+	 * order
+	 */
+	private final ThreadPoolExecutor searchers;
+
+	/**
+	 * The thread stopping searches at their time limit
+	 */
+	private final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor();
+
+	/**
+	 * The worker of each search thread
+	 */
+	private final ThreadLocal<Worker> workers;
+
+	/**
+	 * The maximum move time limit of a session in milliseconds
+	 */
+	private final long maxTime;
+
+	/**
+	 * The statistics of the bot moves
+	 */
+	private final Statistics statistics = new Statistics();
+
+	/**
+	 * Creates a server
+	 * 
+	 * @param port
+	 *            The port to listen on, or 0 for any free port
+	 * @param threads
+	 *            The number of threads searching bot moves
+	 * @param maxTime
+	 *            The maximum move time limit in milliseconds, also the
+	 *            default of new sessions
+	 */
+	public GameServer(int port, int threads, long maxTime) throws IOException {
+		server = new ServerSocket(port);
+		searchers = new ThreadPoolExecutor(threads, threads, 0,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+		OthelloEventQueue queue = new OthelloEventQueue((type, arg0, arg1,
+				arg2) -> {
+		});
+		workers = ThreadLocal.withInitial(() -> new Worker(queue));
+		this.maxTime = maxTime;
+	}
+
+	/**
+	 * Returns the port the server listens on
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Accepts clients on a thread of its own until the server is closed
+	 */
+	public void start() {
+		Thread.ofPlatform().name("accept").start(() -> {
+			try {
+				while (true) {
+					Socket socket = server.accept();
+					sessions.submit(() -> new Session(socket).run());
+				}
+			} catch (IOException e) {
+				// The server has been closed
+			}
+		});
+	}
+
+	/**
+	 * Closes the server and its threads
+	 */
+	public void close() throws IOException {
+		server.close();
+		sessions.shutdownNow();
+		searchers.shutdownNow();
+		timer.shutdownNow();
+	}
+
+	/**
+	 * A game played by a client
+	 */
+	private final class Session implements Runnable {
+
+		/**
+		 * The socket of the client
+		 */
+		private final Socket socket;
+
+		/**
+		 * The table of the game
+		 */
+		private final OthelloTable table = new OthelloTable();
+
+		/**
+		 * The player of the client
+		 */
+		private byte human = OthelloTable.BLACK_PLAYER;
+
+		/**
+		 * The move time limit of the bot in milliseconds
+		 */
+		private long time = maxTime;
+
+		/**
+		 * Indicates that a game is being played
+		 */
+		private boolean playing;
+
+		/**
+		 * Creates the session of a client
+		 */
+		Session(Socket socket) {
+			this.socket = socket;
+		}
+
+		/**
+		 * Handles the commands of the client until it quits or disconnects
+		 */
+		public void run() {
+			try (socket;
+					BufferedReader in = new BufferedReader(
+							new InputStreamReader(socket.getInputStream()));
+					PrintWriter out = new PrintWriter(socket
+							.getOutputStream(), true)) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					String[] words = line.trim().split("\\s+");
+					if (words[0].equals("quit"))
+						break;
+					out.println(handle(words));
+				}
+			} catch (IOException | InterruptedException e) {
+				// The client is gone or the server is closing
+			}
+		}
+
+		/**
+		 * Handles a command
+		 * 
+		 * @return The reply
+		 */
+		private String handle(String[] words) throws InterruptedException {
+			switch (words[0]) {
+			case "new":
+				table.startNewGame();
+				human = words.length > 1 && words[1].equals("white") ? OthelloTable.WHITE_PLAYER
+						: OthelloTable.BLACK_PLAYER;
+				playing = true;
+				return human == OthelloTable.BLACK_PLAYER ? "ok"
+						: playBot();
+			case "move":
+				if (!playing)
+					return "error no game";
+				int square = words.length > 1 ? parseSquare(words[1]) : -1;
+				if (square < 0
+						|| table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+								(byte) (square / OthelloTable.TABLE_WIDTH),
+								human) == OthelloTable.INVALID_MOVE)
+					return "error illegal move";
+				table.commit();
+				return playBot();
+			case "pass":
+				if (!playing)
+					return "error no game";
+				if (table.canMove(human))
+					return "error illegal pass";
+				return playBot();
+			case "time":
+				try {
+					time = Math.max(1, Math.min(maxTime, Long
+							.parseLong(words[1])));
+					return "ok";
+				} catch (RuntimeException e) {
+					return "error invalid time";
+				}
+			case "board":
+				return "board " + formatBoard();
+			default:
+				return "error unknown command";
+			}
+		}
+
+		/**
+		 * Plays the bot until the client can move or the game is over
+		 * 
+		 * @return The reply with the moves of the bot
+		 */
+		private String playBot() throws InterruptedException {
+			byte bot = OthelloTable.alternatePlayer(human);
+			StringBuilder moves = new StringBuilder();
+			while (true) {
+				if (!table.canMove(bot)) {
+					if (table.canMove(human))
+						return "ok" + moves;
+					playing = false;
+					return "end " + table.getBlackScore() + " "
+							+ table.getWhiteScore() + moves;
+				}
+				int square = findMove(table, bot, time);
+				table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+						(byte) (square / OthelloTable.TABLE_WIDTH), bot);
+				table.commit();
+				moves.append(' ').append(formatSquare(square));
+				if (table.canMove(human))
+					return "ok" + moves;
+			}
+		}
+
+		/**
+		 * Formats the board as 64 squares (X for black, O for white and -
+		 * for empty) and the player to move
+		 */
+		private String formatBoard() {
+			StringBuilder board = new StringBuilder();
+			for (byte y = 0; y < OthelloTable.TABLE_HEIGHT; y++)
+				for (byte x = 0; x < OthelloTable.TABLE_WIDTH; x++) {
+					byte piece = table.getPiece(x, y);
+					board.append(piece == OthelloTable.BLACK_PLAYER ? 'X'
+							: piece == OthelloTable.WHITE_PLAYER ? 'O' : '-');
+				}
+			return board + (human == OthelloTable.BLACK_PLAYER ? " X" : " O");
+		}
+	}
+
+	/**
+	 * Finds the move of the bot on the search pool and records its latency
+	 * 
+	 * @param table
+	 *            The table of the game, left unchanged
+	 * @param player
+	 *            The player of the bot, which must be able to move
+	 * @param limit
+	 *            The time limit of the search in milliseconds
+	 * @return The square of the move (y * TABLE_WIDTH + x)
+	 */
+	private int findMove(OthelloTable table, byte player, long limit)
+			throws InterruptedException {
+		OthelloTable position = new OthelloTable();
+		position.copy(table);
+		long start = System.nanoTime();
+		try {
+			int square = searchers.submit(() -> search(position, player,
+					limit)).get();
+			statistics.record((System.nanoTime() - start) / 1000);
+			return square;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Searches a position with iterative deepening until the time limit,
+	 * on the table and bot of the calling search thread
+	 * 
+	 * @return The square of the best move of the last completed depth
+	 */
+	private int search(OthelloTable position, byte player, long limit) {
+		Worker worker = workers.get();
+		worker.table.copy(position);
+		OthelloBot bot = worker.bots[player];
+
+		// Clear the kill of an earlier search before the timer can kill
+		// this one
+		bot.revive();
+		Deadline deadline = new Deadline(bot);
+		ScheduledFuture<?> timeout = timer.schedule(deadline::expire, limit,
+				TimeUnit.MILLISECONDS);
+		try {
+			// The depth limited search stops at the end of the game, where
+			// the game is solved instead if few enough squares are empty
+			int empties = OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT
+					- position.getBlackScore() - position.getWhiteScore();
+			int last = empties <= SOLVE_EMPTIES ? empties + 1 : empties;
+
+			// The first depth is always completed to have a move
+			OthelloVariation best = bot.analyzeMoves(1, 1)[0];
+			for (int d = 2; d <= last && !deadline.isExpired(); d++) {
+				OthelloVariation[] variations = bot.deepenMoves(1,
+						d > empties ? OthelloBot.EXACT_DEPTH : d);
+				if (deadline.isExpired())
+					break;
+				best = variations[0];
+			}
+			return best.getMoves()[0];
+		} finally {
+			timeout.cancel(false);
+			deadline.finish();
+		}
+	}
+
+	/**
+	 * Parses a square such as "d3"
+	 * 
+	 * @return The square (y * TABLE_WIDTH + x), or -1 if invalid
+	 */
+	private static int parseSquare(String move) {
+		if (move.length() != 2)
+			return -1;
+		int x = Character.toLowerCase(move.charAt(0)) - 'a';
+		int y = move.charAt(1) - '1';
+		if (x < 0 || x >= OthelloTable.TABLE_WIDTH || y < 0
+				|| y >= OthelloTable.TABLE_HEIGHT)
+			return -1;
+		return y * OthelloTable.TABLE_WIDTH + x;
+	}
+
+	/**
+	 * Formats a square such as "D3"
+	 */
+	private static String formatSquare(int square) {
+		return "" + (char) ('A' + square % OthelloTable.TABLE_WIDTH)
+				+ (char) ('1' + square / OthelloTable.TABLE_WIDTH);
+	}
+
+	/**
+	 * Plays games against a server over TCP with random moves, standing in
+	 * for a client
+	 * 
+	 * @param port
+	 *            The port of the server on this host
+	 * @param games
+	 *            The number of games to play
+	 * @param seed
+	 *            The seed of the random moves
+	 */
+	private static void playClient(int port, int games, long seed)
+			throws IOException {
+		Random random = new Random(seed);
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+				BufferedReader in = new BufferedReader(new InputStreamReader(
+						socket.getInputStream()));
+				PrintWriter out = new PrintWriter(socket.getOutputStream(),
+						true)) {
+			for (int game = 0; game < games; game++) {
+				// The client keeps its own copy of the game
+				OthelloTable table = new OthelloTable();
+				table.startNewGame();
+				byte human = random.nextBoolean() ? OthelloTable.BLACK_PLAYER
+						: OthelloTable.WHITE_PLAYER;
+				byte bot = OthelloTable.alternatePlayer(human);
+				out.println(human == OthelloTable.BLACK_PLAYER ? "new black"
+						: "new white");
+				while (true) {
+					String[] reply = in.readLine().split(" ");
+					boolean end = reply[0].equals("end");
+					if (!end && !reply[0].equals("ok"))
+						throw new IOException("unexpected reply "
+								+ String.join(" ", reply));
+					for (int i = end ? 3 : 1; i < reply.length; i++) {
+						int square = parseSquare(reply[i]);
+						table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+								(byte) (square / OthelloTable.TABLE_WIDTH), bot);
+						table.commit();
+					}
+					if (end)
+						break;
+
+					List<Integer> moves = new ArrayList<>();
+					for (int square = 0; square < OthelloTable.TABLE_WIDTH
+							* OthelloTable.TABLE_HEIGHT; square++) {
+						if (table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+								(byte) (square / OthelloTable.TABLE_WIDTH),
+								human) != OthelloTable.INVALID_MOVE) {
+							table.rewind();
+							moves.add(square);
+						}
+					}
+					int square = moves.get(random.nextInt(moves.size()));
+					table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+							(byte) (square / OthelloTable.TABLE_WIDTH), human);
+					table.commit();
+					out.println("move " + formatSquare(square));
+				}
+			}
+			out.println("quit");
+		}
+	}
+
+	/**
+	 * Drives a server with local client sessions on virtual threads and
+	 * reports the throughput and latency of the bot moves
+	 */
+	private static void runLoad(GameServer server, int clients, int games)
+			throws InterruptedException {
+		AtomicLong failures = new AtomicLong();
+		long start = System.nanoTime();
+		try (ExecutorService executor = Executors
+				.newVirtualThreadPerTaskExecutor()) {
+			for (int i = 0; i < clients; i++) {
+				long seed = i;
+				executor.submit(() -> {
+					try {
+						playClient(server.getPort(), games, seed);
+					} catch (IOException | RuntimeException e) {
+						System.err.println("client " + seed + ": " + e);
+						failures.incrementAndGet();
+					}
+				});
+			}
+		}
+		long time = Math.max(1, (System.nanoTime() - start) / 1000000);
+
+		Statistics statistics = server.statistics;
+		System.out.printf("%d sessions, %d games, %d bot moves in %d ms: "
+				+ "%.1f moves/s, latency p50 %.1f ms, p99 %.1f ms, "
+				+ "max %.1f ms, %d failed sessions%n", clients, clients
+				* games, statistics.getMoves(), time, statistics.getMoves()
+				* 1000.0 / time, statistics.getPercentile(50) / 1000.0,
+				statistics.getPercentile(99) / 1000.0, statistics
+						.getPercentile(100) / 1000.0, failures.get());
+	}
+
+	/**
+	 * Runs the server, or drives it with local clients in the load mode
+	 * 
+	 * @param args
+	 *            The options
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = DEFAULT_PORT;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long time = DEFAULT_TIME;
+		int clients = 0;
+		int games = 0;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--port":
+				port = Integer.parseInt(args[++i]);
+				break;
+			case "--threads":
+				threads = Integer.parseInt(args[++i]);
+				break;
+			case "--time":
+				time = Long.parseLong(args[++i]);
+				break;
+			case "--load":
+				clients = Integer.parseInt(args[++i]);
+				games = Integer.parseInt(args[++i]);
+				break;
+			default:
+				System.err.println("Usage: GameServer [--port n] [--threads n] "
+						+ "[--time ms] [--load sessions games]");
+				System.exit(1);
+			}
+		}
+
+		GameServer server = new GameServer(clients > 0 ? 0 : port, threads,
+				time);
+		server.start();
+		if (clients == 0) {
+			System.out.println("listening on port " + server.getPort());
+			return;
+		}
+		runLoad(server, clients, games);
+		server.close();
+		System.exit(0);
+	}
+}
@@ -0,0 +1,308 @@
+package com.othello.tools;
+
+import com.othello.OthelloEventQueue;
+import com.othello.OthelloProbe;
+import com.othello.OthelloTable;
+import com.othello.OthelloWriter;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * This probe records the timing events of the engine as Java Flight
+ * Recorder events. Install it by starting any program that uses the engine
+ * classes with -Dothello.probe=com.othello.tools.JfrProbe and a recording,
+ * such as -XX:StartFlightRecording:filename=othello.jfr.
+ * <p>
+ * Each event type has a name of its own (com.othello.Search,
+ * com.othello.TableRender, com.othello.TextRender, com.othello.RecordWrite,
+ * com.othello.Startup and com.othello.Input) and is enabled separately in
+ * the recording settings. An event that is not enabled is not even created.
+ */
+public class JfrProbe extends OthelloProbe {
+
+	/**
+	 * A bot search
+	 */
+	@Name("com.othello.Search")
+	@Label("Bot Search")
+	@Category("Othello")
+	@StackTrace(false)
+	static final class SearchEvent extends Event {
+
+		@Label("Depth")
+		int depth;
+
+		@Label("Nodes")
+		int nodes;
+
+		@Label("Move")
+		String move;
+
+		@Label("Score")
+		int score;
+
+		@Label("Nodes per Second")
+		long nodesPerSecond;
+
+		/**
+		 * The time the search began in nanoseconds, not recorded
+		 */
+		transient long start;
+	}
+
+	/**
+	 * A render of the table
+	 */
+	@Name("com.othello.TableRender")
+	@Label("Table Render")
+	@Category("Othello")
+	@StackTrace(false)
+	static final class TableRenderEvent extends Event {
+	}
+
+	/**
+	 * A render of the text of a text box
+	 */
+	@Name("com.othello.TextRender")
+	@Label("Text Render")
+	@Category("Othello")
+	@StackTrace(false)
+	static final class TextRenderEvent extends Event {
+
+		@Label("Length")
+		int length;
+	}
+
+	/**
+	 * A record store write
+	 */
+	@Name("com.othello.RecordWrite")
+	@Label("Record Write")
+	@Category("Othello")
+	@StackTrace(false)
+	static final class RecordWriteEvent extends Event {
+
+		@Label("Type")
+		String type;
+
+		@Label("Bytes")
+		int bytes;
+	}
+
+	/**
+	 * The startup of the game, from its creation until the title is
+	 * displayed
+	 */
+	@Name("com.othello.Startup")
+	@Label("Startup")
+	@Category("Othello")
+	@StackTrace(false)
+	static final class StartupEvent extends Event {
+	}
+
+	/**
+	 * The handling of a key press or command by the event queue, with the
+	 * time it waited in the queue before
+	 */
+	@Name("com.othello.Input")
+	@Label("Input")
+	@Category("Othello")
+	@StackTrace(false)
+	static final class InputEvent extends Event {
+
+		@Label("Type")
+		String type;
+
+		@Label("Latency")
+		@Timespan(Timespan.MILLISECONDS)
+		long latency;
+	}
+
+	/**
+	 * The type of the search events, which tells if they are enabled
+	 */
+	private static final EventType SEARCH = EventType
+			.getEventType(SearchEvent.class);
+
+	/**
+	 * The type of the table render events
+	 */
+	private static final EventType TABLE_RENDER = EventType
+			.getEventType(TableRenderEvent.class);
+
+	/**
+	 * The type of the text render events
+	 */
+	private static final EventType TEXT_RENDER = EventType
+			.getEventType(TextRenderEvent.class);
+
+	/**
+	 * The type of the record write events
+	 */
+	private static final EventType RECORD_WRITE = EventType
+			.getEventType(RecordWriteEvent.class);
+
+	/**
+	 * The type of the startup events
+	 */
+	private static final EventType STARTUP = EventType
+			.getEventType(StartupEvent.class);
+
+	/**
+	 * The type of the input events
+	 */
+	private static final EventType INPUT = EventType
+			.getEventType(InputEvent.class);
+
+	static {
+		// Loaded by the engine when named in the system property
+		install(new JfrProbe());
+	}
+
+	/**
+	 * Begins timing an event
+	 * 
+	 * @return The event
+	 */
+	private static Event begin(Event event) {
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Stops timing an event
+	 * 
+	 * @return True if the event should be committed
+	 */
+	private static boolean end(Object event) {
+		Event e = (Event) event;
+		e.end();
+		return e.shouldCommit();
+	}
+
+	/**
+	 * Begins a search event if searches are recorded
+	 */
+	public Object beginSearch() {
+		if (!SEARCH.isEnabled())
+			return null;
+		SearchEvent search = new SearchEvent();
+		begin(search);
+		search.start = System.nanoTime();
+		return search;
+	}
+
+	/**
+	 * Commits a search event
+	 */
+	public void endSearch(Object event, int depth, int nodes, int square,
+			int score) {
+		SearchEvent search = (SearchEvent) event;
+		long time = System.nanoTime() - search.start;
+		if (!end(event))
+			return;
+		search.depth = depth;
+		search.nodes = nodes;
+		search.move = square < 0 ? null : ""
+				+ (char) ('a' + square % OthelloTable.TABLE_WIDTH)
+				+ (char) ('1' + square / OthelloTable.TABLE_WIDTH);
+		search.score = score;
+		search.nodesPerSecond = time > 0 ? nodes * 1_000_000_000L / time : 0;
+		search.commit();
+	}
+
+	/**
+	 * Begins a table render event if table renders are recorded
+	 */
+	public Object beginTableRender() {
+		return TABLE_RENDER.isEnabled() ? begin(new TableRenderEvent())
+				: null;
+	}
+
+	/**
+	 * Commits a table render event
+	 */
+	public void endTableRender(Object event) {
+		if (end(event))
+			((Event) event).commit();
+	}
+
+	/**
+	 * Begins a text render event if text renders are recorded
+	 */
+	public Object beginTextRender() {
+		return TEXT_RENDER.isEnabled() ? begin(new TextRenderEvent()) : null;
+	}
+
+	/**
+	 * Commits a text render event
+	 */
+	public void endTextRender(Object event, int length) {
+		if (!end(event))
+			return;
+		TextRenderEvent render = (TextRenderEvent) event;
+		render.length = length;
+		render.commit();
+	}
+
+	/**
+	 * Begins a record write event if writes are recorded
+	 */
+	public Object beginRecordWrite() {
+		return RECORD_WRITE.isEnabled() ? begin(new RecordWriteEvent())
+				: null;
+	}
+
+	/**
+	 * Commits a record write event
+	 */
+	public void endRecordWrite(Object event, int type, int length) {
+		if (!end(event))
+			return;
+		RecordWriteEvent write = (RecordWriteEvent) event;
+		write.type = type == OthelloWriter.SET_RECORD ? "set"
+				: type == OthelloWriter.ADD_RECORD ? "add" : "clear";
+		write.bytes = length;
+		write.commit();
+	}
+
+	/**
+	 * Begins a startup event if the startup is recorded
+	 */
+	public Object beginStartup() {
+		return STARTUP.isEnabled() ? begin(new StartupEvent()) : null;
+	}
+
+	/**
+	 * Commits a startup event
+	 */
+	public void endStartup(Object event) {
+		if (end(event))
+			((Event) event).commit();
+	}
+
+	/**
+	 * Begins an input event if input is recorded
+	 */
+	public Object beginInput() {
+		return INPUT.isEnabled() ? begin(new InputEvent()) : null;
+	}
+
+	/**
+	 * Commits an input event
+	 */
+	public void endInput(Object event, int type, int latency) {
+		if (!end(event))
+			return;
+		InputEvent input = (InputEvent) event;
+		input.type = type == OthelloEventQueue.KEY_EVENT ? "key" : "command";
+		input.latency = latency;
+		input.commit();
+	}
+}
@@ -0,0 +1,380 @@
+package com.othello.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.othello.OthelloBoard;
+import com.othello.OthelloBot;
+import com.othello.OthelloEventQueue;
+import com.othello.OthelloTable;
+
+/**
+ * This tool measures the speed of the move generation of the variant boards
+ * against the 8x8 path of OthelloTable, which tries every square with
+ * putPiece() as the bot does. Each board counts the positions reached after
+ * a number of plies from the start position (perft), where a pass uses up a
+ * ply and a finished game counts as a single position.
+ * <p>
+ * The speed is the number of positions visited per second, relative to
+ * the table. The boards count the positions of the last ply from the moves
+ * found, without playing them.
+ * <p>
+ * The counts of the 8x8 board are checked against those of OthelloTable and
+ * against the published perft counts, so the benchmark also tests the move
+ * generation.
+ * <p>
+ * The boards are then searched from the start position to a fixed depth
+ * with OthelloBot.analyzeBoard(), against OthelloBot.analyze() on the
+ * table. Both search the full width, but the boards are evaluated by the
+ * discs, the corners and the mobility instead of the trained weights, so
+ * the scores and the number of nodes differ. The move found on the 8x8
+ * board is checked to be a move on the table.
+ * <p>
+ * Usage: MoveGenBenchmark [--depth n] [--search n] [--rounds n] [--sizes
+ * 6,8,10]
+ */
+public class MoveGenBenchmark {
+
+	/**
+	 * The published counts of the positions after each number of plies from
+	 * the 8x8 start position
+	 */
+	private static final long[] PERFT_8X8 = { 1, 4, 12, 56, 244, 1396, 8200,
+			55092, 390216, 3005288, 24571284 };
+
+	/**
+	 * The event queue of the bots, which have no events to post here
+	 */
+	private static final OthelloEventQueue QUEUE = new OthelloEventQueue((
+			type, arg0, arg1, arg2) -> {
+	});
+
+	/**
+	 * The result of a perft run
+	 * 
+	 * @param positions
+	 *            The number of positions after the plies
+	 * @param nodes
+	 *            The number of positions visited
+	 * @param time
+	 *            The best time of the rounds in nanoseconds
+	 */
+	private record Result(long positions, long nodes, long time) {
+
+		/**
+		 * Returns the number of positions visited per second
+		 */
+		double getSpeed() {
+			return nodes * 1e9 / time;
+		}
+	}
+
+	/**
+	 * The result of a fixed depth search
+	 * 
+	 * @param square
+	 *            The square of the best move (y * size + x), or -1 if the
+	 *            search gives no move
+	 * @param score
+	 *            The score from the view of the player to move
+	 * @param nodes
+	 *            The number of nodes searched
+	 * @param time
+	 *            The best time of the rounds in nanoseconds
+	 */
+	private record Search(int square, int score, long nodes, long time) {
+
+		/**
+		 * Returns the number of nodes searched per second
+		 */
+		double getSpeed() {
+			return nodes * 1e9 / time;
+		}
+	}
+
+	/**
+	 * Counts the positions after a number of plies on a table
+	 * 
+	 * @param table
+	 *            The table
+	 * @param player
+	 *            The player to move
+	 * @param depth
+	 *            The number of plies
+	 * @param passed
+	 *            True if the opponent just passed
+	 * @param nodes
+	 *            Counts the visited positions
+	 * @return The number of positions
+	 */
+	private static long perft(OthelloTable table, byte player, int depth,
+			boolean passed, long[] nodes) {
+		nodes[0]++;
+		if (depth == 0)
+			return 1;
+		byte opponent = OthelloTable.alternatePlayer(player);
+		long positions = 0;
+		boolean moved = false;
+		for (byte y = 0; y < OthelloTable.TABLE_HEIGHT; y++)
+			for (byte x = 0; x < OthelloTable.TABLE_WIDTH; x++) {
+				if (table.putPiece(x, y, player) == OthelloTable.INVALID_MOVE)
+					continue;
+				moved = true;
+				positions += perft(table, opponent, depth - 1, false, nodes);
+				table.rewind();
+			}
+		if (moved)
+			return positions;
+		if (passed)
+			return 1;
+		return perft(table, opponent, depth - 1, true, nodes);
+	}
+
+	/**
+	 * Counts the positions after a number of plies on a board
+	 * 
+	 * @param board
+	 *            The board
+	 * @param player
+	 *            The player to move
+	 * @param depth
+	 *            The number of plies
+	 * @param passed
+	 *            True if the opponent just passed
+	 * @param moves
+	 *            Room for the moves of each remaining depth
+	 * @param nodes
+	 *            Counts the visited positions
+	 * @return The number of positions
+	 */
+	private static long perft(OthelloBoard board, byte player, int depth,
+			boolean passed, int[][] moves, long[] nodes) {
+		nodes[0]++;
+		if (depth == 0)
+			return 1;
+		byte opponent = OthelloTable.alternatePlayer(player);
+
+		// Count the last ply without playing it, which the table can only
+		// do by playing each move
+		if (depth == 1 && !passed) {
+			int count = board.countMoves(player);
+			if (count > 0) {
+				nodes[0] += count;
+				return count;
+			}
+		}
+		int count = board.getMoves(player, moves[depth]);
+		if (count == 0) {
+			if (passed)
+				return 1;
+			return perft(board, opponent, depth - 1, true, moves, nodes);
+		}
+		long positions = 0;
+		for (int i = 0; i < count; i++) {
+			board.putPiece(moves[depth][i], player);
+			positions += perft(board, opponent, depth - 1, false, moves, nodes);
+			board.rewind();
+		}
+		return positions;
+	}
+
+	/**
+	 * Runs perft on the 8x8 table a number of times
+	 */
+	private static Result runTable(int depth, int rounds) {
+		OthelloTable table = new OthelloTable();
+		long best = Long.MAX_VALUE;
+		long positions = 0;
+		long[] nodes = new long[1];
+		for (int round = 0; round < rounds; round++) {
+			table.startNewGame();
+			nodes[0] = 0;
+			long start = System.nanoTime();
+			positions = perft(table, OthelloTable.BLACK_PLAYER, depth, false,
+					nodes);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return new Result(positions, nodes[0], best);
+	}
+
+	/**
+	 * Runs perft on a board a number of times
+	 */
+	private static Result runBoard(OthelloBoard board, int depth, int rounds) {
+		int[][] moves = new int[depth + 1][board.getSize() * board.getSize()];
+		long best = Long.MAX_VALUE;
+		long positions = 0;
+		long[] nodes = new long[1];
+		for (int round = 0; round < rounds; round++) {
+			board.startNewGame();
+			nodes[0] = 0;
+			long start = System.nanoTime();
+			positions = perft(board, OthelloTable.BLACK_PLAYER, depth, false,
+					moves, nodes);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return new Result(positions, nodes[0], best);
+	}
+
+	/**
+	 * Searches the start position of the table with analyze() a number of
+	 * times
+	 */
+	private static Search searchTable(int depth, int rounds) {
+		OthelloTable table = new OthelloTable();
+		table.startNewGame();
+		OthelloBot bot = new OthelloBot(QUEUE, table, null,
+				OthelloTable.BLACK_PLAYER, OthelloBot.MAX_LEVEL);
+		long best = Long.MAX_VALUE;
+		int score = 0;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			score = bot.analyze(depth);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return new Search(-1, score, bot.getNodes(), best);
+	}
+
+	/**
+	 * Searches the start position of a board with analyzeBoard() a number of
+	 * times
+	 */
+	private static Search searchBoard(OthelloBoard board, int depth,
+			int rounds) {
+		board.startNewGame();
+		OthelloBot bot = new OthelloBot(QUEUE, new OthelloTable(), null,
+				OthelloTable.BLACK_PLAYER, OthelloBot.MAX_LEVEL);
+		long best = Long.MAX_VALUE;
+		int[] result = null;
+		for (int round = 0; round < rounds; round++) {
+			long start = System.nanoTime();
+			result = bot.analyzeBoard(board, depth);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return new Search(result[0], result[1], bot.getNodes(), best);
+	}
+
+	/**
+	 * Checks that a square found on the 8x8 board is a move on the table
+	 */
+	private static boolean isTableMove(int square) {
+		OthelloTable table = new OthelloTable();
+		table.startNewGame();
+		return square >= 0
+				&& table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+						(byte) (square / OthelloTable.TABLE_WIDTH),
+						OthelloTable.BLACK_PLAYER) != OthelloTable.INVALID_MOVE;
+	}
+
+	/**
+	 * Formats a square such as "d3", or "--" for no move
+	 */
+	private static String formatSquare(int square, int size) {
+		if (square < 0)
+			return "--";
+		return (char) ('a' + square % size) + String.valueOf(square / size + 1);
+	}
+
+	/**
+	 * Prints a search with its speed and the speed relative to the search of
+	 * the table
+	 */
+	private static void print(String name, int size, Search search,
+			Search reference, String check) {
+		System.out.printf("%-20s %5s %5s %6d %12d %9.1f %12.0f %7.2f %s%n",
+				name, size + "x" + size, formatSquare(search.square(), size),
+				search.score(), search.nodes(), search.time() / 1e6, search
+						.getSpeed(), search.getSpeed() / reference.getSpeed(),
+				check);
+	}
+
+	/**
+	 * Prints a result with its speed and the speed relative to the 8x8
+	 * table
+	 */
+	private static void print(String name, int size, Result result,
+			Result reference, String check) {
+		System.out.printf("%-20s %5s %12d %12d %9.1f %12.0f %7.2f %s%n",
+				name, size + "x" + size, result.positions(), result.nodes(),
+				result.time() / 1e6, result.getSpeed(), result.getSpeed()
+						/ reference.getSpeed(), check);
+	}
+
+	/**
+	 * Runs the benchmark
+	 * 
+	 * @param args
+	 *            The options
+	 */
+	public static void main(String[] args) {
+		int depth = 8;
+		int searchDepth = 6;
+		int rounds = 5;
+		List<Integer> sizes = new ArrayList<>(List.of(6, 8, 10));
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("--depth"))
+					depth = Integer.parseInt(args[++i]);
+				else if (args[i].equals("--search"))
+					searchDepth = Integer.parseInt(args[++i]);
+				else if (args[i].equals("--rounds"))
+					rounds = Integer.parseInt(args[++i]);
+				else if (args[i].equals("--sizes")) {
+					sizes.clear();
+					for (String size : args[++i].split(","))
+						sizes.add(Integer.parseInt(size.trim()));
+				} else
+					throw new IllegalArgumentException(args[i]);
+			}
+			if (depth < 1 || rounds < 1 || searchDepth < 1)
+				throw new IllegalArgumentException();
+		} catch (RuntimeException e) {
+			System.err.println("Usage: MoveGenBenchmark [--depth n] "
+					+ "[--search n] [--rounds n] [--sizes 6,8,10]");
+			System.exit(1);
+		}
+
+		System.out.printf("%-20s %5s %12s %12s %9s %12s %7s%n", "board",
+				"size", "positions", "nodes", "ms", "nodes/s", "speed");
+		Result table = runTable(depth, rounds);
+		boolean failed = depth < PERFT_8X8.length
+				&& table.positions() != PERFT_8X8[depth];
+		print("OthelloTable", OthelloTable.TABLE_WIDTH, table, table,
+				failed ? "FAIL" : "");
+
+		for (int size : sizes) {
+			OthelloBoard board = OthelloBoard.create(size);
+			Result result = runBoard(board, depth, rounds);
+			String check = "";
+			if (size == OthelloTable.TABLE_WIDTH) {
+				check = result.positions() == table.positions() ? "ok"
+						: "FAIL";
+				if (result.positions() != table.positions())
+					failed = true;
+			}
+			print(board.getClass().getSimpleName(), size, result, table,
+					check);
+		}
+
+		System.out.println();
+		System.out.printf("%-20s %5s %5s %6s %12s %9s %12s %7s%n", "search "
+				+ searchDepth, "size", "move", "score", "nodes", "ms",
+				"nodes/s", "speed");
+		Search reference = searchTable(searchDepth, rounds);
+		print("OthelloTable", OthelloTable.TABLE_WIDTH, reference, reference,
+				"");
+		for (int size : sizes) {
+			OthelloBoard board = OthelloBoard.create(size);
+			Search search = searchBoard(board, searchDepth, rounds);
+			String check = "";
+			if (size == OthelloTable.TABLE_WIDTH) {
+				check = isTableMove(search.square()) ? "ok" : "FAIL";
+				if (!isTableMove(search.square()))
+					failed = true;
+			}
+			print(board.getClass().getSimpleName(), size, search, reference,
+					check);
+		}
+		System.exit(failed ? 1 : 0);
+	}
+}
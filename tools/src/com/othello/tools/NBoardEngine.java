@@ -0,0 +1,467 @@
+package com.othello.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.othello.OthelloBot;
+import com.othello.OthelloEventQueue;
+import com.othello.OthelloTable;
+import com.othello.OthelloVariation;
+
+/**
+ * This class runs the engine headless behind the NBoard protocol on stdin
+ * and stdout, so that it can be driven by Othello GUIs and scripts. Commands
+ * are read on the main thread while searches run on a worker thread, so
+ * that a search can be stopped at any time.
+ * <p>
+ * Supported commands: nboard, set depth, set game, set time, set contempt,
+ * move, go [time], hint, stop, ping, learn and quit. The time limit of go
+ * and the stop command are extensions to NBoard. While searching, status
+ * lines report the depth, score, nodes and speed of each completed depth.
+ */
+public class NBoardEngine {
+
+	/**
+	 * The name reported to the GUI
+	 */
+	private static final String NAME = "othello-midp";
+
+	/**
+	 * The default time limit of a search in milliseconds
+	 */
+	private static final long DEFAULT_TIME = 2000;
+
+	/**
+	 * The number of empty squares from which a search tries to solve the
+	 * game exactly after the depth limited search
+	 */
+	private static final int SOLVE_EMPTIES = 14;
+
+	/**
+	 * The board and side to move of a GGF game
+	 */
+	private static final Pattern BOARD = Pattern
+			.compile("BO\\[\\s*8\\s*([-*O\\s]+?)\\s*([*O])\\s*\\]");
+
+	/**
+	 * The moves of a GGF game, the tags B and W but not PB and PW
+	 */
+	private static final Pattern MOVE = Pattern
+			.compile("(?<![A-Z])([BW])\\[([^\\]/]*)");
+
+	/**
+	 * The event queue of the bots, which have no events to post here
+	 */
+	private final OthelloEventQueue queue = new OthelloEventQueue((type,
+			arg0, arg1, arg2) -> {
+	});
+
+	/**
+	 * The thread running the searches
+	 */
+	private final ExecutorService searcher = Executors
+			.newSingleThreadExecutor();
+
+	/**
+	 * The thread stopping searches at their time limit
+	 */
+	private final ScheduledExecutorService timer = Executors
+			.newSingleThreadScheduledExecutor();
+
+	/**
+	 * The current position
+	 */
+	private final OthelloTable table = new OthelloTable();
+
+	/**
+	 * The player to move in the current position
+	 */
+	private byte player = OthelloTable.BLACK_PLAYER;
+
+	/**
+	 * The maximum depth of a search. By default only the time limit and the
+	 * end of the game stop the search.
+	 */
+	private int depth = OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT;
+
+	/**
+	 * The time limit of a search in milliseconds
+	 */
+	private long time = DEFAULT_TIME;
+
+	/**
+	 * The running search, or null
+	 */
+	private Future<?> search;
+
+	/**
+	 * The bot of the running search, or null
+	 */
+	private volatile OthelloBot bot;
+
+	/**
+	 * Indicates that the running search has been stopped
+	 */
+	private volatile boolean stopped;
+
+	/**
+	 * Creates an engine with the standard start position, which is mirrored
+	 * compared to OthelloTable.startNewGame()
+	 */
+	private NBoardEngine() {
+		table.setPosition(WthorReader.START_BLACK, WthorReader.START_WHITE);
+	}
+
+	/**
+	 * Handles a command line
+	 * 
+	 * @return False if the engine should quit
+	 */
+	private boolean handle(String line) {
+		String[] words = line.trim().split("\\s+", 3);
+		switch (words[0]) {
+		case "nboard":
+			output("set myname " + NAME);
+			return true;
+		case "set":
+			if (words.length < 3)
+				return true;
+			switch (words[1]) {
+			case "depth":
+				depth = Math.max(1, Integer.parseInt(words[2]));
+				return true;
+			case "time":
+				time = Long.parseLong(words[2]);
+				return true;
+			case "game":
+				abort();
+				setGame(words[2]);
+				return true;
+			default:
+				// Contempt and other settings are not used
+				return true;
+			}
+		case "move":
+			abort();
+			if (words.length > 1)
+				play(words[1].split("/")[0]);
+			return true;
+		case "go":
+			abort();
+			long limit = words.length > 1 ? Long.parseLong(words[1]) : time;
+			start(() -> go(limit));
+			return true;
+		case "hint":
+			abort();
+			int count = words.length > 1 ? Integer.parseInt(words[1]) : 1;
+			start(() -> hint(count));
+			return true;
+		case "stop":
+			stop();
+			return true;
+		case "ping":
+			abort();
+			output("pong" + (words.length > 1 ? " " + words[1] : ""));
+			return true;
+		case "learn":
+			output("learned");
+			return true;
+		case "quit":
+			abort();
+			return false;
+		default:
+			output("status unknown command " + words[0]);
+			return true;
+		}
+	}
+
+	/**
+	 * Sets up the position of a GGF game, its board followed by its moves
+	 */
+	private void setGame(String game) {
+		Matcher board = BOARD.matcher(game);
+		if (!board.find()) {
+			output("status invalid game");
+			return;
+		}
+		String squares = board.group(1).replaceAll("\\s", "");
+		long black = 0;
+		long white = 0;
+		for (int square = 0; square < squares.length() && square < 64; square++) {
+			if (squares.charAt(square) == '*')
+				black |= 1L << square;
+			else if (squares.charAt(square) == 'O')
+				white |= 1L << square;
+		}
+		table.setPosition(black, white);
+		player = board.group(2).equals("*") ? OthelloTable.BLACK_PLAYER
+				: OthelloTable.WHITE_PLAYER;
+
+		Matcher moves = MOVE.matcher(game.substring(board.end()));
+		while (moves.find()) {
+			player = moves.group(1).equals("B") ? OthelloTable.BLACK_PLAYER
+					: OthelloTable.WHITE_PLAYER;
+			play(moves.group(2).trim());
+		}
+	}
+
+	/**
+	 * Plays a move for the player to move, or passes
+	 */
+	private void play(String move) {
+		if (!move.equalsIgnoreCase("PA")) {
+			int square = parseSquare(move);
+			if (square < 0
+					|| table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+							(byte) (square / OthelloTable.TABLE_WIDTH),
+							player) == OthelloTable.INVALID_MOVE) {
+				output("status invalid move " + move);
+				return;
+			}
+			table.commit();
+		}
+		player = OthelloTable.alternatePlayer(player);
+	}
+
+	/**
+	 * Searches the current position for the best move within a time limit
+	 * and reports it. Each completed depth is reported on a status line.
+	 */
+	private void go(long limit) {
+		long start = System.currentTimeMillis();
+		if (!table.canMove(player)) {
+			output("=== PA");
+			return;
+		}
+		OthelloBot bot = createBot();
+		ScheduledFuture<?> deadline = timer.schedule(this::stop, limit,
+				TimeUnit.MILLISECONDS);
+
+		// The first depth is always completed to have a move
+		OthelloVariation best = bot.analyzeMoves(1, 1)[0];
+		boolean exact = false;
+		long nodes = bot.getNodes();
+		report(nodes, 1, best, start);
+		for (int d = 2; d <= getLastDepth() && !stopped; d++) {
+			OthelloVariation[] variations = bot.deepenMoves(1,
+					getSearchDepth(d));
+			nodes += bot.getNodes();
+			if (stopped)
+				break;
+			best = variations[0];
+			exact = getSearchDepth(d) == OthelloBot.EXACT_DEPTH;
+			report(nodes, d, best, start);
+		}
+		deadline.cancel(false);
+
+		// Also count the nodes of a stopped depth
+		output("nodestats " + nodes + " "
+				+ (System.currentTimeMillis() - start) / 1000.0);
+		output("=== " + formatSquare(best.getMoves()[0]) + "/"
+				+ formatScore(best.getScore(), exact) + "/"
+				+ (System.currentTimeMillis() - start) / 1000.0);
+		output("status");
+	}
+
+	/**
+	 * Streams the best moves of the current position with their lines, one
+	 * search line per move and depth, until stopped or at the maximum depth
+	 */
+	private void hint(int count) {
+		if (!table.canMove(player)) {
+			output("status");
+			return;
+		}
+		OthelloBot bot = createBot();
+		for (int d = 1; d <= getLastDepth() && !stopped; d++) {
+			OthelloVariation[] variations = d == 1 ? bot.analyzeMoves(count,
+					1) : bot.deepenMoves(count, getSearchDepth(d));
+			if (stopped)
+				break;
+			boolean exact = getSearchDepth(d) == OthelloBot.EXACT_DEPTH;
+			for (int i = 0; i < count && i < variations.length; i++) {
+				if (!variations[i].isExact())
+					continue;
+				StringBuilder line = new StringBuilder();
+				byte[] moves = variations[i].getMoves();
+				for (int j = 0; j < moves.length; j++)
+					line.append(j > 0 ? "-" : "").append(
+							formatSquare(moves[j]));
+				output("search " + line + " "
+						+ formatScore(variations[i].getScore(), exact)
+						+ " 0 " + (exact ? "100%" : String.valueOf(d)));
+			}
+		}
+		output("status");
+	}
+
+	/**
+	 * Returns the last iteration of a search, one beyond the depth limit
+	 * when the game is also solved exactly
+	 */
+	private int getLastDepth() {
+		return getEmpties() <= SOLVE_EMPTIES ? getDepthLimit() + 1
+				: getDepthLimit();
+	}
+
+	/**
+	 * Returns the depth searched in an iteration, EXACT_DEPTH for the
+	 * iteration beyond the depth limit
+	 */
+	private int getSearchDepth(int iteration) {
+		return iteration > getDepthLimit() ? OthelloBot.EXACT_DEPTH
+				: iteration;
+	}
+
+	/**
+	 * Returns the deepest depth limited iteration, which does not search
+	 * beyond the end of the game
+	 */
+	private int getDepthLimit() {
+		return Math.max(1, Math.min(depth, getEmpties()));
+	}
+
+	/**
+	 * Returns the number of empty squares of the current position
+	 */
+	private int getEmpties() {
+		return OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT
+				- table.getBlackScore() - table.getWhiteScore();
+	}
+
+	/**
+	 * Creates the bot of a search on a copy of the current position
+	 */
+	private OthelloBot createBot() {
+		OthelloTable position = new OthelloTable();
+		position.copy(table);
+		OthelloBot bot = new OthelloBot(queue, position, null, player,
+				OthelloBot.MAX_LEVEL);
+		this.bot = bot;
+		return bot;
+	}
+
+	/**
+	 * Reports a completed depth of a search
+	 * 
+	 * @param nodes
+	 *            The nodes searched so far for the move
+	 */
+	private void report(long nodes, int d, OthelloVariation best, long start) {
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		boolean exact = getSearchDepth(d) == OthelloBot.EXACT_DEPTH;
+		output("status depth " + (exact ? "exact" : String.valueOf(d))
+				+ " " + formatSquare(best.getMoves()[0]) + " "
+				+ formatScore(best.getScore(), exact) + " nodes " + nodes + " "
+				+ elapsed + "ms");
+		output("nodestats " + nodes + " " + elapsed / 1000.0);
+	}
+
+	/**
+	 * Starts a search on the worker thread
+	 */
+	private synchronized void start(Runnable task) {
+		stopped = false;
+		search = searcher.submit(() -> {
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				output("status error " + e);
+			}
+		});
+	}
+
+	/**
+	 * Stops the running search, which still reports its result
+	 */
+	private void stop() {
+		stopped = true;
+		OthelloBot bot = this.bot;
+		if (bot != null)
+			bot.kill();
+	}
+
+	/**
+	 * Stops the running search and waits for it to finish
+	 */
+	private synchronized void abort() {
+		if (search == null)
+			return;
+		stop();
+		try {
+			search.get();
+		} catch (Exception e) {
+		}
+		search = null;
+	}
+
+	/**
+	 * Parses a square such as "d3"
+	 * 
+	 * @return The square (y * TABLE_WIDTH + x), or -1 if invalid
+	 */
+	private static int parseSquare(String move) {
+		if (move.length() != 2)
+			return -1;
+		int x = Character.toLowerCase(move.charAt(0)) - 'a';
+		int y = move.charAt(1) - '1';
+		if (x < 0 || x >= OthelloTable.TABLE_WIDTH || y < 0
+				|| y >= OthelloTable.TABLE_HEIGHT)
+			return -1;
+		return y * OthelloTable.TABLE_WIDTH + x;
+	}
+
+	/**
+	 * Formats a square such as "D3"
+	 */
+	private static String formatSquare(int square) {
+		return "" + (char) ('A' + square % OthelloTable.TABLE_WIDTH)
+				+ (char) ('1' + square / OthelloTable.TABLE_WIDTH);
+	}
+
+	/**
+	 * Formats a score in discs. The depth limited search scores in
+	 * EVAL_SCALE units, and its won and lost games by their disc difference.
+	 */
+	private static String formatScore(int score, boolean exact) {
+		if (exact)
+			return String.valueOf(score);
+		if (Math.abs(score) >= OthelloBot.FINAL_WEIGHT)
+			return String.valueOf(score / OthelloBot.FINAL_WEIGHT);
+		return String.format(Locale.ROOT, "%.2f", (double) score
+				/ OthelloBot.EVAL_SCALE);
+	}
+
+	/**
+	 * Writes a line to the GUI
+	 */
+	private static synchronized void output(String line) {
+		System.out.println(line);
+		System.out.flush();
+	}
+
+	/**
+	 * Runs the engine until quit or the end of the input
+	 */
+	public static void main(String[] args) throws IOException {
+		NBoardEngine engine = new NBoardEngine();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				System.in));
+		String line;
+		while ((line = in.readLine()) != null)
+			if (!line.isBlank() && !engine.handle(line))
+				break;
+		engine.abort();
+		System.exit(0);
+	}
+}
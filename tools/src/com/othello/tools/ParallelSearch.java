@@ -0,0 +1,392 @@
+package com.othello.tools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.othello.OthelloBot;
+import com.othello.OthelloEventQueue;
+import com.othello.OthelloTable;
+
+/**
+ * This class searches a position on all cores with young brothers wait
+ * splitting on a fork-join pool. At each split node the first move is
+ * searched alone, then the remaining moves are searched in parallel with a
+ * null window around the best score so far. Each task owns its own copy of
+ * the table, and close to the leaves each thread searches serially with its
+ * own bots through OthelloBot.analyze().
+ * <p>
+ * The single threaded search of the midlet is not affected. Running the
+ * class as a program benchmarks the speedup over a set of positions. The
+ * benchmark warms up with a discarded pass and reports the fastest of
+ * ROUNDS passes of each thread count.
+ * <p>
+ * Usage: ParallelSearch [depth] [positions] [max threads]
+ */
+public class ParallelSearch {
+
+	/**
+	 * The remaining depth at which the search is no longer split
+	 */
+	private static final int SERIAL_DEPTH = 4;
+
+	/**
+	 * The depth of the searches that order the moves of a split node
+	 */
+	private static final int ORDER_DEPTH = 1;
+
+	/**
+	 * The number of timed passes of the benchmark for each thread count, of
+	 * which the fastest is reported
+	 */
+	private static final int ROUNDS = 3;
+
+	/**
+	 * The result of a search
+	 * 
+	 * @param x
+	 *            The horizontal position of the best move, or -1 if there
+	 *            is no move
+	 * @param y
+	 *            The vertical position of the best move
+	 * @param score
+	 *            The score of the best move
+	 * @param nodes
+	 *            The number of nodes searched
+	 */
+	public record Result(int x, int y, int score, long nodes) {
+	}
+
+	/**
+	 * The table and bots of a worker thread
+	 */
+	private static final class Worker {
+
+		/**
+		 * The table searched by the bots
+		 */
+		final OthelloTable table = new OthelloTable();
+
+		/**
+		 * The bot of each player
+		 */
+		final OthelloBot[] bots = new OthelloBot[3];
+
+		/**
+		 * Creates the bots of a worker
+		 */
+		Worker(OthelloEventQueue queue) {
+			bots[OthelloTable.BLACK_PLAYER] = new OthelloBot(queue, table,
+					null, OthelloTable.BLACK_PLAYER, OthelloBot.MAX_LEVEL);
+			bots[OthelloTable.WHITE_PLAYER] = new OthelloBot(queue, table,
+					null, OthelloTable.WHITE_PLAYER, OthelloBot.MAX_LEVEL);
+		}
+
+		/**
+		 * Searches a position serially
+		 */
+		int analyze(OthelloTable position, byte player, int depth,
+				int alpha, int beta, AtomicLong nodes) {
+			table.copy(position);
+			OthelloBot bot = bots[player];
+			int score = bot.analyze(depth, alpha, beta);
+			nodes.addAndGet(bot.getNodes());
+			return score;
+		}
+	}
+
+	/**
+	 * The best score found so far among the moves of a split node, and the
+	 * index of its move
+	 */
+	private static final class Bound {
+
+		/**
+		 * The best score so far
+		 */
+		int alpha;
+
+		/**
+		 * The index of the best move, or -1
+		 */
+		int best = -1;
+
+		/**
+		 * Creates a bound
+		 */
+		Bound(int alpha) {
+			this.alpha = alpha;
+		}
+
+		/**
+		 * Returns the best score so far
+		 */
+		synchronized int get() {
+			return alpha;
+		}
+
+		/**
+		 * Raises the best score if a move is better
+		 */
+		synchronized void raise(int score, int index) {
+			if (score > alpha) {
+				alpha = score;
+				best = index;
+			}
+		}
+	}
+
+	/**
+	 * The pool running the search
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * The worker of each thread
+	 */
+	private final ThreadLocal<Worker> workers;
+
+	/**
+	 * Creates a parallel search
+	 * 
+	 * @param threads
+	 *            The number of threads
+	 */
+	public ParallelSearch(int threads) {
+		pool = new ForkJoinPool(threads);
+		OthelloEventQueue queue = new OthelloEventQueue((type, arg0, arg1,
+				arg2) -> {
+		});
+		workers = ThreadLocal.withInitial(() -> new Worker(queue));
+	}
+
+	/**
+	 * Searches a position to a fixed depth
+	 * 
+	 * @param table
+	 *            The table holding the position, left unchanged
+	 * @param player
+	 *            The player to move
+	 * @param depth
+	 *            The depth in plies
+	 * @return The best move and its score
+	 */
+	public Result search(OthelloTable table, byte player, int depth) {
+		OthelloTable position = new OthelloTable();
+		position.copy(table);
+		AtomicLong nodes = new AtomicLong();
+		return pool.invoke(ForkJoinTask.adapt(() -> {
+			List<Integer> moves = new ArrayList<>();
+			List<OthelloTable> children = expand(position, player, depth,
+					moves, nodes);
+			if (children.isEmpty())
+				return new Result(-1, -1, search(position, player, depth,
+						-OthelloBot.INFINITY, OthelloBot.INFINITY, nodes),
+						nodes.get());
+			Bound bound = new Bound(-OthelloBot.INFINITY);
+			searchMoves(children, OthelloTable.alternatePlayer(player),
+					depth, bound, OthelloBot.INFINITY, nodes);
+			int square = moves.get(bound.best);
+			return new Result(square % OthelloTable.TABLE_WIDTH, square
+					/ OthelloTable.TABLE_WIDTH, bound.get(), nodes.get());
+		}));
+	}
+
+	/**
+	 * Shuts the pool down
+	 */
+	public void close() {
+		pool.shutdown();
+	}
+
+	/**
+	 * Searches a position, splitting the search while deep enough
+	 * 
+	 * @return The score from the view of the player, between alpha and beta
+	 */
+	private int search(OthelloTable position, byte player, int depth,
+			int alpha, int beta, AtomicLong nodes) {
+
+		if (depth <= SERIAL_DEPTH)
+			return workers.get().analyze(position, player, depth, alpha,
+					beta, nodes);
+
+		List<OthelloTable> children = expand(position, player, depth, null,
+				nodes);
+		if (children.isEmpty()) {
+			// Let the serial search score the end of the game
+			byte opponent = OthelloTable.alternatePlayer(player);
+			if (!position.canMove(opponent))
+				return workers.get().analyze(position, player, depth, alpha,
+						beta, nodes);
+			return -search(position, opponent, depth, -beta, -alpha, nodes);
+		}
+
+		Bound bound = new Bound(alpha);
+		searchMoves(children, OthelloTable.alternatePlayer(player), depth,
+				bound, beta, nodes);
+		return Math.min(bound.get(), beta);
+	}
+
+	/**
+	 * Searches the moves of a split node. The first move is searched alone,
+	 * the others in parallel once it has raised alpha.
+	 */
+	private void searchMoves(List<OthelloTable> children, byte opponent,
+			int depth, Bound bound, int beta, AtomicLong nodes) {
+
+		int alpha = bound.get();
+		bound.raise(-search(children.get(0), opponent, depth - 1, -beta,
+				-alpha, nodes), 0);
+		if (bound.get() >= beta || children.size() == 1)
+			return;
+
+		List<ForkJoinTask<?>> tasks = new ArrayList<>();
+		for (int i = 1; i < children.size(); i++) {
+			OthelloTable child = children.get(i);
+			int index = i;
+			tasks.add(ForkJoinTask.adapt(() -> {
+				int a = bound.get();
+				if (a >= beta)
+					return;
+				int score = -search(child, opponent, depth - 1, -a - 1, -a,
+						nodes);
+				if (score > a && score < beta) {
+					a = bound.get();
+					score = -search(child, opponent, depth - 1, -beta, -a,
+							nodes);
+				}
+				bound.raise(score, index);
+			}));
+		}
+		ForkJoinTask.invokeAll(tasks);
+	}
+
+	/**
+	 * Plays each move of a position on its own copy of the table, ordered
+	 * best first by a shallow search
+	 * 
+	 * @param moves
+	 *            Receives the squares of the moves in the same order, or null
+	 * @return The positions after the moves
+	 */
+	private List<OthelloTable> expand(OthelloTable position, byte player,
+			int depth, List<Integer> moves, AtomicLong nodes) {
+
+		record Child(int square, OthelloTable table, int score) {
+		}
+
+		byte opponent = OthelloTable.alternatePlayer(player);
+		Worker worker = workers.get();
+		List<Child> children = new ArrayList<>();
+		for (int square = 0; square < OthelloTable.TABLE_WIDTH
+				* OthelloTable.TABLE_HEIGHT; square++) {
+			OthelloTable child = new OthelloTable();
+			child.copy(position);
+			if (child.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+					(byte) (square / OthelloTable.TABLE_WIDTH), player) == OthelloTable.INVALID_MOVE)
+				continue;
+			child.commit();
+			children.add(new Child(square, child, -worker.analyze(child,
+					opponent, Math.min(ORDER_DEPTH, depth - 1),
+					-OthelloBot.INFINITY, OthelloBot.INFINITY, nodes)));
+		}
+		children.sort(Comparator.comparingInt(Child::score).reversed());
+
+		List<OthelloTable> tables = new ArrayList<>();
+		for (Child child : children) {
+			tables.add(child.table());
+			if (moves != null)
+				moves.add(child.square());
+		}
+		return tables;
+	}
+
+	/**
+	 * Benchmarks the search with an increasing number of threads on
+	 * positions from random games, and checks that the scores agree with
+	 * the single threaded search
+	 * 
+	 * @param args
+	 *            The depth, the number of positions and the maximum number
+	 *            of threads
+	 */
+	public static void main(String[] args) {
+		int depth = args.length > 0 ? Integer.parseInt(args[0]) : 7;
+		int count = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		int maxThreads = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+
+		// Collect midgame positions from random games
+		Random random = new Random(1);
+		List<OthelloTable> positions = new ArrayList<>();
+		List<Byte> players = new ArrayList<>();
+		while (positions.size() < count) {
+			OthelloTable table = new OthelloTable();
+			table.startNewGame();
+			byte player = OthelloTable.BLACK_PLAYER;
+			int plies = 12 + random.nextInt(24);
+			for (int ply = 0; ply < plies && table.canMove(player); ply++) {
+				byte x, y;
+				do {
+					x = (byte) random.nextInt(OthelloTable.TABLE_WIDTH);
+					y = (byte) random.nextInt(OthelloTable.TABLE_HEIGHT);
+				} while (table.putPiece(x, y, player) == OthelloTable.INVALID_MOVE);
+				table.commit();
+				player = OthelloTable.alternatePlayer(player);
+			}
+			if (table.canMove(player)) {
+				positions.add(table);
+				players.add(player);
+			}
+		}
+
+		// Warm up the compiler on the serial and the parallel paths before
+		// anything is timed, so that the first thread count is not slowed
+		// down by the warm-up of the others
+		for (int threads : new int[] { 1, maxThreads }) {
+			ParallelSearch search = new ParallelSearch(threads);
+			for (int i = 0; i < count; i++)
+				search.search(positions.get(i), players.get(i), depth);
+			search.close();
+		}
+
+		int[] scores = null;
+		long baseTime = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			ParallelSearch search = new ParallelSearch(threads);
+			int[] threadScores = new int[count];
+			long nodes = 0;
+			long time = Long.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				nodes = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < count; i++) {
+					Result result = search.search(positions.get(i), players
+							.get(i), depth);
+					threadScores[i] = result.score();
+					nodes += result.nodes();
+				}
+				time = Math.min(time, (System.nanoTime() - start) / 1000000);
+			}
+			search.close();
+
+			if (scores == null) {
+				scores = threadScores;
+				baseTime = time;
+			}
+			int mismatches = 0;
+			for (int i = 0; i < count; i++)
+				if (threadScores[i] != scores[i])
+					mismatches++;
+			System.out.printf("%2d threads: %6d ms, %10d nodes, %5.2fx, "
+					+ "%d score mismatches%n", threads, time, nodes,
+					(double) baseTime / Math.max(1, time), mismatches);
+		}
+		System.exit(0);
+	}
+}
@@ -0,0 +1,270 @@
+package com.othello.tools;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.othello.OthelloBot;
+import com.othello.OthelloEventQueue;
+import com.othello.OthelloTable;
+
+/**
+ * This tool derives the ProbCut parameters of the bot from self-play. It
+ * plays games where the moves are chosen by one ply searches, searches each
+ * position both shallow and deep and fits the deep scores to the shallow ones
+ * by linear regression.
+ * The parameters are written as the resource loaded by OthelloBot.
+ * <p>
+ * Usage: ProbCutCalibrator [games] [output file] [max depth]
+ */
+public class ProbCutCalibrator {
+
+	/**
+	 * The first depth pruned by ProbCut
+	 */
+	private static final int FIRST_DEPTH = 3;
+
+	/**
+	 * The number of empty squares at which the bot starts solving exactly,
+	 * positions with fewer are not sampled
+	 */
+	private static final int ENDGAME_EMPTIES = 2 * OthelloBot.MAX_LEVEL;
+
+	/**
+	 * Scores beyond this are won or lost games and are left out of the fit
+	 */
+	private static final int MAX_EVALUATION = 500 * OthelloBot.EVAL_SCALE;
+
+	/**
+	 * The probability of a random move in the self-play games
+	 */
+	private static final double RANDOM_MOVE_RATE = 0.2;
+
+	/**
+	 * A fit of the deep scores of a depth to the shallow ones
+	 * 
+	 * @param shallow
+	 *            The shallow depth
+	 * @param slope
+	 *            The slope of the deep score over the shallow score
+	 * @param offset
+	 *            The offset of the deep score
+	 * @param deviation
+	 *            The standard deviation of the deep score around the fit
+	 * @param samples
+	 *            The number of positions fitted
+	 */
+	private record Fit(int shallow, double slope, double offset,
+			double deviation, int samples) {
+	}
+
+	/**
+	 * The bots of each player, both playing the shared table
+	 */
+	private final OthelloBot[] bots = new OthelloBot[3];
+
+	/**
+	 * The table played
+	 */
+	private final OthelloTable table = new OthelloTable();
+
+	/**
+	 * The deepest depth calibrated
+	 */
+	private final int maxDepth;
+
+	/**
+	 * The shallow and deep scores of each depth
+	 */
+	private final List<List<int[]>> samples = new ArrayList<>();
+
+	/**
+	 * The randomizer of the self-play games
+	 */
+	private final Random random = new Random(1);
+
+	/**
+	 * Creates a calibrator
+	 * 
+	 * @param maxDepth
+	 *            The deepest depth calibrated
+	 */
+	private ProbCutCalibrator(int maxDepth) {
+		this.maxDepth = maxDepth;
+		OthelloEventQueue queue = new OthelloEventQueue((type, arg0, arg1,
+				arg2) -> {
+		});
+		bots[OthelloTable.BLACK_PLAYER] = new OthelloBot(queue, table, null,
+				OthelloTable.BLACK_PLAYER, OthelloBot.MAX_LEVEL);
+		bots[OthelloTable.WHITE_PLAYER] = new OthelloBot(queue, table, null,
+				OthelloTable.WHITE_PLAYER, OthelloBot.MAX_LEVEL);
+		for (int depth = 0; depth <= maxDepth; depth++)
+			samples.add(new ArrayList<>());
+	}
+
+	/**
+	 * Plays a game and samples its positions
+	 */
+	private void playGame() {
+		table.startNewGame();
+		byte player = OthelloTable.BLACK_PLAYER;
+		while (true) {
+			if (!table.canMove(player)) {
+				player = OthelloTable.alternatePlayer(player);
+				if (!table.canMove(player))
+					return;
+			}
+			int empties = OthelloTable.TABLE_WIDTH * OthelloTable.TABLE_HEIGHT
+					- table.getBlackScore() - table.getWhiteScore();
+			if (empties > ENDGAME_EMPTIES)
+				samplePosition(player);
+			int square = chooseMove(player);
+			table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+					(byte) (square / OthelloTable.TABLE_WIDTH), player);
+			table.commit();
+			player = OthelloTable.alternatePlayer(player);
+		}
+	}
+
+	/**
+	 * Searches the position shallow and deep for each depth
+	 */
+	private void samplePosition(byte player) {
+		OthelloBot bot = bots[player];
+		for (int depth = FIRST_DEPTH; depth <= maxDepth; depth++) {
+			int shallow = bot.analyze(getShallowDepth(depth));
+			int deep = bot.analyze(depth);
+			if (Math.abs(shallow) < MAX_EVALUATION
+					&& Math.abs(deep) < MAX_EVALUATION)
+				samples.get(depth).add(new int[] { shallow, deep });
+		}
+	}
+
+	/**
+	 * Chooses the move of a self-play game, the best by a one ply search or
+	 * sometimes a random move for variety
+	 * 
+	 * @return The square of the move (y * TABLE_WIDTH + x)
+	 */
+	private int chooseMove(byte player) {
+		List<Integer> moves = new ArrayList<>();
+		for (int square = 0; square < OthelloTable.TABLE_WIDTH
+				* OthelloTable.TABLE_HEIGHT; square++) {
+			if (table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+					(byte) (square / OthelloTable.TABLE_WIDTH), player) != OthelloTable.INVALID_MOVE) {
+				table.rewind();
+				moves.add(square);
+			}
+		}
+		if (random.nextDouble() < RANDOM_MOVE_RATE)
+			return moves.get(random.nextInt(moves.size()));
+
+		OthelloBot opponent = bots[OthelloTable.alternatePlayer(player)];
+		int best = moves.get(0);
+		int bestScore = Integer.MIN_VALUE;
+		for (int square : moves) {
+			table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+					(byte) (square / OthelloTable.TABLE_WIDTH), player);
+			int score = -opponent.analyze(1);
+			table.rewind();
+			if (score > bestScore) {
+				bestScore = score;
+				best = square;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the shallow depth used to predict a depth. The depths have the
+	 * same parity, since the evaluation swings with the player to move.
+	 */
+	private static int getShallowDepth(int depth) {
+		return depth - 2;
+	}
+
+	/**
+	 * Fits the deep scores of a depth to the shallow ones
+	 */
+	private Fit fit(int depth) {
+		List<int[]> pairs = samples.get(depth);
+		int n = pairs.size();
+		double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+		for (int[] pair : pairs) {
+			sumX += pair[0];
+			sumY += pair[1];
+			sumXX += (double) pair[0] * pair[0];
+			sumXY += (double) pair[0] * pair[1];
+		}
+		double slope = (n * sumXY - sumX * sumY) / (n * sumXX - sumX * sumX);
+		double offset = (sumY - slope * sumX) / n;
+		double squares = 0;
+		for (int[] pair : pairs) {
+			double error = pair[1] - slope * pair[0] - offset;
+			squares += error * error;
+		}
+		return new Fit(getShallowDepth(depth), slope, offset,
+				Math.sqrt(squares / (n - 2)), n);
+	}
+
+	/**
+	 * Writes the fits in the format read by OthelloBot
+	 */
+	private static void write(Fit[] fits, String file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(
+				file))) {
+			out.writeByte(OthelloBot.PROBCUT_VERSION);
+			out.writeByte(FIRST_DEPTH);
+			out.writeByte(fits.length);
+			for (Fit fit : fits) {
+				out.writeByte(fit.shallow());
+				out.writeShort((int) Math.max(Short.MIN_VALUE, Math.min(
+						Short.MAX_VALUE, toFixed(fit.slope()))));
+				out.writeInt((int) toFixed(fit.offset()));
+				out.writeInt((int) toFixed(fit.deviation()));
+			}
+		}
+	}
+
+	/**
+	 * Converts a parameter to the fixed point format of the resource
+	 */
+	private static long toFixed(double value) {
+		return Math.round(value * OthelloBot.PROBCUT_SCALE);
+	}
+
+	/**
+	 * Runs the calibration
+	 * 
+	 * @param args
+	 *            The number of games, the output file and the deepest depth
+	 */
+	public static void main(String[] args) throws IOException {
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+		String file = args.length > 1 ? args[1] : "res/probcut.dat";
+		int maxDepth = args.length > 2 ? Math.max(FIRST_DEPTH, Integer
+				.parseInt(args[2])) : OthelloBot.MAX_DEPTH;
+
+		ProbCutCalibrator calibrator = new ProbCutCalibrator(maxDepth);
+		for (int game = 1; game <= games; game++) {
+			calibrator.playGame();
+			System.err.print("\rgame " + game + "/" + games);
+		}
+		System.err.println();
+
+		Fit[] fits = new Fit[maxDepth - FIRST_DEPTH + 1];
+		for (int i = 0; i < fits.length; i++) {
+			fits[i] = calibrator.fit(FIRST_DEPTH + i);
+			System.out.printf("depth %d from %d: slope %.3f offset %.2f "
+					+ "deviation %.2f discs (%d positions)%n", FIRST_DEPTH + i,
+					fits[i].shallow(), fits[i].slope(), fits[i].offset()
+							/ OthelloBot.EVAL_SCALE, fits[i].deviation()
+							/ OthelloBot.EVAL_SCALE, fits[i].samples());
+		}
+		write(fits, file);
+		System.exit(0);
+	}
+}
@@ -0,0 +1,694 @@
+package com.othello.tools;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.othello.OthelloBot;
+import com.othello.OthelloEventQueue;
+import com.othello.OthelloTable;
+
+/**
+ * This tool plays a candidate build of the engine against a baseline build
+ * to tell whether a change made the bot stronger or weaker. Both builds run
+ * as NBoardEngine processes, so any two builds can be compared. The games
+ * are played at a fixed time per move from balanced openings, each opening
+ * once with each color, with as many games at once as there are cores.
+ * <p>
+ * After each game a sequential probability ratio test weighs the
+ * hypothesis that the candidate is elo0 stronger than the baseline against
+ * the hypothesis that it is elo1 stronger, and the match stops as soon as
+ * one of them is accepted. The result is reported as Elo with 95% error
+ * bars together with the ratio of the nodes per second of the builds. By
+ * default the test asks whether the candidate is no weaker than the
+ * baseline, and the exit status is 0 if it is not weaker, 1 if it is and 2
+ * if the match ended undecided.
+ * <p>
+ * Usage: SprtMatch --candidate command --baseline command [--time ms]
+ * [--games n] [--concurrency n] [--openings file] [--elo0 elo] [--elo1
+ * elo] [--alpha p] [--beta p]
+ */
+public class SprtMatch {
+
+	/**
+	 * The number of random moves of a generated opening
+	 */
+	private static final int OPENING_PLIES = 8;
+
+	/**
+	 * The number of openings generated when none are given
+	 */
+	private static final int OPENING_COUNT = 200;
+
+	/**
+	 * The depth of the search that checks that an opening is balanced
+	 */
+	private static final int BALANCE_DEPTH = 4;
+
+	/**
+	 * The largest evaluation of a balanced opening
+	 */
+	private static final int BALANCE_LIMIT = 4 * OthelloBot.EVAL_SCALE;
+
+	/**
+	 * The depth limit sent to the engines, the whole board, so that only the
+	 * time per move ends a search
+	 */
+	private static final int SEARCH_DEPTH = OthelloTable.TABLE_WIDTH
+			* OthelloTable.TABLE_HEIGHT;
+
+	/**
+	 * The time beyond the time per move an engine may take before it loses
+	 * the game
+	 */
+	private static final long TIME_MARGIN = 5000;
+
+	/**
+	 * The number of standard deviations of the 95% error bars
+	 */
+	private static final double CONFIDENCE = 1.96;
+
+	/**
+	 * The smallest variance of the score of a game. Games that are all wins,
+	 * all draws or all losses have no variance, which would keep the test
+	 * from ever deciding. A game of wins and losses alone has a variance of
+	 * up to 0.25.
+	 */
+	private static final double MIN_VARIANCE = 0.05;
+
+	/**
+	 * An engine process spoken to by the NBoard protocol
+	 */
+	private static final class Engine {
+
+		/**
+		 * The engine process
+		 */
+		private final Process process;
+
+		/**
+		 * The commands to the engine
+		 */
+		private final PrintWriter out;
+
+		/**
+		 * The lines from the engine, read on a thread of their own so that a
+		 * hanging engine can be timed out
+		 */
+		private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+		/**
+		 * The nodes searched by the engine
+		 */
+		long nodes;
+
+		/**
+		 * The time in seconds spent searching by the engine
+		 */
+		double seconds;
+
+		/**
+		 * Starts an engine
+		 * 
+		 * @param command
+		 *            The command and arguments starting the engine
+		 */
+		Engine(List<String> command) throws IOException {
+			process = new ProcessBuilder(command).redirectError(
+					ProcessBuilder.Redirect.INHERIT).start();
+			out = new PrintWriter(process.getOutputStream(), true);
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					process.getInputStream()));
+			Thread.ofVirtual().start(() -> {
+				try {
+					String line;
+					while ((line = in.readLine()) != null)
+						lines.add(line);
+				} catch (IOException e) {
+					// The engine has exited
+				}
+			});
+			send("nboard 2");
+			send("set depth " + SEARCH_DEPTH);
+		}
+
+		/**
+		 * Sends a command
+		 */
+		void send(String command) {
+			out.println(command);
+		}
+
+		/**
+		 * Waits for the engine to handle all commands sent so far
+		 */
+		void synchronize() throws IOException, InterruptedException {
+			send("ping 1");
+			if (await("pong", TIME_MARGIN) == null)
+				throw new IOException("engine does not answer");
+		}
+
+		/**
+		 * Asks for a move and counts the nodes searched for it
+		 * 
+		 * @return The move, or null if the engine took too long
+		 */
+		String go(long time) throws InterruptedException {
+			send("go " + time);
+			String reply = await("===", time + TIME_MARGIN);
+			if (reply == null)
+				return null;
+			return reply.substring(3).trim().split("/")[0];
+		}
+
+		/**
+		 * Waits for a line with a prefix, counting the nodes reported on the
+		 * way
+		 * 
+		 * @return The line, or null if it did not come in time
+		 */
+		private String await(String prefix, long timeout)
+				throws InterruptedException {
+			long end = System.currentTimeMillis() + timeout;
+			long moveNodes = 0;
+			double moveSeconds = 0;
+			while (true) {
+				String line = lines.poll(end - System.currentTimeMillis(),
+						TimeUnit.MILLISECONDS);
+				if (line == null)
+					return null;
+				if (line.startsWith("nodestats")) {
+					// The last report of a move covers the whole move
+					String[] words = line.split("\\s+");
+					moveNodes = Long.parseLong(words[1]);
+					moveSeconds = Double.parseDouble(words[2]);
+				} else if (line.startsWith(prefix)) {
+					nodes += moveNodes;
+					seconds += moveSeconds;
+					return line;
+				}
+			}
+		}
+
+		/**
+		 * Stops the engine
+		 */
+		void close() {
+			send("quit");
+			try {
+				if (!process.waitFor(1, TimeUnit.SECONDS))
+					process.destroyForcibly();
+			} catch (InterruptedException e) {
+				process.destroyForcibly();
+			}
+		}
+	}
+
+	/**
+	 * The games played so far and the test on them
+	 */
+	private final class Results {
+
+		/**
+		 * The games won, drawn and lost by the candidate
+		 */
+		int wins, draws, losses;
+
+		/**
+		 * The nodes searched by each build
+		 */
+		long candidateNodes, baselineNodes;
+
+		/**
+		 * The search time in seconds of each build
+		 */
+		double candidateSeconds, baselineSeconds;
+
+		/**
+		 * Indicates that the test has accepted a hypothesis
+		 */
+		boolean decided;
+
+		/**
+		 * Records a game and checks the test
+		 * 
+		 * @param score
+		 *            The score of the candidate: 1 for a win, 0.5 for a draw
+		 *            and 0 for a loss
+		 */
+		synchronized void record(double score, Engine candidate,
+				Engine baseline) {
+			if (score == 1)
+				wins++;
+			else if (score == 0)
+				losses++;
+			else
+				draws++;
+			candidateNodes += candidate.nodes;
+			candidateSeconds += candidate.seconds;
+			baselineNodes += baseline.nodes;
+			baselineSeconds += baseline.seconds;
+			candidate.nodes = baseline.nodes = 0;
+			candidate.seconds = baseline.seconds = 0;
+
+			double llr = getLogLikelihoodRatio();
+			decided = llr <= lowerBound || llr >= upperBound;
+			System.out.printf("games %d: +%d =%d -%d, %s, LLR %.2f [%.2f, "
+					+ "%.2f]%n", getGames(), wins, draws, losses, formatElo(),
+					llr, lowerBound, upperBound);
+		}
+
+		/**
+		 * Returns the number of games played
+		 */
+		int getGames() {
+			return wins + draws + losses;
+		}
+
+		/**
+		 * Returns the mean score of the candidate
+		 */
+		double getScore() {
+			return (wins + draws / 2.0) / getGames();
+		}
+
+		/**
+		 * Returns the variance of the score of a game, at least MIN_VARIANCE
+		 */
+		double getVariance() {
+			double score = getScore();
+			return Math.max(MIN_VARIANCE, (wins * (1 - score) * (1 - score)
+					+ draws * (0.5 - score) * (0.5 - score) + losses * score
+					* score)
+					/ getGames());
+		}
+
+		/**
+		 * Returns the log likelihood ratio of the hypotheses by the normal
+		 * approximation of the generalized SPRT
+		 */
+		double getLogLikelihoodRatio() {
+			double variance = getVariance();
+			double score0 = toScore(elo0);
+			double score1 = toScore(elo1);
+			return getGames() * (score1 - score0)
+					* (2 * getScore() - score0 - score1) / (2 * variance);
+		}
+
+		/**
+		 * Formats the Elo difference with its 95% error bars
+		 */
+		String formatElo() {
+			double score = getScore();
+			double margin = CONFIDENCE * Math.sqrt(getVariance() / getGames());
+			return String.format("Elo %s [%s, %s]", formatElo(score),
+					formatElo(score - margin), formatElo(score + margin));
+		}
+
+		/**
+		 * Formats the Elo difference of a score
+		 */
+		private String formatElo(double score) {
+			if (score <= 0)
+				return "-inf";
+			if (score >= 1)
+				return "+inf";
+			return String.format("%+.1f", -400 * Math.log10(1 / score - 1));
+		}
+	}
+
+	/**
+	 * The commands starting the candidate and baseline engines
+	 */
+	private final List<String> candidateCommand, baselineCommand;
+
+	/**
+	 * The time per move in milliseconds
+	 */
+	private final long time;
+
+	/**
+	 * The openings as squares (y * TABLE_WIDTH + x) played from the standard
+	 * start position
+	 */
+	private final List<int[]> openings;
+
+	/**
+	 * The Elo differences of the two hypotheses
+	 */
+	private final double elo0, elo1;
+
+	/**
+	 * The log likelihood ratios accepting each hypothesis
+	 */
+	private final double lowerBound, upperBound;
+
+	/**
+	 * The results of the games
+	 */
+	private final Results results = new Results();
+
+	/**
+	 * The index of the next game to start
+	 */
+	private final AtomicInteger nextGame = new AtomicInteger();
+
+	/**
+	 * Creates a match
+	 */
+	private SprtMatch(List<String> candidateCommand,
+			List<String> baselineCommand, long time, List<int[]> openings,
+			double elo0, double elo1, double alpha, double beta) {
+		this.candidateCommand = candidateCommand;
+		this.baselineCommand = baselineCommand;
+		this.time = time;
+		this.openings = openings;
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+		lowerBound = Math.log(beta / (1 - alpha));
+		upperBound = Math.log((1 - beta) / alpha);
+	}
+
+	/**
+	 * Plays games on the calling thread with its own pair of engines until
+	 * the test is decided or all games have been started
+	 */
+	private void playGames(int games) {
+		Engine candidate = null;
+		Engine baseline = null;
+		try {
+			candidate = new Engine(candidateCommand);
+			baseline = new Engine(baselineCommand);
+			while (true) {
+				synchronized (results) {
+					if (results.decided)
+						return;
+				}
+				int game = nextGame.getAndIncrement();
+				if (game >= games)
+					return;
+				// Each opening is played once with each color
+				int[] opening = openings.get(game / 2 % openings.size());
+				byte candidatePlayer = game % 2 == 0 ? OthelloTable.BLACK_PLAYER
+						: OthelloTable.WHITE_PLAYER;
+				double score = playGame(opening, candidate, baseline,
+						candidatePlayer);
+				results.record(score, candidate, baseline);
+			}
+		} catch (IOException | InterruptedException e) {
+			System.err.println("match aborted: " + e);
+			System.exit(2);
+		} finally {
+			if (candidate != null)
+				candidate.close();
+			if (baseline != null)
+				baseline.close();
+		}
+	}
+
+	/**
+	 * Plays a game from an opening
+	 * 
+	 * @return The score of the candidate
+	 */
+	private double playGame(int[] opening, Engine candidate,
+			Engine baseline, byte candidatePlayer) throws IOException,
+			InterruptedException {
+		OthelloTable table = new OthelloTable();
+		table.setPosition(WthorReader.START_BLACK, WthorReader.START_WHITE);
+		byte player = OthelloTable.BLACK_PLAYER;
+		for (int square : opening) {
+			if (!table.canMove(player))
+				player = OthelloTable.alternatePlayer(player);
+			putPiece(table, square, player);
+			player = OthelloTable.alternatePlayer(player);
+		}
+
+		String game = "(;GM[Othello]BO[8 " + formatBoard(table)
+				+ (player == OthelloTable.BLACK_PLAYER ? " *" : " O") + "];)";
+		for (Engine engine : new Engine[] { candidate, baseline }) {
+			engine.send("set game " + game);
+			engine.synchronize();
+		}
+
+		while (true) {
+			byte opponent = OthelloTable.alternatePlayer(player);
+			if (!table.canMove(player)) {
+				if (!table.canMove(opponent))
+					break;
+				candidate.send("move PA");
+				baseline.send("move PA");
+				player = opponent;
+				continue;
+			}
+			boolean candidateMoves = player == candidatePlayer;
+			Engine engine = candidateMoves ? candidate : baseline;
+			String move = engine.go(time);
+			int square = move == null ? -1 : parseSquare(move);
+			if (square < 0 || !putPiece(table, square, player)) {
+				System.err.println((candidateMoves ? "candidate" : "baseline")
+						+ (move == null ? " lost on time" : " played "
+								+ move + " illegally"));
+				return candidateMoves ? 0 : 1;
+			}
+			candidate.send("move " + move);
+			baseline.send("move " + move);
+			player = opponent;
+		}
+
+		int difference = table.getBlackScore() - table.getWhiteScore();
+		if (candidatePlayer == OthelloTable.WHITE_PLAYER)
+			difference = -difference;
+		return difference > 0 ? 1 : difference < 0 ? 0 : 0.5;
+	}
+
+	/**
+	 * Runs the match
+	 * 
+	 * @return The exit status: 0 if the candidate is not weaker, 1 if it is
+	 *         and 2 if the test is undecided
+	 */
+	private int run(int games, int concurrency) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		for (int i = 0; i < concurrency; i++)
+			pool.submit(() -> playGames(games));
+		pool.shutdown();
+		pool.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+
+		synchronized (results) {
+			if (results.getGames() == 0)
+				return 2;
+			double candidateSpeed = results.candidateNodes
+					/ Math.max(0.001, results.candidateSeconds);
+			double baselineSpeed = results.baselineNodes
+					/ Math.max(0.001, results.baselineSeconds);
+			double llr = results.getLogLikelihoodRatio();
+			String verdict = llr >= upperBound ? "H1 accepted"
+					: llr <= lowerBound ? "H0 accepted" : "undecided";
+			System.out.printf("%s after %d games: %s, nodes/s %.0f vs %.0f "
+					+ "(ratio %.3f)%n", verdict, results.getGames(), results
+					.formatElo(), candidateSpeed, baselineSpeed,
+					candidateSpeed / Math.max(1, baselineSpeed));
+			return llr >= upperBound ? 0 : llr <= lowerBound ? 1 : 2;
+		}
+	}
+
+	/**
+	 * Generates balanced openings: random moves from the standard start
+	 * position, kept when a search scores the position close to even
+	 */
+	private static List<int[]> generateOpenings() {
+		OthelloEventQueue queue = new OthelloEventQueue((type, arg0, arg1,
+				arg2) -> {
+		});
+		OthelloTable table = new OthelloTable();
+		OthelloBot[] bots = new OthelloBot[3];
+		bots[OthelloTable.BLACK_PLAYER] = new OthelloBot(queue, table, null,
+				OthelloTable.BLACK_PLAYER, OthelloBot.MAX_LEVEL);
+		bots[OthelloTable.WHITE_PLAYER] = new OthelloBot(queue, table, null,
+				OthelloTable.WHITE_PLAYER, OthelloBot.MAX_LEVEL);
+
+		Random random = new Random(1);
+		List<int[]> openings = new ArrayList<>();
+		Set<String> seen = new HashSet<>();
+		while (openings.size() < OPENING_COUNT) {
+			table.setPosition(WthorReader.START_BLACK, WthorReader.START_WHITE);
+			byte player = OthelloTable.BLACK_PLAYER;
+			int[] opening = new int[OPENING_PLIES];
+			for (int ply = 0; ply < OPENING_PLIES; ply++) {
+				List<Integer> moves = new ArrayList<>();
+				for (int square = 0; square < OthelloTable.TABLE_WIDTH
+						* OthelloTable.TABLE_HEIGHT; square++) {
+					if (putPiece(table, square, player)) {
+						table.rewind();
+						moves.add(square);
+					}
+				}
+				opening[ply] = moves.get(random.nextInt(moves.size()));
+				putPiece(table, opening[ply], player);
+				player = OthelloTable.alternatePlayer(player);
+			}
+			table.commit();
+			if (Math.abs(bots[player].analyze(BALANCE_DEPTH)) <= BALANCE_LIMIT
+					&& seen.add(Arrays.toString(opening)))
+				openings.add(opening);
+		}
+		return openings;
+	}
+
+	/**
+	 * Reads openings, one line of moves such as "f5d6c3" per opening
+	 */
+	private static List<int[]> readOpenings(String file) throws IOException {
+		List<int[]> openings = new ArrayList<>();
+		for (String line : Files.readAllLines(Path.of(file))) {
+			line = line.replaceAll("\\s", "");
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+			int[] opening = new int[line.length() / 2];
+			for (int i = 0; i < opening.length; i++) {
+				opening[i] = parseSquare(line.substring(2 * i, 2 * i + 2));
+				if (opening[i] < 0)
+					throw new IOException("invalid opening " + line);
+			}
+			openings.add(opening);
+		}
+		if (openings.isEmpty())
+			throw new IOException("no openings in " + file);
+		return openings;
+	}
+
+	/**
+	 * Plays a move on a table
+	 * 
+	 * @return False if the move is not legal
+	 */
+	private static boolean putPiece(OthelloTable table, int square,
+			byte player) {
+		return table.putPiece((byte) (square % OthelloTable.TABLE_WIDTH),
+				(byte) (square / OthelloTable.TABLE_WIDTH), player) != OthelloTable.INVALID_MOVE;
+	}
+
+	/**
+	 * Formats the board for a GGF game, row by row with * for black, O for
+	 * white and - for empty
+	 */
+	private static String formatBoard(OthelloTable table) {
+		StringBuilder board = new StringBuilder();
+		for (byte y = 0; y < OthelloTable.TABLE_HEIGHT; y++)
+			for (byte x = 0; x < OthelloTable.TABLE_WIDTH; x++) {
+				byte piece = table.getPiece(x, y);
+				board.append(piece == OthelloTable.BLACK_PLAYER ? '*'
+						: piece == OthelloTable.WHITE_PLAYER ? 'O' : '-');
+			}
+		return board.toString();
+	}
+
+	/**
+	 * Parses a square such as "d3"
+	 * 
+	 * @return The square (y * TABLE_WIDTH + x), or -1 if invalid
+	 */
+	private static int parseSquare(String move) {
+		if (move.length() != 2)
+			return -1;
+		int x = Character.toLowerCase(move.charAt(0)) - 'a';
+		int y = move.charAt(1) - '1';
+		if (x < 0 || x >= OthelloTable.TABLE_WIDTH || y < 0
+				|| y >= OthelloTable.TABLE_HEIGHT)
+			return -1;
+		return y * OthelloTable.TABLE_WIDTH + x;
+	}
+
+	/**
+	 * Converts an Elo difference to the expected score
+	 */
+	private static double toScore(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+	/**
+	 * Runs a match
+	 * 
+	 * @param args
+	 *            The options
+	 */
+	public static void main(String[] args) throws Exception {
+		String candidate = null;
+		String baseline = null;
+		long time = 100;
+		int games = 2000;
+		int concurrency = Runtime.getRuntime().availableProcessors();
+		String openingFile = null;
+		double elo0 = -20, elo1 = 0, alpha = 0.05, beta = 0.05;
+		for (int i = 0; i < args.length; i++) {
+			switch (args[i]) {
+			case "--candidate":
+				candidate = args[++i];
+				break;
+			case "--baseline":
+				baseline = args[++i];
+				break;
+			case "--time":
+				time = Long.parseLong(args[++i]);
+				break;
+			case "--games":
+				games = Integer.parseInt(args[++i]);
+				break;
+			case "--concurrency":
+				concurrency = Integer.parseInt(args[++i]);
+				break;
+			case "--openings":
+				openingFile = args[++i];
+				break;
+			case "--elo0":
+				elo0 = Double.parseDouble(args[++i]);
+				break;
+			case "--elo1":
+				elo1 = Double.parseDouble(args[++i]);
+				break;
+			case "--alpha":
+				alpha = Double.parseDouble(args[++i]);
+				break;
+			case "--beta":
+				beta = Double.parseDouble(args[++i]);
+				break;
+			default:
+				candidate = null;
+				i = args.length;
+			}
+		}
+		if (candidate == null || baseline == null) {
+			System.err.println("Usage: SprtMatch --candidate command "
+					+ "--baseline command [--time ms] [--games n] "
+					+ "[--concurrency n] [--openings file] [--elo0 elo] "
+					+ "[--elo1 elo] [--alpha p] [--beta p]");
+			System.exit(2);
+		}
+
+		List<int[]> openings = openingFile != null ? readOpenings(openingFile)
+				: generateOpenings();
+		SprtMatch match = new SprtMatch(List.of(candidate.trim().split(
+				"\\s+")), List.of(baseline.trim().split("\\s+")), time,
+				openings, elo0, elo1, alpha, beta);
+		System.out.printf("%d openings, %d ms per move, %d games at once, "
+				+ "H0: Elo %+.1f, H1: Elo %+.1f%n", openings.size(), time,
+				concurrency, elo0, elo1);
+		System.exit(match.run(games, concurrency));
+	}
+}
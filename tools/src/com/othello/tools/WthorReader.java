@@ -0,0 +1,264 @@
+package com.othello.tools;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import com.othello.OthelloTable;
+
+/**
+ * This class reads the games of a WTHOR database file and replays them
+ * through OthelloTable, streaming each position to a consumer. The file is
+ * memory mapped and the games are decoded straight from the mapping, so no
+ * objects are created per game.
+ * <p>
+ * A WTHOR file starts with a 16 byte header holding the number of games,
+ * the year and the board size, followed by a 68 byte record per game: the
+ * tournament, the black and white players, the final number of black discs,
+ * the theoretical score and 60 moves as 10 * row + column counted from 1,
+ * padded with zeros. Passes are not recorded, a move that is not legal for
+ * the player to move is played by the opponent.
+ * <p>
+ * Usage: WthorReader file or directory...
+ */
+public class WthorReader {
+
+	/**
+	 * Receives the positions of the games
+	 */
+	public interface PositionConsumer {
+
+		/**
+		 * Receives a position of a game and the move played from it
+		 * 
+		 * @param ply
+		 *            The number of moves played before the position
+		 * @param black
+		 *            The black discs, bit (y * TABLE_WIDTH + x) set for each
+		 *            square
+		 * @param white
+		 *            The white discs
+		 * @param player
+		 *            The player to move
+		 * @param square
+		 *            The square of the move (y * TABLE_WIDTH + x)
+		 * @param blackDiscs
+		 *            The final number of black discs of the game
+		 */
+		void accept(int ply, long black, long white, byte player, int square,
+				int blackDiscs);
+	}
+
+	/**
+	 * The size of the file header
+	 */
+	private static final int HEADER_SIZE = 16;
+
+	/**
+	 * The size of a game record
+	 */
+	private static final int GAME_SIZE = 68;
+
+	/**
+	 * The offset of the final number of black discs in a game record
+	 */
+	private static final int SCORE_OFFSET = 6;
+
+	/**
+	 * The offset of the moves in a game record
+	 */
+	private static final int MOVES_OFFSET = 8;
+
+	/**
+	 * The maximum number of moves of a game
+	 */
+	private static final int MAX_MOVES = 60;
+
+	/**
+	 * The black discs of the standard start position, which is mirrored
+	 * compared to OthelloTable.startNewGame()
+	 */
+	static final long START_BLACK = 1L << 4 * OthelloTable.TABLE_WIDTH
+			+ 3 | 1L << 3 * OthelloTable.TABLE_WIDTH + 4;
+
+	/**
+	 * The white discs of the standard start position
+	 */
+	static final long START_WHITE = 1L << 3 * OthelloTable.TABLE_WIDTH
+			+ 3 | 1L << 4 * OthelloTable.TABLE_WIDTH + 4;
+
+	/**
+	 * The mapped file
+	 */
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * The number of games in the file
+	 */
+	private final int gameCount;
+
+	/**
+	 * The table replaying the games
+	 */
+	private final OthelloTable table = new OthelloTable();
+
+	/**
+	 * The number of games with an illegal move, replayed up to that move
+	 */
+	private int invalidGames;
+
+	/**
+	 * Maps a database file
+	 * 
+	 * @param file
+	 *            The WTHOR file
+	 * @throws IOException
+	 *             If the file can not be read or is not an 8x8 database
+	 */
+	public WthorReader(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+					.size());
+		}
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (buffer.limit() < HEADER_SIZE)
+			throw new IOException(file + ": no WTHOR header");
+		int boardSize = buffer.get(12);
+		if (boardSize != 0 && boardSize != OthelloTable.TABLE_WIDTH)
+			throw new IOException(file + ": board size " + boardSize
+					+ " is not supported");
+		// Trust the file length over a header count of a truncated file
+		gameCount = Math.min(buffer.getInt(4), (buffer.limit() - HEADER_SIZE)
+				/ GAME_SIZE);
+	}
+
+	/**
+	 * Returns the number of games in the file
+	 */
+	public int getGameCount() {
+		return gameCount;
+	}
+
+	/**
+	 * Returns the year of the games
+	 */
+	public int getYear() {
+		return buffer.getShort(10);
+	}
+
+	/**
+	 * Returns the number of games found with an illegal move so far
+	 */
+	public int getInvalidGames() {
+		return invalidGames;
+	}
+
+	/**
+	 * Replays all games of the file
+	 * 
+	 * @param consumer
+	 *            Receives the position before each move
+	 * @return The number of positions streamed
+	 */
+	public long replay(PositionConsumer consumer) {
+		long positions = 0;
+		for (int game = 0; game < gameCount; game++)
+			positions += replay(game, consumer);
+		return positions;
+	}
+
+	/**
+	 * Replays a game
+	 * 
+	 * @param game
+	 *            The index of the game in the file
+	 * @param consumer
+	 *            Receives the position before each move
+	 * @return The number of positions streamed
+	 */
+	public int replay(int game, PositionConsumer consumer) {
+		int record = HEADER_SIZE + game * GAME_SIZE;
+		int blackDiscs = buffer.get(record + SCORE_OFFSET) & 0xff;
+		table.setPosition(START_BLACK, START_WHITE);
+		byte player = OthelloTable.BLACK_PLAYER;
+		for (int ply = 0; ply < MAX_MOVES; ply++) {
+			int move = buffer.get(record + MOVES_OFFSET + ply) & 0xff;
+			if (move == 0)
+				return ply;
+			byte x = (byte) (move % 10 - 1);
+			byte y = (byte) (move / 10 - 1);
+			long black = table.getMask(OthelloTable.BLACK_PLAYER);
+			long white = table.getMask(OthelloTable.WHITE_PLAYER);
+
+			// Passes are not recorded, so the move may be the opponent's
+			if (table.putPiece(x, y, player) == OthelloTable.INVALID_MOVE) {
+				player = OthelloTable.alternatePlayer(player);
+				if (table.putPiece(x, y, player) == OthelloTable.INVALID_MOVE) {
+					invalidGames++;
+					return ply;
+				}
+			}
+			table.commit();
+			consumer.accept(ply, black, white, player, y
+					* OthelloTable.TABLE_WIDTH + x, blackDiscs);
+			player = OthelloTable.alternatePlayer(player);
+		}
+		return MAX_MOVES;
+	}
+
+	/**
+	 * Replays the games of the given files, and of the .wtb files of the
+	 * given directories, and reports the throughput in positions per second
+	 * 
+	 * @param args
+	 *            The files and directories
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length == 0) {
+			System.err.println("Usage: WthorReader file or directory...");
+			System.exit(1);
+		}
+		List<Path> files = new ArrayList<>();
+		for (String arg : args) {
+			Path path = Path.of(arg);
+			if (Files.isDirectory(path)) {
+				try (Stream<Path> entries = Files.list(path)) {
+					entries.filter(
+							file -> file.getFileName().toString()
+									.toLowerCase().endsWith(".wtb")).sorted()
+							.forEach(files::add);
+				}
+			} else
+				files.add(path);
+		}
+
+		// Count the positions and the games won by black as a check
+		long[] wins = new long[1];
+		PositionConsumer consumer = (ply, black, white, player, square,
+				blackDiscs) -> {
+			if (ply == 0 && blackDiscs > 32)
+				wins[0]++;
+		};
+		long games = 0;
+		long positions = 0;
+		long invalid = 0;
+		long start = System.nanoTime();
+		for (Path file : files) {
+			WthorReader reader = new WthorReader(file);
+			positions += reader.replay(consumer);
+			games += reader.getGameCount();
+			invalid += reader.getInvalidGames();
+		}
+		long time = Math.max(1, (System.nanoTime() - start) / 1000000);
+		System.out.printf("%d files, %d games, %d positions, %d invalid "
+				+ "games, black won %.1f%%, %d ms, %d positions/s%n", files
+				.size(), games, positions, invalid, 100.0 * wins[0]
+				/ Math.max(1, games), time, positions * 1000 / time);
+	}
+}